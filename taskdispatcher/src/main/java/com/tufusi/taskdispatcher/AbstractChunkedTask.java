@@ -0,0 +1,96 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by 鼠夏目 on 2020/4/4.
+ *
+ * @See
+ * @Description 分片投递任务 - 后台产生的大量结果在主线程按时间片逐项交付
+ * <p>
+ * 每条主线程消息最多占用 {@link #getSliceBudgetMillis()}，超出后把剩余部分放到下一条消息继续，
+ * 期间输入与绘制消息可以插入执行；交付顺序与迭代顺序一致，任务取消后立即停止交付
+ */
+public abstract class AbstractChunkedTask<E> extends AbstractTask<Iterable<E>> {
+
+    /**
+     * 在主线程中交付一项结果
+     *
+     * @param item 结果项
+     */
+    public abstract void onItem(E item);
+
+    /**
+     * 一个时间片结束时在主线程回调，适合在这里合并刷新（如notifyItemRangeInserted）
+     */
+    public void onSliceEnd() {
+    }
+
+    /**
+     * 全部结果交付完成，在主线程中执行；任务被取消时不会回调
+     */
+    public void onComplete() {
+    }
+
+    /**
+     * 每个时间片的预算，默认与主线程回调合并投递的预算相同
+     *
+     * @return 毫秒
+     * @see DispatcherConfig.Builder#setMainBatchBudgetMillis(long)
+     */
+    protected long getSliceBudgetMillis() {
+        return TaskDispatcher.mainBudgetMillis();
+    }
+
+    @Override
+    public final void onSuccess(Iterable<E> result) {
+        if (result == null) {
+            onComplete();
+            return;
+        }
+        new Slicer<>(this, result.iterator()).run();
+    }
+
+    /**
+     * 分片交付，一次消息执行一个时间片，未完成时重新投递自身
+     */
+    private static final class Slicer<E> implements Runnable {
+
+        private final AbstractChunkedTask<E> mTask;
+        private final Iterator<E> mIterator;
+        private final long mBudgetNanos;
+
+        Slicer(AbstractChunkedTask<E> task, Iterator<E> iterator) {
+            this.mTask = task;
+            this.mIterator = iterator;
+            this.mBudgetNanos = TimeUnit.MILLISECONDS.toNanos(task.getSliceBudgetMillis());
+        }
+
+        @Override
+        public void run() {
+            if (mTask.isCanceled()) {
+                return;
+            }
+            long deadline = System.nanoTime() + mBudgetNanos;
+            int delivered = 0;
+            while (mIterator.hasNext()) {
+                mTask.onItem(mIterator.next());
+                delivered++;
+                if (mTask.isCanceled()) {
+                    return;
+                }
+                if (System.nanoTime() >= deadline && mIterator.hasNext()) {
+                    mTask.onSliceEnd();
+                    //让出主线程，剩余部分排在已到来的输入与绘制消息之后
+                    TaskDispatcher.runOnUIThread(this);
+                    return;
+                }
+            }
+            if (delivered > 0) {
+                mTask.onSliceEnd();
+            }
+            mTask.onComplete();
+        }
+    }
+}
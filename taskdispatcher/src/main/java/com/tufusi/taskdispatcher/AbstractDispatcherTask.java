@@ -14,6 +14,10 @@ public abstract class AbstractDispatcherTask implements Runnable {
     long periodMillisecond;
     boolean mainThread = true;
     AtomicBoolean canceled = new AtomicBoolean(false);
+    /**
+     * 当前挂载在时间轮上的节点，用于立即取消
+     */
+    HashedTimingWheel.Timeout timeout;
 
     protected AbstractDispatcherTask(long periodMillisecond) {
         this.periodMillisecond = periodMillisecond;
@@ -37,8 +41,27 @@ public abstract class AbstractDispatcherTask implements Runnable {
 
     @Override
     public void run() {
-        if (!canceled.get()) {
+        if (canceled.get()) {
+            return;
+        }
+        TaskMetrics metrics = TaskDispatcher.metrics();
+        TaskMetrics.TaskStats stats = metrics == null ? null : metrics.statsOf(getClass().getName());
+        long startNanos = stats == null ? 0 : System.nanoTime();
+        try {
             onDispatch();
+            if (stats != null) {
+                stats.completed.increment();
+            }
+        } catch (RuntimeException e) {
+            //只记录，不抛给线程池工作线程，下一周期照常执行
+            if (stats != null) {
+                stats.failed.increment();
+            }
+            TaskDispatcher.logError("dispatch task error " + getClass().getName() + " " + e);
+        } finally {
+            if (stats != null) {
+                stats.runTime.recordNanos(System.nanoTime() - startNanos);
+            }
         }
     }
 }
@@ -0,0 +1,56 @@
+package com.tufusi.taskdispatcher;
+
+/**
+ * Created by 鼠夏目 on 2020/3/19.
+ *
+ * @See
+ * @Description 启动任务抽象类 - 作为 {@link StartupGraph} 中的一个节点，依赖关系在加入图时声明
+ */
+public abstract class AbstractStartupTask {
+
+    private final String mName;
+    private final boolean mMainThread;
+    private final boolean mWaitBeforeFirstFrame;
+
+    /**
+     * @param name                 任务名，在同一个图中唯一，用于声明依赖
+     * @param mainThread           是否必须在主线程执行
+     * @param waitBeforeFirstFrame 是否需要在首帧之前完成，{@link StartupGraph#await(long)} 会等待这类任务
+     */
+    protected AbstractStartupTask(String name, boolean mainThread, boolean waitBeforeFirstFrame) {
+        if (name == null) {
+            throw new IllegalArgumentException("name must not be null");
+        }
+        this.mName = name;
+        this.mMainThread = mainThread;
+        this.mWaitBeforeFirstFrame = waitBeforeFirstFrame;
+    }
+
+    protected AbstractStartupTask(String name) {
+        this(name, false, false);
+    }
+
+    /**
+     * 执行初始化，所有依赖任务完成后才会被调用
+     *
+     * @throws Exception 初始化失败，失败信息会记录在 {@link StartupGraph.Report} 中；依赖本任务的任务不再执行，在报告中标记为跳过
+     */
+    public abstract void onStartup() throws Exception;
+
+    public final String getName() {
+        return mName;
+    }
+
+    public final boolean isMainThread() {
+        return mMainThread;
+    }
+
+    public final boolean isWaitBeforeFirstFrame() {
+        return mWaitBeforeFirstFrame;
+    }
+
+    @Override
+    public String toString() {
+        return mName;
+    }
+}
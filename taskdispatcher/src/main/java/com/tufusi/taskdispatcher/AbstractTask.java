@@ -1,9 +1,9 @@
 package com.tufusi.taskdispatcher;
 
-import android.util.Log;
-
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Created by 鼠夏目 on 2020/3/13.
@@ -15,8 +15,70 @@ public abstract class AbstractTask<R> implements Runnable {
 
     private static final String TAG = "Task";
 
-    private AtomicBoolean mCanceledAtomic = new AtomicBoolean(false);
-    private AtomicReference<Thread> mTaskThread = new AtomicReference<>();
+    /**
+     * 使用字段更新器代替每个任务各自持有的原子对象，减少任务对象的分配
+     */
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<AbstractTask> CANCELED_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(AbstractTask.class, "mCanceled");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<AbstractTask, Thread> TASK_THREAD_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(AbstractTask.class, Thread.class, "mTaskThread");
+
+    /**
+     * 取消状态：未取消；已请求取消；已取消且对执行线程的中断已送达
+     */
+    private static final int CANCEL_NONE = 0;
+    private static final int CANCEL_REQUESTED = 1;
+    private static final int CANCEL_INTERRUPTED = 2;
+
+    /**
+     * 当前线程正在执行的任务，用于让任务中提交的子任务继承作用域
+     */
+    private static final ThreadLocal<AbstractTask<?>> CURRENT_TASK = new ThreadLocal<>();
+
+    private volatile int mCanceled;
+    /**
+     * 正在执行本任务的线程，执行结束时清除，避免任务复用后中断无关的线程池线程
+     */
+    private volatile Thread mTaskThread;
+    private TaskPriority mPriority = TaskPriority.DEFAULT;
+    /**
+     * 提交到线程池的时间，仅在开启指标统计时记录
+     */
+    long mEnqueueNanos;
+    /**
+     * 通过 {@link TaskDispatcher#submit(AbstractTask)} 提交时对应的异步结果
+     */
+    volatile TaskFuture<R> mFuture;
+    /**
+     * 所属作用域，通过TaskScope提交或在作用域内的任务中提交时设置
+     */
+    volatile TaskScope mScope;
+    /**
+     * 本次提交执行期间提交、尚未结束的子任务，本任务取消时一并取消，仅在提交过子任务时分配。
+     * 子任务结束时自行移除，本任务重新提交时清空
+     */
+    private List<AbstractTask<?>> mChildren;
+    /**
+     * 提交时登记的父任务，本次提交结束或被拒绝时据此撤销登记
+     */
+    private AbstractTask<?> mParent;
+    /**
+     * 经TaskDispatcher提交且本次提交尚未结束（执行完毕、出队时跳过或被拒绝）。
+     * 未经TaskDispatcher提交的执行（如 {@link TaskDispatcher#executorService()}、{@link TaskDispatcher#serial(String)}）
+     * 没有提交时机可以清除取消标记，改为执行前清除，见run()
+     */
+    private volatile boolean mSubmitted;
+    /**
+     * 所在的工作队列及是否已在其中记墓碑，由该队列的锁保护
+     */
+    PriorityTaskQueue mQueuedIn;
+    boolean mTombstoned;
+    /**
+     * 提交时的调用位置，仅在慢消息检测开启抓取时记录，用于定位慢回调
+     */
+    volatile String mCallSite;
 
     /**
      * 异步任务处理线程，在非主线程中执行
@@ -49,21 +111,80 @@ public abstract class AbstractTask<R> implements Runnable {
 
     /**
      * 标记任务为取消标记，这无法真正取消任务，只是通过触发interrupt()让线程回调onFail(), 不让结果回调onSuccess()方法
+     * <p>
+     * 仍在排队的任务在出队时被跳过，不再占用工作线程；执行期间提交的子任务一并取消。重复调用无效
      */
     void cancel() {
-        this.mCanceledAtomic.set(true);
-        Thread thread = mTaskThread.get();
+        if (!CANCELED_UPDATER.compareAndSet(this, CANCEL_NONE, CANCEL_REQUESTED)) {
+            return;
+        }
+        TaskMetrics metrics = TaskDispatcher.metrics();
+        if (metrics != null) {
+            metrics.statsOf(getTaskName()).cancellations.increment();
+        }
+        TaskDispatcher.removeQueued(this);
+        //取走线程引用后再中断，执行线程结束时若发现引用已被取走，会等待中断送达并清除，见run()
+        Thread thread = TASK_THREAD_UPDATER.getAndSet(this, null);
         if (thread != null) {
-            Log.d(TAG, "Task cancel: " + thread.getName());
+            if (TaskDispatcher.isLogEnabled()) {
+                TaskDispatcher.logInfo(TAG + " cancel: " + thread.getName());
+            }
             thread.interrupt();
         }
+        mCanceled = CANCEL_INTERRUPTED;
+        //排队中被跳过的任务不会执行run()，在这里离开作用域
+        TaskScope scope = mScope;
+        if (scope != null) {
+            scope.detach(this);
+        }
 
-        TaskDispatcher.runOnUIThread(new Runnable() {
-            @Override
-            public void run() {
-                onCancel();
+        List<AbstractTask<?>> children;
+        synchronized (this) {
+            children = mChildren;
+            mChildren = null;
+        }
+        if (children != null) {
+            for (AbstractTask<?> child : children) {
+                child.cancel();
             }
-        });
+        }
+
+        TaskFuture<R> future = mFuture;
+        if (future != null) {
+            future.cancel(false);
+        }
+        TaskDispatcher.postResult(ResultCarrier.obtain(this, ResultCarrier.TYPE_CANCEL, null, null, null));
+    }
+
+    /**
+     * 任务名，用于指标统计与追踪，默认为类名，匿名类任务建议重写
+     *
+     * @return 任务名
+     */
+    public String getTaskName() {
+        return getClass().getName();
+    }
+
+    /**
+     * 任务所在的优先级通道
+     *
+     * @return 优先级
+     */
+    public TaskPriority getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * 任务所属的执行域，默认在CPU线程池执行，阻塞型任务（文件、数据库、网络）应重写返回 {@link ExecutionDomain#IO}
+     *
+     * @return 执行域
+     */
+    public ExecutionDomain getExecutionDomain() {
+        return ExecutionDomain.CPU;
+    }
+
+    void setPriority(TaskPriority priority) {
+        this.mPriority = priority == null ? TaskPriority.DEFAULT : priority;
     }
 
     /**
@@ -72,36 +193,187 @@ public abstract class AbstractTask<R> implements Runnable {
      * @return 任务是否已被取消
      */
     public boolean isCanceled() {
-        return mCanceledAtomic.get();
+        if (mCanceled != CANCEL_NONE) {
+            return true;
+        }
+        TaskScope scope = mScope;
+        return scope != null && scope.isCanceled();
+    }
+
+    /**
+     * 提交前调用：清除上一次的取消标记，在任务中提交时继承当前任务的作用域并登记为其子任务
+     *
+     * @return 作用域或父任务已取消时返回false，本任务已被取消，不应再入队
+     */
+    boolean onSubmit() {
+        mCanceled = CANCEL_NONE;
+        leaveParent();
+        //上一次提交的子任务不再随本次提交取消
+        synchronized (this) {
+            mChildren = null;
+        }
+        mSubmitted = true;
+        mCallSite = StallMonitor.captureCallSite();
+        AbstractTask<?> parent = CURRENT_TASK.get();
+        if (parent == null || parent == this) {
+            return true;
+        }
+        TaskScope scope = parent.mScope;
+        if (mScope == null && scope != null && !scope.attach(this)) {
+            mSubmitted = false;
+            return false;
+        }
+        synchronized (parent) {
+            if (parent.mCanceled == CANCEL_NONE) {
+                if (parent.mChildren == null) {
+                    parent.mChildren = new ArrayList<>(2);
+                }
+                parent.mChildren.add(this);
+                mParent = parent;
+                return true;
+            }
+        }
+        mSubmitted = false;
+        cancel();
+        return false;
+    }
+
+    /**
+     * 提交被线程池拒绝：撤销 {@link #onSubmit()} 中的作用域与父任务登记，任务可以重新提交
+     */
+    void onRejected() {
+        leaveParent();
+        TaskScope scope = mScope;
+        if (scope != null) {
+            scope.detach(this);
+            mScope = null;
+        }
+        mSubmitted = false;
+    }
+
+    /**
+     * 本次提交结束但任务没有经过run()（出队时因已取消被跳过，或由包装任务代为执行），之后的执行不再受本次取消的影响
+     */
+    void onSubmissionEnd() {
+        leaveParent();
+        mSubmitted = false;
+    }
+
+    /**
+     * 任务不经过run()，由其他任务代为执行并投递回调（如去重挂载、缓存包装）：回调投递后离开作用域并结束本次提交，
+     * 之后作用域的取消不会再给已收到结果的任务回调onCancel
+     */
+    void endDelegatedSubmission() {
+        TaskScope scope = mScope;
+        if (scope != null) {
+            scope.detach(this);
+        }
+        onSubmissionEnd();
+    }
+
+    /**
+     * 从父任务的子任务表中移除，父任务之后的取消不再影响本任务
+     */
+    private void leaveParent() {
+        AbstractTask<?> parent = mParent;
+        mParent = null;
+        if (parent != null) {
+            synchronized (parent) {
+                if (parent.mChildren != null) {
+                    parent.mChildren.remove(this);
+                }
+            }
+        }
+    }
+
+    boolean isSubmitted() {
+        return mSubmitted;
+    }
+
+    /**
+     * 工作队列出队时判断是否跳过：只跳过经TaskDispatcher提交后被取消的任务，并结束这次提交。
+     * 直接交给线程池的任务保持原有语义，在run()中清除之前的取消标记后执行
+     */
+    boolean dropIfCanceled() {
+        if (mSubmitted && isCanceled()) {
+            leaveParent();
+            mSubmitted = false;
+            return true;
+        }
+        return false;
     }
 
     @Override
     public void run() {
+        Thread current = Thread.currentThread();
+        TASK_THREAD_UPDATER.set(this, current);
+        AbstractTask<?> parent = CURRENT_TASK.get();
+        CURRENT_TASK.set(this);
+        if (!mSubmitted) {
+            //未经TaskDispatcher提交（直接交给executorService()、serial(key)等），清除上一次执行留下的取消标记，任务可以复用
+            CANCELED_UPDATER.compareAndSet(this, CANCEL_INTERRUPTED, CANCEL_NONE);
+            mCallSite = null;
+        }
         try {
-            Log.d(TAG, "task run: " + Thread.currentThread().getName());
-            mTaskThread.compareAndSet(null, Thread.currentThread());
-
-            mCanceledAtomic.set(false);
-
-            final R result = doInBackground();
-            TaskDispatcher.runOnUIThread(new Runnable() {
-                @Override
-                public void run() {
-                    if (!isCanceled()) {
-                        onSuccess(result);
-                    }
-                }
-            });
-        } catch (final Throwable throwable) {
-            Log.e(TAG, "handle background task error " + throwable);
-            TaskDispatcher.runOnUIThread(new Runnable() {
-                @Override
-                public void run() {
-                    if (!isCanceled()) {
-                        onFail(throwable);
-                    }
+            if (!isCanceled()) {
+                runTask();
+            }
+            //排队期间已取消的任务不再执行，onCancel已在取消时投递
+        } finally {
+            CURRENT_TASK.set(parent);
+            leaveParent();
+            mSubmitted = false;
+            if (!TASK_THREAD_UPDATER.compareAndSet(this, current, null)) {
+                //cancel()已取走线程引用，等待它的中断送达后清除，不把中断标记留给线程池中的下一个任务
+                while (mCanceled == CANCEL_REQUESTED) {
+                    Thread.yield();
                 }
-            });
+                Thread.interrupted();
+            }
+            TaskScope scope = mScope;
+            if (scope != null) {
+                scope.detach(this);
+            }
+        }
+    }
+
+    private void runTask() {
+        TaskMetrics metrics = TaskDispatcher.metrics();
+        TaskMetrics.TaskStats stats = null;
+        long startNanos = 0;
+        if (metrics != null) {
+            stats = metrics.statsOf(getTaskName());
+            startNanos = System.nanoTime();
+            if (mEnqueueNanos != 0) {
+                stats.queueWait.recordNanos(startNanos - mEnqueueNanos);
+                mEnqueueNanos = 0;
+            }
+        }
+        try {
+            if (TaskDispatcher.isLogEnabled()) {
+                TaskDispatcher.logInfo(TAG + " run: " + Thread.currentThread().getName());
+            }
+            R result = doInBackground();
+            if (stats != null) {
+                stats.runTime.recordNanos(System.nanoTime() - startNanos);
+                stats.completed.increment();
+            }
+            TaskFuture<R> future = mFuture;
+            if (future != null) {
+                future.complete(result);
+            }
+            TaskDispatcher.postResult(ResultCarrier.obtain(this, ResultCarrier.TYPE_SUCCESS, result, null, stats));
+        } catch (Throwable throwable) {
+            TaskDispatcher.logError(TAG + " handle background task error " + throwable);
+            if (stats != null) {
+                stats.runTime.recordNanos(System.nanoTime() - startNanos);
+                stats.failed.increment();
+            }
+            TaskFuture<R> future = mFuture;
+            if (future != null) {
+                future.completeExceptionally(throwable);
+            }
+            TaskDispatcher.postResult(ResultCarrier.obtain(this, ResultCarrier.TYPE_FAIL, null, throwable, stats));
         }
     }
 }
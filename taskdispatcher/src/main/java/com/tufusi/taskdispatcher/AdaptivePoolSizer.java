@@ -0,0 +1,160 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by 鼠夏目 on 2020/3/29.
+ *
+ * @See
+ * @Description 并行线程池自适应大小
+ * <p>
+ * 采样每个任务的线程CPU时间与墙钟时间，按 核数 / CPU占比 估算目标线程数（阻塞越多需要越多线程），
+ * 只有队列有积压时才扩容，队列为空时才缩容；目标需要连续多个窗口保持同一方向才会调整，每次最多移动差距的一半，避免抖动。
+ * 评估在计时线程上执行，不会排在线程池积压的任务之后
+ */
+final class AdaptivePoolSizer implements HashedTimingWheel.TimerTask {
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    /**
+     * 采样窗口
+     */
+    private static final long SAMPLE_INTERVAL_MILLIS = 1000L;
+    /**
+     * 同一方向需要连续出现的窗口数
+     */
+    private static final int HYSTERESIS_WINDOWS = 3;
+    /**
+     * 窗口内至少完成的任务数，样本太少不做判断
+     */
+    private static final int MIN_SAMPLES = 8;
+
+    private static final ThreadLocal<long[]> TASK_START = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
+
+    private final ThreadPoolExecutor mExecutor;
+    private final HashedTimingWheel mTimer;
+    private final DispatcherPlatform mPlatform;
+    private final int mMinCoreSize;
+    private final int mMaxCoreSize;
+    private final PoolSizeListener mListener;
+
+    private final StripedCounter mWallNanos = new StripedCounter();
+    private final StripedCounter mCpuNanos = new StripedCounter();
+    private final StripedCounter mSamples = new StripedCounter();
+    private long mLastWall;
+    private long mLastCpu;
+    private long mLastSamples;
+    private int mTrend;
+    private int mTarget;
+
+    AdaptivePoolSizer(ThreadPoolExecutor executor, HashedTimingWheel timer, DispatcherPlatform platform, int minCoreSize, int maxCoreSize, PoolSizeListener listener) {
+        this.mExecutor = executor;
+        this.mTimer = timer;
+        this.mPlatform = platform;
+        this.mMinCoreSize = minCoreSize;
+        this.mMaxCoreSize = maxCoreSize;
+        this.mListener = listener;
+    }
+
+    void start() {
+        mTimer.newTimeout(this, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    void beforeExecute() {
+        long[] start = TASK_START.get();
+        start[0] = System.nanoTime();
+        start[1] = mPlatform.currentThreadCpuTimeNanos();
+    }
+
+    void afterExecute() {
+        long[] start = TASK_START.get();
+        long cpu = mPlatform.currentThreadCpuTimeNanos();
+        if (start[0] == 0 || start[1] < 0 || cpu < 0) {
+            //设备不支持线程CPU时间
+            return;
+        }
+        mWallNanos.add(System.nanoTime() - start[0]);
+        mCpuNanos.add(cpu - start[1]);
+        mSamples.increment();
+        start[0] = 0;
+    }
+
+    @Override
+    public void onTimeout(HashedTimingWheel.Timeout timeout) {
+        if (mExecutor.isShutdown()) {
+            return;
+        }
+        try {
+            evaluate();
+        } finally {
+            start();
+        }
+    }
+
+    private void evaluate() {
+        long wall = mWallNanos.sum();
+        long cpu = mCpuNanos.sum();
+        long samples = mSamples.sum();
+        long windowWall = wall - mLastWall;
+        long windowCpu = cpu - mLastCpu;
+        long windowSamples = samples - mLastSamples;
+        mLastWall = wall;
+        mLastCpu = cpu;
+        mLastSamples = samples;
+
+        int queueDepth = mExecutor.getQueue().size();
+        int current = mExecutor.getCorePoolSize();
+        if (windowSamples < MIN_SAMPLES || windowWall <= 0) {
+            //样本不足：队列为空说明负载很低，向最小值收缩
+            mTarget = mMinCoreSize;
+            updateTrend(queueDepth == 0 && current > mMinCoreSize ? -1 : 0);
+            apply(current, 1d, queueDepth);
+            return;
+        }
+        double cpuRatio = Math.max(0.05d, Math.min(1d, (double) windowCpu / windowWall));
+        int target = (int) Math.round(CPU_COUNT / cpuRatio);
+        target = Math.max(mMinCoreSize, Math.min(mMaxCoreSize, target));
+        mTarget = target;
+
+        if (target > current && queueDepth > 0) {
+            updateTrend(1);
+        } else if (target < current && queueDepth == 0) {
+            updateTrend(-1);
+        } else {
+            updateTrend(0);
+        }
+        apply(current, cpuRatio, queueDepth);
+    }
+
+    private void updateTrend(int direction) {
+        if (direction == 0) {
+            mTrend = 0;
+        } else if (Integer.signum(mTrend) == direction) {
+            mTrend += direction;
+        } else {
+            mTrend = direction;
+        }
+    }
+
+    private void apply(int current, double cpuRatio, int queueDepth) {
+        if (Math.abs(mTrend) < HYSTERESIS_WINDOWS) {
+            return;
+        }
+        int step = Math.max(1, Math.abs(mTarget - current) / 2);
+        int next = Math.max(mMinCoreSize, Math.min(mMaxCoreSize, current + Integer.signum(mTrend) * step));
+        mTrend = 0;
+        if (next == current) {
+            return;
+        }
+        mExecutor.setCorePoolSize(next);
+        TaskDispatcher.logInfo("adaptive pool resized " + current + " -> " + next + ", cpuRatio " + cpuRatio + ", queue " + queueDepth);
+        if (mListener != null) {
+            mListener.onPoolResized(current, next, cpuRatio, queueDepth);
+        }
+    }
+}
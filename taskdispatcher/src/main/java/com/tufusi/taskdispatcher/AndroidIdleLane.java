@@ -0,0 +1,177 @@
+package com.tufusi.taskdispatcher;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.Choreographer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Created by 鼠夏目 on 2020/4/3.
+ *
+ * @See
+ * @Description Android主线程空闲通道 - 非紧急工作只在主线程空闲且不影响出帧时执行
+ * <p>
+ * 有待执行工作时注册IdleHandler并逐帧挂FrameCallback：每帧绘制完成、消息队列空闲后，用本帧剩余时间（不超过时间片）执行一小批，
+ * 新的输入或下一帧消息到来时自然让出。每项工作有最大延迟，到期仍未执行时直接投递到主线程执行。队列为空时全部撤销，不产生空转
+ */
+final class AndroidIdleLane implements IdleLane, MessageQueue.IdleHandler, Choreographer.FrameCallback {
+
+    /**
+     * 按60Hz估计的帧间隔
+     */
+    private static final long FRAME_INTERVAL_NANOS = 16666667L;
+    /**
+     * 留给下一帧准备的余量
+     */
+    private static final long FRAME_MARGIN_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private final Handler mMainHandler;
+    private final HashedTimingWheel mTimer;
+    private final long mSliceNanos;
+
+    private final Queue<Entry> mQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mArmed = new AtomicBoolean(false);
+    private final AtomicInteger mPending = new AtomicInteger();
+    private final AtomicLong mIdleRuns = new AtomicLong();
+    private final AtomicLong mDeadlineRuns = new AtomicLong();
+    private final AtomicLong mIdleNanos = new AtomicLong();
+    private final AtomicLong mSlices = new AtomicLong();
+
+    /**
+     * 最近一帧的时间，仅主线程访问
+     */
+    private long mLastFrameNanos;
+
+    private final Runnable mArm = new Runnable() {
+        @Override
+        public void run() {
+            Looper.myQueue().addIdleHandler(AndroidIdleLane.this);
+            Choreographer.getInstance().postFrameCallback(AndroidIdleLane.this);
+        }
+    };
+
+    AndroidIdleLane(Handler mainHandler, HashedTimingWheel timer, long sliceMillis) {
+        this.mMainHandler = mainHandler;
+        this.mTimer = timer;
+        this.mSliceNanos = TimeUnit.MILLISECONDS.toNanos(sliceMillis);
+    }
+
+    @Override
+    public void post(Runnable runnable, long maxLatencyMillis) {
+        Entry entry = new Entry(runnable);
+        mPending.incrementAndGet();
+        mQueue.add(entry);
+        entry.mTimeout = mTimer.newTimeout(entry, maxLatencyMillis, TimeUnit.MILLISECONDS);
+        if (mArmed.compareAndSet(false, true)) {
+            mMainHandler.post(mArm);
+        }
+    }
+
+    @Override
+    public IdleLaneStats stats() {
+        return new IdleLaneStats(mIdleRuns.get(), mDeadlineRuns.get(), TimeUnit.NANOSECONDS.toMillis(mIdleNanos.get()),
+                mSlices.get(), mPending.get());
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mLastFrameNanos = frameTimeNanos;
+        if (mArmed.get()) {
+            //逐帧唤醒，帧消息处理完后队列空闲即会再次回调queueIdle
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public boolean queueIdle() {
+        long start = System.nanoTime();
+        long budget = Math.min(mSliceNanos, FRAME_INTERVAL_NANOS - (start - mLastFrameNanos) - FRAME_MARGIN_NANOS);
+        if (budget > 0) {
+            mSlices.incrementAndGet();
+            long deadline = start + budget;
+            Entry entry;
+            while (System.nanoTime() < deadline && (entry = mQueue.poll()) != null) {
+                if (entry.claim()) {
+                    entry.execute();
+                    mIdleRuns.incrementAndGet();
+                }
+            }
+            mIdleNanos.addAndGet(System.nanoTime() - start);
+        }
+        if (!mQueue.isEmpty()) {
+            return true;
+        }
+        mArmed.set(false);
+        if (!mQueue.isEmpty() && mArmed.compareAndSet(false, true)) {
+            //撤销期间又有新工作加入
+            return true;
+        }
+        Choreographer.getInstance().removeFrameCallback(this);
+        return false;
+    }
+
+    /**
+     * 一项空闲工作，同时作为最大延迟到期的计时回调
+     */
+    private final class Entry implements HashedTimingWheel.TimerTask, Runnable {
+
+        private final Runnable mRunnable;
+        private final AtomicBoolean mClaimed = new AtomicBoolean(false);
+        private volatile HashedTimingWheel.Timeout mTimeout;
+
+        Entry(Runnable runnable) {
+            this.mRunnable = runnable;
+        }
+
+        boolean claim() {
+            if (!mClaimed.compareAndSet(false, true)) {
+                return false;
+            }
+            mPending.decrementAndGet();
+            HashedTimingWheel.Timeout timeout = mTimeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            return true;
+        }
+
+        void execute() {
+            boolean traced = TaskTracer.isEnabled();
+            if (traced) {
+                TaskTracer.begin(TaskMetrics.nameOf(mRunnable));
+            }
+            try {
+                mRunnable.run();
+            } catch (Throwable throwable) {
+                TaskDispatcher.logError("idle task error " + throwable);
+            } finally {
+                if (traced) {
+                    TaskTracer.end();
+                }
+            }
+        }
+
+        @Override
+        public void onTimeout(HashedTimingWheel.Timeout timeout) {
+            if (!mClaimed.get()) {
+                mMainHandler.post(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            //最大延迟到期，不再等待空闲
+            if (claim()) {
+                execute();
+                mDeadlineRuns.incrementAndGet();
+            }
+        }
+    }
+}
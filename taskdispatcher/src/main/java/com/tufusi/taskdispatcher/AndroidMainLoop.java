@@ -0,0 +1,42 @@
+package com.tufusi.taskdispatcher;
+
+import android.os.Handler;
+
+/**
+ * Created by 鼠夏目 on 2020/4/8.
+ *
+ * @See
+ * @Description 基于Handler的消息循环
+ */
+final class AndroidMainLoop implements MainLoop {
+
+    private final Handler mHandler;
+
+    AndroidMainLoop(Handler handler) {
+        this.mHandler = handler;
+    }
+
+    Handler handler() {
+        return mHandler;
+    }
+
+    @Override
+    public void post(Runnable runnable) {
+        mHandler.post(runnable);
+    }
+
+    @Override
+    public void postDelayed(Runnable runnable, long delayMillis) {
+        mHandler.postDelayed(runnable, delayMillis);
+    }
+
+    @Override
+    public void removeCallbacks(Runnable runnable) {
+        mHandler.removeCallbacks(runnable);
+    }
+
+    @Override
+    public boolean isCurrentThread() {
+        return Thread.currentThread() == mHandler.getLooper().getThread();
+    }
+}
@@ -0,0 +1,91 @@
+package com.tufusi.taskdispatcher;
+
+import android.os.Debug;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.Trace;
+import android.util.Log;
+
+/**
+ * Created by 鼠夏目 on 2020/4/8.
+ *
+ * @See
+ * @Description Android平台适配
+ */
+final class AndroidPlatform extends DispatcherPlatform {
+
+    private static final String TAG = "TaskDispatcher";
+    /**
+     * android.os.Trace片段名的最大长度
+     */
+    private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+    @Override
+    public MainLoop newMainLoop() {
+        return new AndroidMainLoop(new SafeDispatcherHandler(Looper.getMainLooper()));
+    }
+
+    /**
+     * 获取回调到handlerName的handler。
+     * 用于在一个后台线程执行同一种任务时，目的为了线程安全。如数据库、文件操作等等
+     */
+    @Override
+    public MainLoop newBackgroundLoop(String name) {
+        HandlerThread handlerThread = new HandlerThread(name, Process.THREAD_PRIORITY_BACKGROUND);
+        handlerThread.start();
+
+        return new AndroidMainLoop(new SafeDispatcherHandler(handlerThread.getLooper()));
+    }
+
+    @Override
+    public ILog newLogger() {
+        return new ILog() {
+            @Override
+            public void info(String info) {
+                Log.i(TAG, info);
+            }
+
+            @Override
+            public void error(String error) {
+                Log.e(TAG, error);
+            }
+        };
+    }
+
+    @Override
+    public void onWorkerThreadStart() {
+        //设置线程优先级别
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+    }
+
+    @Override
+    public long currentThreadCpuTimeNanos() {
+        return Debug.threadCpuTimeNanos();
+    }
+
+    @Override
+    public int processId() {
+        return Process.myPid();
+    }
+
+    @Override
+    public int currentThreadId() {
+        return Process.myTid();
+    }
+
+    @Override
+    public void beginSection(String name) {
+        Trace.beginSection(name.length() > MAX_SECTION_NAME_LENGTH ? name.substring(0, MAX_SECTION_NAME_LENGTH) : name);
+    }
+
+    @Override
+    public void endSection() {
+        Trace.endSection();
+    }
+
+    @Override
+    IdleLane newIdleLane(MainLoop mainLoop, HashedTimingWheel timer, long sliceMillis) {
+        return new AndroidIdleLane(((AndroidMainLoop) mainLoop).handler(), timer, sliceMillis);
+    }
+}
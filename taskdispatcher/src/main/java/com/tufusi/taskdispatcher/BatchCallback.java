@@ -0,0 +1,26 @@
+package com.tufusi.taskdispatcher;
+
+/**
+ * Created by 鼠夏目 on 2020/4/6.
+ *
+ * @See
+ * @Description 批处理中单个条目的完成回调，在主线程中执行，同一批的回调合并为一条主线程消息
+ */
+public abstract class BatchCallback<T> {
+
+    /**
+     * 条目所在的批次处理成功
+     *
+     * @param item 条目
+     */
+    public abstract void onSuccess(T item);
+
+    /**
+     * 条目所在的批次处理失败或被拒绝执行，非必处理
+     *
+     * @param item      条目
+     * @param throwable 抛出的异常
+     */
+    public void onFail(T item, Throwable throwable) {
+    }
+}
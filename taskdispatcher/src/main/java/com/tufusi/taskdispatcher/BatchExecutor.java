@@ -0,0 +1,224 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Created by 鼠夏目 on 2020/4/6.
+ *
+ * @See
+ * @Description 批处理执行器 - 把大量细小的提交累积成批，由 {@link BatchHandler} 在工作线程中一次处理
+ * <p>
+ * 提交只是一次CAS压栈，不经过线程池队列也不唤醒线程；累积到maxItems条或第一条等待超过maxDelayMillis时整批出栈，
+ * 作为一个任务投递到执行器。到期计时借用共享时间轮，每批最多一个计时节点。
+ * 并发压栈时一批可能多于maxItems条；不同批次可能并发执行，需要有序时使用 {@link TaskDispatcher#serial(String)} 作为执行器
+ */
+public final class BatchExecutor<T> {
+
+    private static final String TAG = "BatchExecutor";
+
+    /**
+     * 栈节点，count为从栈底到本节点的条目数，栈顶节点的count即整批大小
+     */
+    private static final class Node<T> {
+
+        final T item;
+        final BatchCallback<T> callback;
+        Node<T> next;
+        int count;
+
+        Node(T item, BatchCallback<T> callback) {
+            this.item = item;
+            this.callback = callback;
+        }
+    }
+
+    private final String mKey;
+    private final int mMaxItems;
+    private final long mMaxDelayMillis;
+    private final BatchHandler<T> mHandler;
+    private final Executor mExecutor;
+    private final HashedTimingWheel mTimer;
+
+    private final AtomicReference<Node<T>> mHead = new AtomicReference<>();
+    /**
+     * 出栈代数，在取走栈之前递增：计时节点记录布置时的代数，到期时代数已变说明它负责的那一批已被（或正在被）取走
+     */
+    private final AtomicLong mGeneration = new AtomicLong();
+    /**
+     * 实际出栈的批次数
+     */
+    private final AtomicLong mFlushes = new AtomicLong();
+    private final StripedCounter mItems = new StripedCounter();
+
+    BatchExecutor(String key, int maxItems, long maxDelayMillis, BatchHandler<T> handler, Executor executor, HashedTimingWheel timer) {
+        this.mKey = key;
+        this.mMaxItems = maxItems;
+        this.mMaxDelayMillis = maxDelayMillis;
+        this.mHandler = handler;
+        this.mExecutor = executor;
+        this.mTimer = timer;
+    }
+
+    /**
+     * 提交一个条目
+     */
+    public void submit(T item) {
+        submit(item, null);
+    }
+
+    /**
+     * 提交一个条目，所在批次处理结束后在主线程回调
+     *
+     * @param item     条目
+     * @param callback 完成回调，可为null
+     */
+    public void submit(T item, BatchCallback<T> callback) {
+        Node<T> node = new Node<>(item, callback);
+        Node<T> head;
+        do {
+            head = mHead.get();
+            node.next = head;
+            node.count = head == null ? 1 : head.count + 1;
+        } while (!mHead.compareAndSet(head, node));
+        mItems.increment();
+
+        if (node.count % mMaxItems == 0) {
+            //负责出栈的线程被挂起时栈会继续增长，每满maxItems条都尝试出栈，限制单批大小
+            flush();
+        } else if (head == null) {
+            //本批第一条，按最大延迟布置计时
+            final long generation = mGeneration.get();
+            mTimer.newTimeout(new HashedTimingWheel.TimerTask() {
+                @Override
+                public void onTimeout(HashedTimingWheel.Timeout timeout) {
+                    if (mGeneration.get() == generation) {
+                        flush();
+                    }
+                }
+            }, mMaxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 立即把已累积的条目作为一批投递，不等待数量或延迟条件
+     */
+    public void flush() {
+        //先递增代数再取栈：取栈之后才压入的第一条记录到的是新代数，它的计时不会被误判为已出栈
+        mGeneration.incrementAndGet();
+        Node<T> head = mHead.getAndSet(null);
+        if (head == null) {
+            return;
+        }
+        mFlushes.incrementAndGet();
+        //栈顶是最后提交的条目，倒序填充恢复提交顺序
+        int size = head.count;
+        Object[] items = new Object[size];
+        BatchCallback<?>[] callbacks = null;
+        Node<T> node = head;
+        for (int i = size - 1; i >= 0; i--) {
+            items[i] = node.item;
+            if (node.callback != null) {
+                if (callbacks == null) {
+                    callbacks = new BatchCallback<?>[size];
+                }
+                callbacks[i] = node.callback;
+            }
+            node = node.next;
+        }
+        Batch batch = new Batch(items, callbacks);
+        try {
+            mExecutor.execute(batch);
+        } catch (RejectedExecutionException e) {
+            TaskDispatcher.logError(TAG + " " + mKey + " batch rejected " + e);
+            batch.deliver(e);
+        }
+    }
+
+    /**
+     * 已出栈的批次数
+     */
+    public long batches() {
+        return mFlushes.get();
+    }
+
+    /**
+     * 累计提交的条目数，与 {@link #batches()} 之差即节省的线程池投递次数
+     */
+    public long items() {
+        return mItems.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "BatchExecutor{" + mKey + "}";
+    }
+
+    /**
+     * 一批条目，作为单个任务在执行器中处理
+     */
+    private final class Batch extends AbstractList<T> implements Runnable {
+
+        private final Object[] mItems;
+        private final BatchCallback<?>[] mCallbacks;
+
+        Batch(Object[] items, BatchCallback<?>[] callbacks) {
+            this.mItems = items;
+            this.mCallbacks = callbacks;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            return (T) mItems[index];
+        }
+
+        @Override
+        public int size() {
+            return mItems.length;
+        }
+
+        @Override
+        public void run() {
+            Throwable failure = null;
+            try {
+                mHandler.onBatch(this);
+            } catch (Throwable t) {
+                TaskDispatcher.logError(TAG + " " + mKey + " batch error " + t);
+                failure = t;
+            }
+            deliver(failure);
+        }
+
+        /**
+         * 把本批所有条目的完成回调合并为一条主线程消息
+         */
+        void deliver(final Throwable failure) {
+            if (mCallbacks == null) {
+                return;
+            }
+            TaskDispatcher.postResult(new Runnable() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public void run() {
+                    for (int i = 0; i < mCallbacks.length; i++) {
+                        BatchCallback<T> callback = (BatchCallback<T>) mCallbacks[i];
+                        if (callback == null) {
+                            continue;
+                        }
+                        if (failure == null) {
+                            callback.onSuccess(get(i));
+                        } else {
+                            callback.onFail(get(i), failure);
+                        }
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.List;
+
+/**
+ * Created by 鼠夏目 on 2020/4/6.
+ *
+ * @See
+ * @Description 批处理回调，在工作线程中执行，一次处理一批累积的条目（如在一个数据库事务中插入多行）
+ */
+public interface BatchHandler<T> {
+
+    /**
+     * 处理一批条目，抛出异常时本批所有条目回调失败
+     *
+     * @param items 按提交顺序排列的条目
+     * @throws Exception 处理失败
+     */
+    void onBatch(List<T> items) throws Exception;
+}
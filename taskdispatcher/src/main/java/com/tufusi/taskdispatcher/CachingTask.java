@@ -0,0 +1,103 @@
+package com.tufusi.taskdispatcher;
+
+/**
+ * Created by 鼠夏目 on 2020/4/5.
+ *
+ * @See
+ * @Description 缓存任务 - 包装缓存未命中的任务，执行成功后把结果写入 {@link ResultCache}，回调转发给原任务
+ * <p>
+ * 通过去重key提交，同一缓存key同时只有一次执行，其余提交挂载到这次执行上；
+ * 挂载的包装任务不会执行，原任务在回调投递后由 {@link DedupTask} 结束本次提交
+ */
+final class CachingTask<R> extends AbstractTask<R> {
+
+    private final ResultCache mCache;
+    private final String mKey;
+    private final AbstractTask<R> mTask;
+    private boolean mEnded;
+
+    CachingTask(ResultCache cache, String key, AbstractTask<R> task) {
+        this.mCache = cache;
+        this.mKey = key;
+        this.mTask = task;
+        setPriority(task.getPriority());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public R doInBackground() throws InterruptedException {
+        try {
+            //排队期间同一key的上一次执行可能已写入缓存
+            R result = (R) mCache.get(mKey, false);
+            if (result == null) {
+                result = mTask.doInBackground();
+                if (!isCanceled()) {
+                    mCache.put(mKey, result);
+                }
+            }
+            return result;
+        } finally {
+            detachScope();
+        }
+    }
+
+    @Override
+    public void onSuccess(R result) {
+        mTask.onSuccess(result);
+    }
+
+    @Override
+    public void onFail(Throwable throwable) {
+        mTask.onFail(throwable);
+    }
+
+    @Override
+    public void onCancel() {
+        mTask.onCancel();
+    }
+
+    @Override
+    void cancel() {
+        super.cancel();
+        detachScope();
+    }
+
+    @Override
+    void endDelegatedSubmission() {
+        detachScope();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return super.isCanceled() || mTask.isCanceled();
+    }
+
+    @Override
+    public String getTaskName() {
+        return mTask.getTaskName();
+    }
+
+    @Override
+    public ExecutionDomain getExecutionDomain() {
+        return mTask.getExecutionDomain();
+    }
+
+    @Override
+    public String toString() {
+        return "CachingTask{" + mKey + "}";
+    }
+
+    /**
+     * 原任务不经过run()，由包装任务负责让它离开作用域并结束本次提交。
+     * 执行结束、取消与回调投递都会调用，只生效一次，不影响原任务之后的重新提交
+     */
+    private void detachScope() {
+        synchronized (this) {
+            if (mEnded) {
+                return;
+            }
+            mEnded = true;
+        }
+        mTask.endDelegatedSubmission();
+    }
+}
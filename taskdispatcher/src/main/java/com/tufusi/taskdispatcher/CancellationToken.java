@@ -0,0 +1,93 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Created by 鼠夏目 on 2020/4/1.
+ *
+ * @See
+ * @Description 协作式取消标记，由 {@link TaskScope} 持有，子作用域的标记随父标记一起取消
+ * <p>
+ * 任务内部的长循环应定期检查 {@link #isCancellationRequested()}，或调用 {@link #throwIfCancellationRequested()}
+ */
+public final class CancellationToken {
+
+    private volatile boolean mCancelled;
+    private List<Runnable> mCallbacks;
+
+    CancellationToken() {
+    }
+
+    /**
+     * 是否已请求取消
+     */
+    public boolean isCancellationRequested() {
+        return mCancelled;
+    }
+
+    /**
+     * 已请求取消时抛出InterruptedException，与AbstractTask被取消时的表现一致
+     */
+    public void throwIfCancellationRequested() throws InterruptedException {
+        if (mCancelled) {
+            throw new InterruptedException("cancellation requested");
+        }
+    }
+
+    /**
+     * 注册取消回调，在调用取消的线程中执行；已取消时立即执行
+     *
+     * @param callback 回调
+     */
+    public void register(Runnable callback) {
+        synchronized (this) {
+            if (!mCancelled) {
+                if (mCallbacks == null) {
+                    mCallbacks = new ArrayList<>(2);
+                }
+                mCallbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    /**
+     * 移除尚未执行的取消回调
+     *
+     * @param callback 回调
+     */
+    public synchronized void unregister(Runnable callback) {
+        if (mCallbacks != null) {
+            mCallbacks.remove(callback);
+        }
+    }
+
+    /**
+     * 请求取消并执行已注册的回调，只有第一次调用生效
+     *
+     * @return 是否由本次调用完成取消
+     */
+    boolean cancel() {
+        List<Runnable> callbacks;
+        synchronized (this) {
+            if (mCancelled) {
+                return false;
+            }
+            mCancelled = true;
+            callbacks = mCallbacks;
+            mCallbacks = null;
+        }
+        if (callbacks != null) {
+            for (Runnable callback : callbacks) {
+                try {
+                    callback.run();
+                } catch (Throwable throwable) {
+                    TaskDispatcher.logError("cancellation callback error " + throwable);
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,143 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Created by 鼠夏目 on 2020/3/23.
+ *
+ * @See
+ * @Description 去重任务 - 同一个key正在排队或执行时，后续提交的任务只挂载回调，共享同一次执行结果
+ * <p>
+ * 执行结束（成功、失败或取消）后从进行中表移除，之后同一key的提交会重新执行。
+ * 挂载的任务不经过run()，回调投递后在这里离开作用域并结束本次提交
+ */
+final class DedupTask<R> extends AbstractTask<R> {
+
+    private final String mKey;
+    private final ConcurrentMap<String, DedupTask<?>> mInFlight;
+    private final List<AbstractTask<R>> mListeners = new ArrayList<>(2);
+    private AbstractTask<R> mDelegate;
+    private boolean mStarted;
+    private boolean mFinished;
+
+    DedupTask(String key, ConcurrentMap<String, DedupTask<?>> inFlight, AbstractTask<R> task) {
+        this.mKey = key;
+        this.mInFlight = inFlight;
+        this.mDelegate = task;
+        this.mListeners.add(task);
+        setPriority(task.getPriority());
+    }
+
+    /**
+     * 挂载一个任务的回调到本次执行
+     *
+     * @param task            新提交的任务
+     * @param replaceIfQueued 尚未开始执行时是否改为执行新任务的doInBackground（旧任务仍会收到结果）
+     * @return 本次执行已结束无法挂载时返回false
+     */
+    synchronized boolean attach(AbstractTask<R> task, boolean replaceIfQueued) {
+        if (mFinished) {
+            return false;
+        }
+        mListeners.add(task);
+        if (replaceIfQueued && !mStarted) {
+            mDelegate = task;
+        }
+        return true;
+    }
+
+    @Override
+    public R doInBackground() throws InterruptedException {
+        AbstractTask<R> delegate;
+        synchronized (this) {
+            mStarted = true;
+            delegate = mDelegate;
+        }
+        try {
+            if (allListenersCanceled()) {
+                throw new InterruptedException("all deduplicated tasks canceled");
+            }
+            return delegate.doInBackground();
+        } finally {
+            finish();
+        }
+    }
+
+    @Override
+    public void onSuccess(R result) {
+        List<AbstractTask<R>> listeners = listeners();
+        for (AbstractTask<R> listener : listeners) {
+            if (!listener.isCanceled()) {
+                listener.onSuccess(result);
+            }
+        }
+        endListeners(listeners);
+    }
+
+    @Override
+    public void onFail(Throwable throwable) {
+        List<AbstractTask<R>> listeners = listeners();
+        for (AbstractTask<R> listener : listeners) {
+            if (!listener.isCanceled()) {
+                listener.onFail(throwable);
+            }
+        }
+        endListeners(listeners);
+    }
+
+    @Override
+    void cancel() {
+        finish();
+        List<AbstractTask<R>> listeners = listeners();
+        for (AbstractTask<R> listener : listeners) {
+            if (!listener.isCanceled()) {
+                listener.cancel();
+            }
+        }
+        endListeners(listeners);
+        super.cancel();
+    }
+
+    @Override
+    public synchronized String getTaskName() {
+        return mDelegate.getTaskName();
+    }
+
+    @Override
+    public synchronized ExecutionDomain getExecutionDomain() {
+        return mDelegate.getExecutionDomain();
+    }
+
+    @Override
+    public String toString() {
+        return "DedupTask{" + mKey + "}";
+    }
+
+    private void finish() {
+        synchronized (this) {
+            mFinished = true;
+        }
+        mInFlight.remove(mKey, this);
+    }
+
+    private static <R> void endListeners(List<AbstractTask<R>> listeners) {
+        for (AbstractTask<R> listener : listeners) {
+            listener.endDelegatedSubmission();
+        }
+    }
+
+    private synchronized boolean allListenersCanceled() {
+        for (AbstractTask<R> listener : mListeners) {
+            if (!listener.isCanceled()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized List<AbstractTask<R>> listeners() {
+        return new ArrayList<>(mListeners);
+    }
+}
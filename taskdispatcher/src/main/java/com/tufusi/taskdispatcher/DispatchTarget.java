@@ -0,0 +1,23 @@
+package com.tufusi.taskdispatcher;
+
+/**
+ * Created by 鼠夏目 on 2020/3/24.
+ *
+ * @See
+ * @Description 任务执行的目标线程
+ */
+public enum DispatchTarget {
+
+    /**
+     * 主线程，{@link TaskDispatcher#mainHandler()}
+     */
+    MAIN,
+    /**
+     * 公用的IO线程，{@link TaskDispatcher#ioHandler()}
+     */
+    IO,
+    /**
+     * 并行线程池，{@link TaskDispatcher#executorService()}
+     */
+    PARALLEL
+}
@@ -0,0 +1,336 @@
+package com.tufusi.taskdispatcher;
+
+/**
+ * Created by 鼠夏目 on 2020/3/18.
+ *
+ * @See
+ * @Description 任务分发器配置，需在第一次使用TaskDispatcher之前通过 {@link TaskDispatcher#init(DispatcherConfig)} 设置
+ */
+public final class DispatcherConfig {
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    /**
+     * 复制AsyncTask
+     * 从AsyncTask复制的核心池中至少有2个线程，最多4个线程，
+     * 更倾向于比CPU处理器数量少一个，从而避免饱和，同时希望核心池中至少有2个线程和最多4个线程
+     * 从AsyncTask复制CPU与后台工作
+     */
+    static final int DEFAULT_CORE_POOL_SIZE = Math.max(2, Math.min(CPU_COUNT - 1, 4));
+    /**
+     * 线程池中最大数量
+     */
+    static final int DEFAULT_MAXIMUM_POOL_SIZE = DEFAULT_CORE_POOL_SIZE * 2 + 1;
+    /**
+     * 线程存活时长，单位秒
+     */
+    static final long DEFAULT_KEEP_ALIVE_SECONDS = 60L;
+    /**
+     * 工作队列容量
+     */
+    static final int DEFAULT_QUEUE_CAPACITY = 128;
+    /**
+     * IO执行域最大线程数，阻塞型任务大部分时间在等待，上限远高于CPU核数
+     */
+    static final int DEFAULT_IO_MAXIMUM_POOL_SIZE = Math.max(64, CPU_COUNT);
+    /**
+     * BLOCK策略默认的最长等待时间，单位毫秒
+     */
+    static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 100L;
+    /**
+     * 合并投递时每条主线程消息最多执行的回调数
+     */
+    static final int DEFAULT_MAIN_BATCH_MAX_ITEMS = 64;
+    /**
+     * 合并投递时每条主线程消息的时间预算，单位毫秒，留出一帧中绘制的时间
+     */
+    static final long DEFAULT_MAIN_BATCH_BUDGET_MILLIS = 4L;
+
+    /**
+     * 空闲通道每个时间片的上限，单位毫秒
+     */
+    static final long DEFAULT_IDLE_SLICE_MILLIS = 4L;
+    /**
+     * 空闲通道默认最大延迟，单位毫秒，超过后不再等待空闲
+     */
+    static final long DEFAULT_IDLE_MAX_LATENCY_MILLIS = 5000L;
+
+    /**
+     * 任务结果缓存默认条目数上限
+     */
+    static final int DEFAULT_RESULT_CACHE_MAX_ENTRIES = 64;
+
+    final int corePoolSize;
+    final int maximumPoolSize;
+    final long keepAliveSeconds;
+    final int queueCapacity;
+    final OverflowPolicy overflowPolicy;
+    final long blockTimeoutMillis;
+    final OverflowListener overflowListener;
+    final ExecutorBackend executorBackend;
+    final DispatcherPlatform platform;
+    final int ioMaximumPoolSize;
+    final boolean adaptivePoolSizing;
+    final int adaptiveMinCoreSize;
+    final int adaptiveMaxCoreSize;
+    final PoolSizeListener poolSizeListener;
+    final long idleSliceMillis;
+    final long idleMaxLatencyMillis;
+    final int resultCacheMaxEntries;
+    final long resultCacheTtlMillis;
+    final boolean resultCacheWeakValues;
+    final boolean batchMainCallbacks;
+    final int mainBatchMaxItems;
+    final long mainBatchBudgetMillis;
+
+    private DispatcherConfig(Builder builder) {
+        this.corePoolSize = builder.corePoolSize;
+        this.maximumPoolSize = builder.maximumPoolSize;
+        this.keepAliveSeconds = builder.keepAliveSeconds;
+        this.queueCapacity = builder.queueCapacity;
+        this.overflowPolicy = builder.overflowPolicy;
+        this.blockTimeoutMillis = builder.blockTimeoutMillis;
+        this.overflowListener = builder.overflowListener;
+        this.executorBackend = builder.executorBackend;
+        this.platform = builder.platform;
+        this.ioMaximumPoolSize = builder.ioMaximumPoolSize;
+        this.adaptivePoolSizing = builder.adaptivePoolSizing;
+        this.adaptiveMinCoreSize = builder.adaptiveMinCoreSize;
+        this.adaptiveMaxCoreSize = builder.adaptiveMaxCoreSize;
+        this.poolSizeListener = builder.poolSizeListener;
+        this.idleSliceMillis = builder.idleSliceMillis;
+        this.idleMaxLatencyMillis = builder.idleMaxLatencyMillis;
+        this.resultCacheMaxEntries = builder.resultCacheMaxEntries;
+        this.resultCacheTtlMillis = builder.resultCacheTtlMillis;
+        this.resultCacheWeakValues = builder.resultCacheWeakValues;
+        this.batchMainCallbacks = builder.batchMainCallbacks;
+        this.mainBatchMaxItems = builder.mainBatchMaxItems;
+        this.mainBatchBudgetMillis = builder.mainBatchBudgetMillis;
+    }
+
+    static DispatcherConfig defaultConfig() {
+        return new Builder().build();
+    }
+
+    public static final class Builder {
+
+        private int corePoolSize = DEFAULT_CORE_POOL_SIZE;
+        private int maximumPoolSize = DEFAULT_MAXIMUM_POOL_SIZE;
+        private long keepAliveSeconds = DEFAULT_KEEP_ALIVE_SECONDS;
+        private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.ABORT;
+        private long blockTimeoutMillis = DEFAULT_BLOCK_TIMEOUT_MILLIS;
+        private OverflowListener overflowListener;
+        private ExecutorBackend executorBackend = ExecutorBackend.THREAD_POOL;
+        private DispatcherPlatform platform;
+        private int ioMaximumPoolSize = DEFAULT_IO_MAXIMUM_POOL_SIZE;
+        private boolean adaptivePoolSizing;
+        private int adaptiveMinCoreSize;
+        private int adaptiveMaxCoreSize;
+        private PoolSizeListener poolSizeListener;
+        private long idleSliceMillis = DEFAULT_IDLE_SLICE_MILLIS;
+        private long idleMaxLatencyMillis = DEFAULT_IDLE_MAX_LATENCY_MILLIS;
+        private int resultCacheMaxEntries = DEFAULT_RESULT_CACHE_MAX_ENTRIES;
+        private long resultCacheTtlMillis;
+        private boolean resultCacheWeakValues;
+        private boolean batchMainCallbacks;
+        private int mainBatchMaxItems = DEFAULT_MAIN_BATCH_MAX_ITEMS;
+        private long mainBatchBudgetMillis = DEFAULT_MAIN_BATCH_BUDGET_MILLIS;
+
+        /**
+         * 并行线程池核心线程数
+         */
+        public Builder setCorePoolSize(int corePoolSize) {
+            this.corePoolSize = corePoolSize;
+            return this;
+        }
+
+        /**
+         * 并行线程池与超时线程池的最大线程数
+         */
+        public Builder setMaximumPoolSize(int maximumPoolSize) {
+            this.maximumPoolSize = maximumPoolSize;
+            return this;
+        }
+
+        /**
+         * 非核心线程空闲存活时长，单位秒
+         */
+        public Builder setKeepAliveSeconds(long keepAliveSeconds) {
+            this.keepAliveSeconds = keepAliveSeconds;
+            return this;
+        }
+
+        /**
+         * 并行线程池工作队列容量
+         */
+        public Builder setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * 线程池饱和时的处理策略
+         */
+        public Builder setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * BLOCK策略的最长等待时间，单位毫秒
+         */
+        public Builder setBlockTimeoutMillis(long blockTimeoutMillis) {
+            this.blockTimeoutMillis = blockTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * 溢出策略被触发时的回调
+         */
+        public Builder setOverflowListener(OverflowListener overflowListener) {
+            this.overflowListener = overflowListener;
+            return this;
+        }
+
+        /**
+         * 并行线程池的实现方式，WORK_STEALING时工作线程数为corePoolSize
+         */
+        public Builder setExecutorBackend(ExecutorBackend executorBackend) {
+            this.executorBackend = executorBackend;
+            return this;
+        }
+
+        /**
+         * 运行平台，默认 {@link DispatcherPlatform#android()}
+         */
+        public Builder setPlatform(DispatcherPlatform platform) {
+            this.platform = platform;
+            return this;
+        }
+
+        /**
+         * IO执行域的最大线程数，线程按需创建，空闲keepAliveSeconds后回收
+         */
+        public Builder setIOMaximumPoolSize(int ioMaximumPoolSize) {
+            this.ioMaximumPoolSize = ioMaximumPoolSize;
+            return this;
+        }
+
+        /**
+         * 开启并行线程池自适应大小：根据任务CPU时间与墙钟时间的比例以及队列积压，在[minCoreSize, maxCoreSize]之间调整核心线程数。
+         * 仅支持THREAD_POOL后端，与WORK_STEALING同时设置时build()抛出IllegalArgumentException；maxCoreSize不能超过maximumPoolSize
+         */
+        public Builder setAdaptivePoolSizing(int minCoreSize, int maxCoreSize) {
+            this.adaptivePoolSizing = true;
+            this.adaptiveMinCoreSize = minCoreSize;
+            this.adaptiveMaxCoreSize = maxCoreSize;
+            return this;
+        }
+
+        /**
+         * 自适应调整核心线程数时的回调
+         */
+        public Builder setPoolSizeListener(PoolSizeListener poolSizeListener) {
+            this.poolSizeListener = poolSizeListener;
+            return this;
+        }
+
+        /**
+         * 空闲通道每个时间片的上限，实际时间片还受本帧剩余时间限制
+         */
+        public Builder setIdleSliceMillis(long idleSliceMillis) {
+            this.idleSliceMillis = idleSliceMillis;
+            return this;
+        }
+
+        /**
+         * 空闲通道默认最大延迟，超过后工作直接投递到主线程执行
+         */
+        public Builder setIdleMaxLatencyMillis(long idleMaxLatencyMillis) {
+            this.idleMaxLatencyMillis = idleMaxLatencyMillis;
+            return this;
+        }
+
+        /**
+         * 任务结果缓存（{@link TaskDispatcher#executeCached(String, AbstractTask)}）的容量与失效策略
+         *
+         * @param maxEntries 条目数上限，0表示不缓存
+         * @param ttlMillis  结果有效期，0表示不过期
+         * @param weakValues 是否以弱引用持有结果，结果只被缓存引用时可被回收
+         */
+        public Builder setResultCache(int maxEntries, long ttlMillis, boolean weakValues) {
+            this.resultCacheMaxEntries = maxEntries;
+            this.resultCacheTtlMillis = ttlMillis;
+            this.resultCacheWeakValues = weakValues;
+            return this;
+        }
+
+        /**
+         * 是否合并投递AbstractTask的主线程回调（onSuccess/onFail/onCancel）
+         */
+        public Builder setBatchMainCallbacks(boolean batchMainCallbacks) {
+            this.batchMainCallbacks = batchMainCallbacks;
+            return this;
+        }
+
+        /**
+         * 合并投递时每条主线程消息最多执行的回调数
+         */
+        public Builder setMainBatchMaxItems(int mainBatchMaxItems) {
+            this.mainBatchMaxItems = mainBatchMaxItems;
+            return this;
+        }
+
+        /**
+         * 合并投递与分片投递（{@link AbstractChunkedTask}）时每条主线程消息的时间预算，单位毫秒
+         */
+        public Builder setMainBatchBudgetMillis(long mainBatchBudgetMillis) {
+            this.mainBatchBudgetMillis = mainBatchBudgetMillis;
+            return this;
+        }
+
+        public DispatcherConfig build() {
+            if (corePoolSize < 1 || maximumPoolSize < corePoolSize) {
+                throw new IllegalArgumentException("require 1 <= corePoolSize <= maximumPoolSize");
+            }
+            if (queueCapacity < 1) {
+                throw new IllegalArgumentException("queueCapacity must be positive");
+            }
+            if (keepAliveSeconds < 0 || blockTimeoutMillis < 0) {
+                throw new IllegalArgumentException("keepAliveSeconds and blockTimeoutMillis must not be negative");
+            }
+            if (mainBatchMaxItems < 1 || mainBatchBudgetMillis < 1) {
+                throw new IllegalArgumentException("mainBatchMaxItems and mainBatchBudgetMillis must be positive");
+            }
+            if (idleSliceMillis < 1 || idleMaxLatencyMillis < 0) {
+                throw new IllegalArgumentException("idleSliceMillis must be positive and idleMaxLatencyMillis not negative");
+            }
+            if (resultCacheMaxEntries < 0 || resultCacheTtlMillis < 0) {
+                throw new IllegalArgumentException("resultCache maxEntries and ttlMillis must not be negative");
+            }
+            if (ioMaximumPoolSize < 1) {
+                throw new IllegalArgumentException("ioMaximumPoolSize must be positive");
+            }
+            if (adaptivePoolSizing && (adaptiveMinCoreSize < 1 || adaptiveMaxCoreSize < adaptiveMinCoreSize
+                    || adaptiveMaxCoreSize > maximumPoolSize)) {
+                throw new IllegalArgumentException("require 1 <= minCoreSize <= maxCoreSize <= maximumPoolSize");
+            }
+            if (overflowPolicy == null) {
+                overflowPolicy = OverflowPolicy.ABORT;
+            }
+            if (platform == null) {
+                platform = DispatcherPlatform.android();
+            }
+            if (adaptivePoolSizing && platform.currentThreadCpuTimeNanos() < 0) {
+                throw new IllegalArgumentException("adaptive pool sizing requires per-thread CPU time, which the platform does not provide");
+            }
+            if (executorBackend == null) {
+                executorBackend = ExecutorBackend.THREAD_POOL;
+            }
+            if (adaptivePoolSizing && executorBackend != ExecutorBackend.THREAD_POOL) {
+                throw new IllegalArgumentException("adaptive pool sizing requires the THREAD_POOL executor backend, not " + executorBackend);
+            }
+            return new DispatcherConfig(this);
+        }
+    }
+}
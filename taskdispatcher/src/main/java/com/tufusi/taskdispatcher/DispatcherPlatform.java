@@ -0,0 +1,109 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Created by 鼠夏目 on 2020/4/8.
+ *
+ * @See
+ * @Description 运行平台适配 - 调度核心依赖的消息循环、日志与线程设置都从这里获取
+ * <p>
+ * 默认使用 {@link #android()}；在服务端或CI上做压测时通过 {@link DispatcherConfig.Builder#setPlatform(DispatcherPlatform)}
+ * 换成 {@link #jvm(boolean)}。依赖Handler、Choreographer、Lifecycle的功能（mainHandler、ioHandler、生命周期任务、空闲通道的空闲检测）只在Android平台可用；
+ * 线程CPU时间、进程与线程id、追踪片段也由平台提供，调度核心不直接引用android类
+ */
+public abstract class DispatcherPlatform {
+
+    /**
+     * Android平台：主线程Looper、HandlerThread、android.util.Log，工作线程设为后台优先级
+     */
+    public static DispatcherPlatform android() {
+        return new AndroidPlatform();
+    }
+
+    /**
+     * 纯JVM平台：主线程与IO串行线程由独立的循环线程代替，日志输出到java.util.logging
+     *
+     * @param useVirtualThreads 运行时支持虚拟线程（JDK 21+）时，IO执行域的任务每个运行在一个虚拟线程上，否则仍使用IO线程池
+     */
+    public static DispatcherPlatform jvm(boolean useVirtualThreads) {
+        return new JvmPlatform(useVirtualThreads);
+    }
+
+    /**
+     * 创建主线程消息循环，AbstractTask的回调、runOnUIThread等都投递到这里
+     */
+    public abstract MainLoop newMainLoop();
+
+    /**
+     * 创建一个后台串行消息循环，用于投递到IO目标的工作
+     *
+     * @param name 线程名
+     */
+    public abstract MainLoop newBackgroundLoop(String name);
+
+    /**
+     * 默认日志输出实现，可再通过 {@link TaskDispatcher#addLogImpl(ILog)} 替换
+     */
+    public abstract ILog newLogger();
+
+    /**
+     * 调度器创建的工作线程开始运行时调用，用于设置线程优先级等
+     */
+    public void onWorkerThreadStart() {
+    }
+
+    /**
+     * 为IO执行域提供每个任务一个线程的执行器。任务不再排队，IO执行域的队列指标不适用，
+     * 见 {@link TaskDispatcher#hasWorkQueue(ExecutionDomain)}
+     *
+     * @return 执行器，返回null时使用IO线程池
+     */
+    public ExecutorService newBlockingExecutor() {
+        return null;
+    }
+
+    /**
+     * 当前线程累计消耗的CPU时间，自适应线程池用它估算任务的阻塞比例
+     *
+     * @return 纳秒，平台不支持时返回-1
+     */
+    public long currentThreadCpuTimeNanos() {
+        return -1;
+    }
+
+    /**
+     * 进程id，写入导出的追踪文件
+     */
+    public int processId() {
+        return 0;
+    }
+
+    /**
+     * 当前线程id，写入导出的追踪文件
+     */
+    public int currentThreadId() {
+        return (int) Thread.currentThread().getId();
+    }
+
+    /**
+     * 开启追踪时在任务开始处打开一个平台追踪片段，与 {@link #endSection()} 在同一线程成对调用
+     */
+    public void beginSection(String name) {
+    }
+
+    /**
+     * 关闭当前线程最近打开的追踪片段
+     */
+    public void endSection() {
+    }
+
+    /**
+     * 创建主线程空闲通道，需要出帧与消息队列空闲信号
+     *
+     * @return 空闲通道，平台不支持时返回null，runWhenIdle直接投递到主线程
+     */
+    IdleLane newIdleLane(MainLoop mainLoop, HashedTimingWheel timer, long sliceMillis) {
+        return null;
+    }
+}
@@ -0,0 +1,57 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by 鼠夏目 on 2020/3/26.
+ *
+ * @See
+ * @Description TaskDispatcher使用的线程池，在任务执行前后挂载追踪与自适应大小采样
+ */
+class DispatcherThreadPoolExecutor extends ThreadPoolExecutor {
+
+    /**
+     * 自适应大小采样，未开启时为null
+     */
+    private volatile AdaptivePoolSizer mPoolSizer;
+
+    DispatcherThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue,
+                                 ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+    }
+
+    DispatcherThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue,
+                                 ThreadFactory threadFactory) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory);
+    }
+
+    void setPoolSizer(AdaptivePoolSizer poolSizer) {
+        this.mPoolSizer = poolSizer;
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        AdaptivePoolSizer poolSizer = mPoolSizer;
+        if (poolSizer != null) {
+            poolSizer.beforeExecute();
+        }
+        if (TaskTracer.isEnabled()) {
+            TaskTracer.begin(TaskMetrics.nameOf(r));
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        TaskTracer.end();
+        AdaptivePoolSizer poolSizer = mPoolSizer;
+        if (poolSizer != null) {
+            poolSizer.afterExecute();
+        }
+        super.afterExecute(r, t);
+    }
+}
@@ -0,0 +1,19 @@
+package com.tufusi.taskdispatcher;
+
+/**
+ * Created by 鼠夏目 on 2020/3/30.
+ *
+ * @See
+ * @Description 任务执行域，CPU密集与IO阻塞的任务分别在各自的线程池中执行，互不挤占
+ */
+public enum ExecutionDomain {
+
+    /**
+     * 计算密集任务，线程数与CPU核数相当，对应 {@link TaskDispatcher#cpu()}
+     */
+    CPU,
+    /**
+     * 阻塞型任务，如文件读写、数据库、网络，线程按需创建、空闲回收，上限更高，对应 {@link TaskDispatcher#io()}
+     */
+    IO
+}
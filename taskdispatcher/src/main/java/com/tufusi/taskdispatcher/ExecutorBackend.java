@@ -0,0 +1,20 @@
+package com.tufusi.taskdispatcher;
+
+/**
+ * Created by 鼠夏目 on 2020/3/28.
+ *
+ * @See
+ * @Description 并行线程池的实现方式
+ */
+public enum ExecutorBackend {
+
+    /**
+     * ThreadPoolExecutor + 优先级工作队列，支持优先级通道与溢出策略
+     */
+    THREAD_POOL,
+    /**
+     * 工作窃取线程池，每个工作线程一个双端队列，适合任务中再拆分子任务的场景；
+     * 不区分优先级通道，队列无界不会触发溢出策略
+     */
+    WORK_STEALING
+}
@@ -0,0 +1,296 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Created by 鼠夏目 on 2020/3/16.
+ *
+ * @See
+ * @Description 哈希时间轮 - 所有定时任务共用一个计时线程
+ * <p>
+ * 时间轮被切分为 wheelSize 个槽，每个槽是一个双向链表，计时线程每 tick 推进一个槽，
+ * 到期的节点被取出执行。添加与取消均为 O(1)：调用线程只把节点放入无锁队列，
+ * 真正的链表操作全部由计时线程完成，因此链表本身无需加锁。
+ * 没有任何待执行节点时计时线程会挂起，不会产生空转唤醒。
+ */
+final class HashedTimingWheel {
+
+    /**
+     * 到期回调，在计时线程上执行，实现方应尽快返回（通常只是把任务转投到其他线程）
+     */
+    interface TimerTask {
+        void onTimeout(Timeout timeout);
+    }
+
+    /**
+     * 时间轮中的一个节点，同时作为取消句柄
+     */
+    static final class Timeout {
+
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final HashedTimingWheel wheel;
+        private final TimerTask task;
+        private final long deadlineNanos;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+        long remainingRounds;
+        Timeout next;
+        Timeout prev;
+        Bucket bucket;
+
+        private Timeout(HashedTimingWheel wheel, TimerTask task, long deadlineNanos) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * 取消节点，节点会在计时线程下一次推进前从槽中摘除
+         *
+         * @return 是否由本次调用完成取消
+         */
+        boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            wheel.mCancelledTimeouts.add(this);
+            wheel.mPendingCount.decrementAndGet();
+            return true;
+        }
+
+        boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            wheel.mPendingCount.decrementAndGet();
+            boolean traced = TaskTracer.isEnabled();
+            if (traced) {
+                TaskTracer.begin(task.getClass().getName());
+            }
+            try {
+                task.onTimeout(this);
+            } catch (Throwable t) {
+                TaskDispatcher.logError("timing wheel task error " + t);
+            } finally {
+                if (traced) {
+                    TaskTracer.end();
+                }
+            }
+        }
+    }
+
+    /**
+     * 槽：双向链表，仅由计时线程访问
+     */
+    private static final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expireTimeouts() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                if (timeout == tail) {
+                    tail = null;
+                    head = null;
+                } else {
+                    head = next;
+                }
+            } else if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+    private final Bucket[] mWheel;
+    private final int mMask;
+    private final long mTickNanos;
+    private final ThreadFactory mThreadFactory;
+
+    private final Queue<Timeout> mPendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> mCancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicLong mPendingCount = new AtomicLong();
+    /**
+     * 计时线程被唤醒的次数，用于评估空转开销
+     */
+    private final AtomicLong mWakeups = new AtomicLong();
+
+    private volatile Thread mWorkerThread;
+    private volatile long mStartNanos;
+    private long mTick;
+
+    HashedTimingWheel(ThreadFactory threadFactory, long tickDuration, TimeUnit unit, int wheelSize) {
+        int normalized = 1;
+        while (normalized < wheelSize) {
+            normalized <<= 1;
+        }
+        mWheel = new Bucket[normalized];
+        for (int i = 0; i < normalized; i++) {
+            mWheel[i] = new Bucket();
+        }
+        mMask = normalized - 1;
+        mTickNanos = unit.toNanos(tickDuration);
+        mThreadFactory = threadFactory;
+    }
+
+    /**
+     * 添加一个延迟任务
+     *
+     * @param task  到期回调
+     * @param delay 延迟
+     * @param unit  延迟单位
+     * @return 可取消的节点
+     */
+    Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+        ensureStarted();
+        long deadline = System.nanoTime() - mStartNanos + Math.max(0, unit.toNanos(delay));
+        Timeout timeout = new Timeout(this, task, deadline);
+        mPendingCount.incrementAndGet();
+        mPendingTimeouts.add(timeout);
+        LockSupport.unpark(mWorkerThread);
+        return timeout;
+    }
+
+    /**
+     * 尚未到期也未取消的节点数量
+     */
+    long pendingTimeouts() {
+        return mPendingCount.get();
+    }
+
+    /**
+     * 计时线程累计被唤醒的次数
+     */
+    long wakeups() {
+        return mWakeups.get();
+    }
+
+    private void ensureStarted() {
+        if (mWorkerThread != null) {
+            return;
+        }
+        synchronized (this) {
+            if (mWorkerThread == null) {
+                mStartNanos = System.nanoTime();
+                Thread thread = mThreadFactory.newThread(new Worker());
+                thread.setDaemon(true);
+                mWorkerThread = thread;
+                thread.start();
+            }
+        }
+    }
+
+    private final class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            while (true) {
+                waitForNextTick();
+                processCancelledTimeouts();
+                transferPendingTimeouts();
+                mWheel[(int) (mTick & mMask)].expireTimeouts();
+                mTick++;
+            }
+        }
+
+        /**
+         * 等待下一个 tick，期间没有待执行节点时整个线程挂起，直到有新节点加入
+         */
+        private void waitForNextTick() {
+            long deadline = mTickNanos * (mTick + 1);
+            while (true) {
+                if (mPendingCount.get() == 0 && mPendingTimeouts.isEmpty()) {
+                    LockSupport.park(this);
+                    mWakeups.incrementAndGet();
+                    // 挂起期间时间轮未推进，追平 tick 以免唤醒后集中补偿
+                    long now = System.nanoTime() - mStartNanos;
+                    mTick = Math.max(mTick, now / mTickNanos);
+                    deadline = mTickNanos * (mTick + 1);
+                    continue;
+                }
+                long sleepNanos = deadline - (System.nanoTime() - mStartNanos);
+                if (sleepNanos <= 0) {
+                    return;
+                }
+                LockSupport.parkNanos(this, sleepNanos);
+                mWakeups.incrementAndGet();
+            }
+        }
+
+        private void processCancelledTimeouts() {
+            Timeout timeout;
+            while ((timeout = mCancelledTimeouts.poll()) != null) {
+                if (timeout.bucket != null) {
+                    timeout.bucket.remove(timeout);
+                }
+            }
+        }
+
+        private void transferPendingTimeouts() {
+            Timeout timeout;
+            while ((timeout = mPendingTimeouts.poll()) != null) {
+                if (timeout.isCancelled()) {
+                    continue;
+                }
+                long calculated = timeout.deadlineNanos / mTickNanos;
+                timeout.remainingRounds = (calculated - mTick) / mWheel.length;
+                // 已过期的节点放到当前槽，本次 tick 即执行
+                long ticks = Math.max(calculated, mTick);
+                mWheel[(int) (ticks & mMask)].add(timeout);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.tufusi.taskdispatcher;
+
+/**
+ * Created by 鼠夏目 on 2020/4/8.
+ *
+ * @See
+ * @Description 主线程空闲通道的抽象，由平台根据出帧与消息队列空闲信号实现，见 {@link DispatcherPlatform}
+ */
+interface IdleLane {
+
+    /**
+     * 投递一项空闲工作
+     *
+     * @param runnable         在主线程中执行的工作
+     * @param maxLatencyMillis 最大延迟，到期仍未等到空闲时直接投递到主线程
+     */
+    void post(Runnable runnable, long maxLatencyMillis);
+
+    /**
+     * 空闲时执行与到期强制执行的数量、占用的空闲时间
+     */
+    IdleLaneStats stats();
+}
@@ -0,0 +1,53 @@
+package com.tufusi.taskdispatcher;
+
+/**
+ * Created by 鼠夏目 on 2020/4/3.
+ *
+ * @See
+ * @Description 主线程空闲通道统计
+ */
+public final class IdleLaneStats {
+
+    /**
+     * 在主线程空闲时执行的工作数
+     */
+    public final long idleRuns;
+    /**
+     * 等待超过最大延迟后强制执行的工作数
+     */
+    public final long deadlineRuns;
+    /**
+     * 空闲时间中用于执行工作的累计时长
+     */
+    public final long idleMillis;
+    /**
+     * 执行过工作的空闲时间片数
+     */
+    public final long slices;
+    /**
+     * 尚未执行的工作数
+     */
+    public final int pending;
+
+    IdleLaneStats(long idleRuns, long deadlineRuns, long idleMillis, long slices, int pending) {
+        this.idleRuns = idleRuns;
+        this.deadlineRuns = deadlineRuns;
+        this.idleMillis = idleMillis;
+        this.slices = slices;
+        this.pending = pending;
+    }
+
+    /**
+     * 被空闲时间吸收的工作占比
+     */
+    public double absorbedRatio() {
+        long total = idleRuns + deadlineRuns;
+        return total == 0 ? 0d : (double) idleRuns / total;
+    }
+
+    @Override
+    public String toString() {
+        return "IdleLaneStats{idleRuns=" + idleRuns + ", deadlineRuns=" + deadlineRuns + ", idleMillis=" + idleMillis
+                + ", slices=" + slices + ", pending=" + pending + "}";
+    }
+}
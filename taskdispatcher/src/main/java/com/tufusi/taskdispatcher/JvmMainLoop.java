@@ -0,0 +1,159 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * Created by 鼠夏目 on 2020/4/8.
+ *
+ * @See
+ * @Description 纯JVM上的消息循环 - 一个守护线程按到期时间依次执行投递的工作，语义与Handler一致：
+ * 同一到期时间按投递顺序执行，单个工作抛出的异常只记录日志，不会终止循环；慢消息检测与追踪与SafeDispatcherHandler一致。
+ * 消息对象执行后回收复用（与android.os.Message一致），稳定状态下投递不分配内存
+ */
+final class JvmMainLoop implements MainLoop {
+
+    private static final int MAX_POOL_SIZE = 50;
+
+    private static final class Message implements Comparable<Message> {
+
+        Runnable runnable;
+        long whenNanos;
+        long seq;
+        Message next;
+
+        @Override
+        public int compareTo(Message other) {
+            long diff = whenNanos - other.whenNanos;
+            if (diff != 0) {
+                return diff < 0 ? -1 : 1;
+            }
+            return seq < other.seq ? -1 : (seq == other.seq ? 0 : 1);
+        }
+    }
+
+    private final String mName;
+    private final PriorityQueue<Message> mQueue = new PriorityQueue<>();
+    private long mSeq;
+    private Thread mThread;
+    /**
+     * 已回收的消息，与队列共用同一把锁
+     */
+    private Message mPool;
+    private int mPoolSize;
+
+    JvmMainLoop(String name) {
+        this.mName = name;
+    }
+
+    @Override
+    public void post(Runnable runnable) {
+        postDelayed(runnable, 0);
+    }
+
+    @Override
+    public void postDelayed(Runnable runnable, long delayMillis) {
+        if (runnable == null) {
+            throw new NullPointerException("runnable == null");
+        }
+        long when = System.nanoTime() + Math.max(0, delayMillis) * 1000000L;
+        StallMonitor monitor = StallMonitor.sMonitor;
+        if (monitor != null) {
+            monitor.onPost(runnable);
+        }
+        synchronized (this) {
+            ensureStarted();
+            Message message = obtain();
+            message.runnable = runnable;
+            message.whenNanos = when;
+            message.seq = mSeq++;
+            mQueue.add(message);
+            if (mQueue.peek() == message) {
+                notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void removeCallbacks(Runnable runnable) {
+        Iterator<Message> iterator = mQueue.iterator();
+        while (iterator.hasNext()) {
+            Message message = iterator.next();
+            if (message.runnable == runnable) {
+                iterator.remove();
+                recycle(message);
+            }
+        }
+    }
+
+    @Override
+    public boolean isCurrentThread() {
+        synchronized (this) {
+            return Thread.currentThread() == mThread;
+        }
+    }
+
+    private Message obtain() {
+        Message message = mPool;
+        if (message == null) {
+            return new Message();
+        }
+        mPool = message.next;
+        message.next = null;
+        mPoolSize--;
+        return message;
+    }
+
+    private void recycle(Message message) {
+        message.runnable = null;
+        if (mPoolSize < MAX_POOL_SIZE) {
+            message.next = mPool;
+            mPool = message;
+            mPoolSize++;
+        }
+    }
+
+    private void ensureStarted() {
+        if (mThread != null) {
+            return;
+        }
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, mName);
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    private void loop() {
+        while (true) {
+            Runnable runnable;
+            synchronized (this) {
+                Message head = mQueue.peek();
+                long waitNanos = head == null ? -1 : head.whenNanos - System.nanoTime();
+                if (waitNanos > 0 || head == null) {
+                    try {
+                        if (head == null) {
+                            wait();
+                        } else {
+                            wait(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+                        }
+                    } catch (InterruptedException ignored) {
+                        //循环线程不响应中断，清除后继续
+                    }
+                    continue;
+                }
+                Message message = mQueue.poll();
+                runnable = message.runnable;
+                recycle(message);
+            }
+            try {
+                StallMonitor.dispatch(runnable);
+            } catch (Throwable throwable) {
+                TaskDispatcher.logError(mName + " dispatch error " + throwable);
+            }
+        }
+    }
+}
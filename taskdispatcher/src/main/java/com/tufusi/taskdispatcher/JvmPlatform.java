@@ -0,0 +1,112 @@
+package com.tufusi.taskdispatcher;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created by 鼠夏目 on 2020/4/8.
+ *
+ * @See
+ * @Description 纯JVM平台适配，不引用任何android类
+ * <p>
+ * 虚拟线程通过反射获取（Executors.newVirtualThreadPerTaskExecutor），编译期不依赖JDK 21，运行时不支持时回退到IO线程池；
+ * 线程CPU时间与进程id同样通过反射从java.lang.management获取（android.jar中没有这个包），不支持时按未提供处理
+ */
+final class JvmPlatform extends DispatcherPlatform {
+
+    private static final String TAG = "TaskDispatcher";
+
+    private final boolean mUseVirtualThreads;
+    private final Object mThreadBean;
+    private final Method mCurrentThreadCpuTime;
+    private final int mProcessId;
+
+    JvmPlatform(boolean useVirtualThreads) {
+        this.mUseVirtualThreads = useVirtualThreads;
+        Object threadBean = null;
+        Method currentThreadCpuTime = null;
+        int processId = 0;
+        try {
+            Class<?> factory = Class.forName("java.lang.management.ManagementFactory");
+            Object bean = factory.getMethod("getThreadMXBean").invoke(null);
+            Class<?> beanClass = Class.forName("java.lang.management.ThreadMXBean");
+            if ((Boolean) beanClass.getMethod("isCurrentThreadCpuTimeSupported").invoke(bean)) {
+                beanClass.getMethod("setThreadCpuTimeEnabled", boolean.class).invoke(bean, true);
+                threadBean = bean;
+                currentThreadCpuTime = beanClass.getMethod("getCurrentThreadCpuTime");
+            }
+            //RuntimeMXBean的名字形如 pid@hostname
+            Object runtimeBean = factory.getMethod("getRuntimeMXBean").invoke(null);
+            String name = (String) Class.forName("java.lang.management.RuntimeMXBean").getMethod("getName").invoke(runtimeBean);
+            int at = name.indexOf('@');
+            if (at > 0) {
+                processId = Integer.parseInt(name.substring(0, at));
+            }
+        } catch (Exception e) {
+            //运行时没有java.lang.management
+        }
+        this.mThreadBean = threadBean;
+        this.mCurrentThreadCpuTime = currentThreadCpuTime;
+        this.mProcessId = processId;
+    }
+
+    @Override
+    public MainLoop newMainLoop() {
+        return new JvmMainLoop("TaskDispatcher main");
+    }
+
+    @Override
+    public MainLoop newBackgroundLoop(String name) {
+        return new JvmMainLoop(name);
+    }
+
+    @Override
+    public ILog newLogger() {
+        final Logger logger = Logger.getLogger(TAG);
+        return new ILog() {
+            @Override
+            public void info(String info) {
+                logger.info(info);
+            }
+
+            @Override
+            public void error(String error) {
+                logger.log(Level.SEVERE, error);
+            }
+        };
+    }
+
+    @Override
+    public ExecutorService newBlockingExecutor() {
+        if (!mUseVirtualThreads) {
+            return null;
+        }
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (Exception e) {
+            //JDK 21以下没有虚拟线程
+            return null;
+        }
+    }
+
+    @Override
+    public long currentThreadCpuTimeNanos() {
+        if (mCurrentThreadCpuTime == null) {
+            return -1;
+        }
+        try {
+            return (Long) mCurrentThreadCpuTime.invoke(mThreadBean);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public int processId() {
+        return mProcessId;
+    }
+}
@@ -0,0 +1,112 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Created by 鼠夏目 on 2020/3/22.
+ *
+ * @See
+ * @Description 按key串行的执行器
+ * <p>
+ * 同一个key的任务严格按提交顺序依次执行，不同key之间互不阻塞，全部复用并行线程池，不单独占用线程。
+ * 队列排空后执行器从注册表中移除，之后同一key的提交会自动转到新的执行器上
+ */
+final class KeyedSerialExecutor implements Executor {
+
+    private static final String TAG = "KeyedSerialExecutor";
+    /**
+     * 每次占用线程池线程最多连续执行的任务数，超过后重新排队，让其他key有机会执行
+     */
+    private static final int MAX_TASKS_PER_TURN = 8;
+
+    private final String mKey;
+    private final ConcurrentMap<String, KeyedSerialExecutor> mRegistry;
+    private final Executor mExecutor;
+    private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+    private boolean mActive;
+    private boolean mEvicted;
+
+    private final Runnable mDrainer = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    KeyedSerialExecutor(String key, ConcurrentMap<String, KeyedSerialExecutor> registry, Executor executor) {
+        this.mKey = key;
+        this.mRegistry = registry;
+        this.mExecutor = executor;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        boolean schedule = false;
+        boolean evicted;
+        synchronized (this) {
+            evicted = mEvicted;
+            if (!evicted) {
+                mTasks.add(command);
+                if (!mActive) {
+                    mActive = true;
+                    schedule = true;
+                }
+            }
+        }
+        if (evicted) {
+            //已被回收，转交给同一key的新执行器，保证顺序不变
+            TaskDispatcher.serial(mKey).execute(command);
+            return;
+        }
+        if (schedule) {
+            try {
+                mExecutor.execute(mDrainer);
+            } catch (RejectedExecutionException e) {
+                boolean drainInline;
+                synchronized (this) {
+                    mTasks.removeLastOccurrence(command);
+                    //其他线程在此期间提交的任务看到mActive为true没有调度，由当前线程负责执行，否则会一直滞留在队列中
+                    drainInline = !mTasks.isEmpty();
+                    mActive = drainInline;
+                }
+                if (drainInline) {
+                    drain();
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            for (int i = 0; i < MAX_TASKS_PER_TURN; i++) {
+                Runnable task;
+                synchronized (this) {
+                    task = mTasks.poll();
+                    if (task == null) {
+                        mActive = false;
+                        mEvicted = mRegistry.remove(mKey, this);
+                        return;
+                    }
+                }
+                try {
+                    task.run();
+                } catch (Throwable throwable) {
+                    TaskDispatcher.logError(TAG + " " + mKey + " task error " + throwable);
+                }
+            }
+            try {
+                mExecutor.execute(mDrainer);
+                return;
+            } catch (RejectedExecutionException e) {
+                //线程池已满，在当前线程继续下一轮，不递归，积压再多也不会耗尽栈
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Created by 鼠夏目 on 2020/3/17.
+ *
+ * @See
+ * @Description 延迟直方图 - 对数线性分桶（类HDR），记录无锁，相对误差约12.5%
+ * <p>
+ * 数值以微秒为单位入桶，每个二进制数量级再细分为 8 个子桶
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSumMicros = new AtomicLong();
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 耗时，单位纳秒
+     */
+    void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000L);
+        mBuckets.incrementAndGet(indexOf(micros));
+        mCount.incrementAndGet();
+        mSumMicros.addAndGet(micros);
+        long max;
+        while (micros > (max = mMaxMicros.get())) {
+            if (mMaxMicros.compareAndSet(max, micros)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 清空已记录的数据
+     */
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mSumMicros.set(0);
+        mMaxMicros.set(0);
+    }
+
+    public long count() {
+        return mCount.get();
+    }
+
+    public long maxMicros() {
+        return mMaxMicros.get();
+    }
+
+    public long meanMicros() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mSumMicros.get() / count;
+    }
+
+    /**
+     * 获取分位值
+     *
+     * @param percentile 分位，取值 0 ~ 100，如 99 表示 p99
+     * @return 分位值，单位微秒（桶的上界）
+     */
+    public long percentileMicros(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = mBuckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.min(100d, Math.max(0d, percentile)) / 100d * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(highestValueAt(i), mMaxMicros.get());
+            }
+        }
+        return mMaxMicros.get();
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count() + ", mean=" + meanMicros() + "us, p50=" + percentileMicros(50)
+                + "us, p99=" + percentileMicros(99) + "us, max=" + maxMicros() + "us";
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + sub;
+    }
+
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        long sub = index % SUB_BUCKET_COUNT;
+        long lowest = (1L << exponent) | (sub << (exponent - SUB_BUCKET_BITS));
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
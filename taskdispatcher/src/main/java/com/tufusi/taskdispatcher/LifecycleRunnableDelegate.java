@@ -1,8 +1,8 @@
 package com.tufusi.taskdispatcher;
 
 import android.os.Handler;
+import android.os.SystemClock;
 
-import androidx.lifecycle.GenericLifecycleObserver;
 import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleOwner;
 
@@ -11,47 +11,41 @@ import androidx.lifecycle.LifecycleOwner;
  *
  * @See
  * @Description 生命周期委托线程
+ * <p>
+ * 不再各自注册观察者，而是登记到LifecycleOwner唯一的 {@link LifecycleTaskRegistry} 中，以目标事件的槽为token投递
  */
 public class LifecycleRunnableDelegate implements Runnable {
 
-    private Runnable mOriginRunnable;
-    private LifecycleOwner mLifecycleOwner;
-    private GenericLifecycleObserver mLifecycleObserver;
+    private final Runnable mOriginRunnable;
+    private final Handler mHandler;
+    private final LifecycleTaskRegistry.Bucket mBucket;
+    private final int mGeneration;
 
-    LifecycleRunnableDelegate(LifecycleOwner lifecycleOwner, final Handler handler, final Lifecycle.Event targetEvent, final Runnable originRunnable) {
+    LifecycleRunnableDelegate(LifecycleOwner lifecycleOwner, Handler handler, Lifecycle.Event targetEvent, Runnable originRunnable) {
+        this.mOriginRunnable = originRunnable;
+        this.mHandler = handler;
         if (originRunnable == null || lifecycleOwner == null) {
+            mBucket = null;
+            mGeneration = 0;
             return;
         }
-        this.mLifecycleOwner = lifecycleOwner;
-        this.mOriginRunnable = originRunnable;
-        mLifecycleObserver = new GenericLifecycleObserver() {
-            @Override
-            public void onStateChanged(LifecycleOwner source, Lifecycle.Event event) {
-                if (event == targetEvent) {
-                    if (mLifecycleOwner != null) {
-                        mLifecycleOwner.getLifecycle().removeObserver(this);
-                    }
-                    handler.removeCallbacks(LifecycleRunnableDelegate.this);
-                }
-            }
-        };
-        if (TaskDispatcher.isMainThread()) {
-            mLifecycleOwner.getLifecycle().addObserver(mLifecycleObserver);
-        } else {
-            TaskDispatcher.runOnUIThread(new Runnable() {
-                @Override
-                public void run() {
-                    mLifecycleOwner.getLifecycle().addObserver(mLifecycleObserver);
-                }
-            });
-        }
+        mBucket = LifecycleTaskRegistry.of(lifecycleOwner).bucket(targetEvent);
+        mGeneration = mBucket.register(handler);
+    }
+
+    /**
+     * 以目标事件的槽为token投递自身
+     *
+     * @param delayMillis 延迟时间
+     */
+    void post(long delayMillis) {
+        mHandler.postAtTime(this, mBucket, SystemClock.uptimeMillis() + delayMillis);
     }
 
     @Override
     public void run() {
-        if (mOriginRunnable != null && mLifecycleOwner != null) {
+        if (mBucket != null && mBucket.generation() == mGeneration) {
             mOriginRunnable.run();
-            mLifecycleOwner.getLifecycle().removeObserver(mLifecycleObserver);
         }
     }
 }
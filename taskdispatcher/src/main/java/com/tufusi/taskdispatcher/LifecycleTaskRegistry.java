@@ -0,0 +1,153 @@
+package com.tufusi.taskdispatcher;
+
+import android.os.Handler;
+
+import androidx.lifecycle.GenericLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Created by 鼠夏目 on 2020/4/2.
+ *
+ * @See
+ * @Description 生命周期任务登记表 - 每个LifecycleOwner只注册一个观察者
+ * <p>
+ * 同一个目标事件的所有委托线程以同一个token投递，事件到来时每个Handler只需一次removeCallbacksAndMessages(token)；
+ * 后台任务归入该事件对应的 {@link TaskScope}，事件到来时取消作用域，排队中的任务不再执行。
+ * ON_DESTROY时清理所有事件并移除观察者
+ */
+final class LifecycleTaskRegistry implements GenericLifecycleObserver {
+
+    private static final Map<LifecycleOwner, LifecycleTaskRegistry> REGISTRIES = new WeakHashMap<>();
+    private static final Lifecycle.Event[] EVENTS = Lifecycle.Event.values();
+
+    private final Bucket[] mBuckets = new Bucket[EVENTS.length];
+
+    private LifecycleTaskRegistry() {
+        for (int i = 0; i < EVENTS.length; i++) {
+            mBuckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * 获取lifecycleOwner对应的登记表，第一次获取时注册观察者（非主线程时投递到主线程注册）
+     */
+    static LifecycleTaskRegistry of(final LifecycleOwner lifecycleOwner) {
+        final LifecycleTaskRegistry registry;
+        synchronized (REGISTRIES) {
+            LifecycleTaskRegistry existing = REGISTRIES.get(lifecycleOwner);
+            if (existing != null) {
+                return existing;
+            }
+            registry = new LifecycleTaskRegistry();
+            REGISTRIES.put(lifecycleOwner, registry);
+        }
+        Runnable addObserver = new Runnable() {
+            @Override
+            public void run() {
+                if (lifecycleOwner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+                    registry.destroy(lifecycleOwner);
+                } else {
+                    lifecycleOwner.getLifecycle().addObserver(registry);
+                }
+            }
+        };
+        if (TaskDispatcher.isMainThread()) {
+            addObserver.run();
+        } else {
+            TaskDispatcher.runOnUIThread(addObserver);
+        }
+        return registry;
+    }
+
+    /**
+     * 目标事件对应的槽
+     */
+    Bucket bucket(Lifecycle.Event targetEvent) {
+        return mBuckets[targetEvent.ordinal()];
+    }
+
+    @Override
+    public void onStateChanged(LifecycleOwner source, Lifecycle.Event event) {
+        if (event == Lifecycle.Event.ON_DESTROY) {
+            destroy(source);
+        } else {
+            mBuckets[event.ordinal()].sweep();
+        }
+    }
+
+    private void destroy(LifecycleOwner lifecycleOwner) {
+        synchronized (REGISTRIES) {
+            if (REGISTRIES.get(lifecycleOwner) == this) {
+                REGISTRIES.remove(lifecycleOwner);
+            }
+        }
+        lifecycleOwner.getLifecycle().removeObserver(this);
+        for (Bucket bucket : mBuckets) {
+            bucket.sweep();
+        }
+    }
+
+    /**
+     * 一个目标事件的登记：投递过委托线程的Handler、后台任务作用域，以及代数。
+     * 事件到来时代数加一，之前登记的委托线程即使仍在消息队列中也不会再执行原线程
+     */
+    static final class Bucket {
+
+        private final List<Handler> mHandlers = new ArrayList<>(2);
+        private TaskScope mScope;
+        private volatile int mGeneration;
+
+        /**
+         * 登记即将以本槽为token投递委托线程的Handler
+         *
+         * @return 当前代数
+         */
+        synchronized int register(Handler handler) {
+            if (!mHandlers.contains(handler)) {
+                mHandlers.add(handler);
+            }
+            return mGeneration;
+        }
+
+        int generation() {
+            return mGeneration;
+        }
+
+        /**
+         * 本事件对应的后台任务作用域，事件到来后换用新的作用域
+         */
+        synchronized TaskScope scope() {
+            if (mScope == null) {
+                mScope = new TaskScope();
+            }
+            return mScope;
+        }
+
+        void sweep() {
+            Handler[] handlers;
+            TaskScope scope;
+            synchronized (this) {
+                mGeneration++;
+                if (mHandlers.isEmpty() && mScope == null) {
+                    return;
+                }
+                handlers = mHandlers.toArray(new Handler[mHandlers.size()]);
+                mHandlers.clear();
+                scope = mScope;
+                mScope = null;
+            }
+            for (Handler handler : handlers) {
+                handler.removeCallbacksAndMessages(this);
+            }
+            if (scope != null) {
+                scope.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.tufusi.taskdispatcher;
+
+/**
+ * Created by 鼠夏目 on 2020/4/8.
+ *
+ * @See
+ * @Description 单线程消息循环的抽象，调度核心只通过它向主线程（或其他串行线程）投递工作
+ * <p>
+ * Android上由Handler实现，纯JVM上由一个独立的循环线程实现，见 {@link DispatcherPlatform}
+ */
+public interface MainLoop {
+
+    /**
+     * 投递到循环线程执行
+     */
+    void post(Runnable runnable);
+
+    /**
+     * 延迟投递到循环线程执行
+     *
+     * @param runnable    待执行的工作
+     * @param delayMillis 延迟时间，单位毫秒
+     */
+    void postDelayed(Runnable runnable, long delayMillis);
+
+    /**
+     * 移除尚未执行的工作
+     */
+    void removeCallbacks(Runnable runnable);
+
+    /**
+     * 当前线程是否为循环线程
+     */
+    boolean isCurrentThread();
+}
@@ -0,0 +1,94 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Created by 鼠夏目 on 2020/3/20.
+ *
+ * @See
+ * @Description 主线程回调合并投递
+ * <p>
+ * 后台线程把回调放入无锁队列，同一时刻最多只有一条排空消息在主线程队列中；
+ * 每次排空受条数与时间预算限制，超出预算时剩余回调留给下一条消息，不会占满一帧
+ */
+final class MainThreadBatcher {
+
+    private static final String TAG = "MainThreadBatcher";
+
+    private final MainLoop mLoop;
+    private final int mMaxItems;
+    private final long mBudgetNanos;
+
+    private final Queue<Runnable> mQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mScheduled = new AtomicBoolean(false);
+    private final AtomicLong mEnqueued = new AtomicLong();
+    private final AtomicLong mPosted = new AtomicLong();
+
+    private final Runnable mDrain = new Drain();
+
+    /**
+     * 排空消息，慢消息检测与追踪不整体计时，改为在排空时逐条计时
+     */
+    final class Drain implements Runnable {
+        @Override
+        public void run() {
+            drain();
+        }
+    }
+
+    MainThreadBatcher(MainLoop loop, int maxItems, long budgetMillis) {
+        this.mLoop = loop;
+        this.mMaxItems = maxItems;
+        this.mBudgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    void post(Runnable runnable) {
+        mQueue.add(runnable);
+        mEnqueued.incrementAndGet();
+        if (mScheduled.compareAndSet(false, true)) {
+            schedule();
+        }
+    }
+
+    /**
+     * 合并投递节省的主线程消息数
+     */
+    long savedMessages() {
+        return mEnqueued.get() - mPosted.get();
+    }
+
+    private void schedule() {
+        mPosted.incrementAndGet();
+        mLoop.post(mDrain);
+    }
+
+    private void drain() {
+        long deadline = System.nanoTime() + mBudgetNanos;
+        int count = 0;
+        Runnable runnable;
+        while ((runnable = mQueue.poll()) != null) {
+            try {
+                StallMonitor.dispatch(runnable);
+            } catch (Throwable throwable) {
+                TaskDispatcher.logError(TAG + " callback error " + throwable);
+            }
+            if (++count >= mMaxItems || System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+        if (!mQueue.isEmpty()) {
+            //超出预算，剩余回调让出主线程后继续
+            schedule();
+            return;
+        }
+        mScheduled.set(false);
+        //清除标记与新回调入队之间存在竞争，重新检查一次
+        if (!mQueue.isEmpty() && mScheduled.compareAndSet(false, true)) {
+            schedule();
+        }
+    }
+}
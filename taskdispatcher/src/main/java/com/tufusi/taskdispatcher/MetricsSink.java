@@ -0,0 +1,19 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.List;
+
+/**
+ * Created by 鼠夏目 on 2020/3/25.
+ *
+ * @See
+ * @Description 任务指标导出，在并行线程池中周期性回调
+ */
+public interface MetricsSink {
+
+    /**
+     * 导出指标快照
+     *
+     * @param snapshots 每个任务名一份快照
+     */
+    void onMetrics(List<TaskMetrics.Snapshot> snapshots);
+}
@@ -0,0 +1,104 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Created by 鼠夏目 on 2020/3/18.
+ *
+ * @See
+ * @Description 并行线程池饱和处理，按 {@link OverflowPolicy} 执行并通知 {@link OverflowListener}
+ */
+final class OverflowHandler implements RejectedExecutionHandler {
+
+    private final OverflowPolicy mPolicy;
+    private final long mBlockTimeoutMillis;
+    private final OverflowListener mListener;
+    private final AtomicLong mOverflowCount = new AtomicLong();
+
+    OverflowHandler(OverflowPolicy policy, long blockTimeoutMillis, OverflowListener listener) {
+        this.mPolicy = policy;
+        this.mBlockTimeoutMillis = blockTimeoutMillis;
+        this.mListener = listener;
+    }
+
+    /**
+     * 溢出策略累计触发次数
+     */
+    long overflowCount() {
+        return mOverflowCount.get();
+    }
+
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Task " + r + " rejected, executor is shutdown");
+        }
+        PriorityTaskQueue queue = (PriorityTaskQueue) executor.getQueue();
+        switch (mPolicy) {
+            case CALLER_RUNS:
+                if (TaskDispatcher.isMainThread()) {
+                    spill(queue, r);
+                } else {
+                    notifyOverflow(OverflowPolicy.CALLER_RUNS, r);
+                    r.run();
+                }
+                break;
+            case DISCARD_OLDEST:
+                Runnable discarded = queue.pollOldest(PriorityTaskQueue.priorityOf(r));
+                if (discarded == null) {
+                    //通道为空，新任务本身就是该通道最早的任务
+                    discarded = r;
+                } else if (!queue.offer(r)) {
+                    spill(queue, r);
+                }
+                TaskDispatcher.recordRejection(discarded);
+                if (discarded instanceof AbstractTask) {
+                    ((AbstractTask) discarded).cancel();
+                }
+                notifyOverflow(OverflowPolicy.DISCARD_OLDEST, discarded);
+                break;
+            case BLOCK:
+                if (TaskDispatcher.isMainThread()) {
+                    spill(queue, r);
+                    break;
+                }
+                notifyOverflow(OverflowPolicy.BLOCK, r);
+                boolean queued;
+                try {
+                    queued = queue.offer(r, mBlockTimeoutMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    queued = false;
+                }
+                if (!queued) {
+                    TaskDispatcher.recordRejection(r);
+                    throw new RejectedExecutionException("Task " + r + " rejected after blocking " + mBlockTimeoutMillis + "ms");
+                }
+                break;
+            case SPILL:
+                spill(queue, r);
+                break;
+            case ABORT:
+            default:
+                notifyOverflow(OverflowPolicy.ABORT, r);
+                TaskDispatcher.recordRejection(r);
+                throw new RejectedExecutionException("Task " + r + " rejected from " + executor);
+        }
+    }
+
+    private void spill(PriorityTaskQueue queue, Runnable r) {
+        queue.spill(r);
+        notifyOverflow(OverflowPolicy.SPILL, r);
+    }
+
+    private void notifyOverflow(OverflowPolicy policy, Runnable task) {
+        mOverflowCount.incrementAndGet();
+        if (mListener != null) {
+            mListener.onOverflow(policy, task);
+        }
+    }
+}
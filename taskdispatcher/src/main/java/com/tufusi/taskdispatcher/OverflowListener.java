@@ -0,0 +1,18 @@
+package com.tufusi.taskdispatcher;
+
+/**
+ * Created by 鼠夏目 on 2020/3/18.
+ *
+ * @See
+ * @Description 线程池饱和回调，在提交任务的线程中执行，实现方应尽快返回
+ */
+public interface OverflowListener {
+
+    /**
+     * 溢出策略被触发
+     *
+     * @param policy 实际生效的策略（主线程保护时可能与配置的策略不同）
+     * @param task   受影响的任务：DISCARD_OLDEST 为被丢弃的任务，其余为新提交的任务
+     */
+    void onOverflow(OverflowPolicy policy, Runnable task);
+}
@@ -0,0 +1,31 @@
+package com.tufusi.taskdispatcher;
+
+/**
+ * Created by 鼠夏目 on 2020/3/18.
+ *
+ * @See
+ * @Description 并行线程池饱和（核心线程、工作队列、最大线程均已占满）时的处理策略
+ */
+public enum OverflowPolicy {
+
+    /**
+     * 抛出RejectedExecutionException，与旧版本行为一致
+     */
+    ABORT,
+    /**
+     * 由提交线程直接执行；提交线程是主线程时改为溢出到备用队列，避免卡住主线程
+     */
+    CALLER_RUNS,
+    /**
+     * 丢弃同一优先级通道中最早入队的任务，再把新任务放入队列
+     */
+    DISCARD_OLDEST,
+    /**
+     * 阻塞提交线程等待队列空位，超时后抛出RejectedExecutionException；主线程提交时改为溢出到备用队列
+     */
+    BLOCK,
+    /**
+     * 放入无界的备用队列，工作队列有空位后按顺序转入
+     */
+    SPILL
+}
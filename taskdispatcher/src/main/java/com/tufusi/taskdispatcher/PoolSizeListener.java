@@ -0,0 +1,20 @@
+package com.tufusi.taskdispatcher;
+
+/**
+ * Created by 鼠夏目 on 2020/3/29.
+ *
+ * @See
+ * @Description 自适应线程池调整回调，在计时线程中执行，实现方应尽快返回
+ */
+public interface PoolSizeListener {
+
+    /**
+     * 核心线程数被调整
+     *
+     * @param oldCoreSize 调整前核心线程数
+     * @param newCoreSize 调整后核心线程数
+     * @param cpuRatio    采样窗口内任务CPU时间占墙钟时间的比例，越低说明阻塞越多
+     * @param queueDepth  调整时工作队列中的任务数
+     */
+    void onPoolResized(int oldCoreSize, int newCoreSize, double cpuRatio, int queueDepth);
+}
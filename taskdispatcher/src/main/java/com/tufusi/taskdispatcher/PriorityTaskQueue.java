@@ -0,0 +1,692 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Created by 鼠夏目 on 2020/3/17.
+ *
+ * @See
+ * @Description 分优先级通道的线程池工作队列
+ * <p>
+ * 每个 {@link TaskPriority} 一个先进先出通道，出队时选择“通道序号 - 等待时长/老化时长”最小的队头，
+ * 高优先级任务可以插队，低优先级任务等得越久越靠前，不会饿死。出队时按通道记录排队延迟。
+ * <p>
+ * 已取消的任务不做O(n)的即时移除，只记一个墓碑：出队时直接跳过，墓碑占到队列一半以上时整体压缩一次，均摊O(1)
+ */
+final class PriorityTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    private static final TaskPriority[] PRIORITIES = TaskPriority.values();
+    /**
+     * 触发压缩的最少墓碑数，避免小队列频繁压缩
+     */
+    private static final int PURGE_THRESHOLD = 32;
+
+    private final Lane[] mLanes = new Lane[PRIORITIES.length];
+    private final LatencyHistogram[] mLatencies = new LatencyHistogram[PRIORITIES.length];
+    /**
+     * 无界备用队列，工作队列满时由 {@link OverflowPolicy#SPILL} 放入，出队后按顺序转回工作队列
+     */
+    private final Lane mSpill = new Lane();
+    private final int mCapacity;
+    private int mCount;
+    /**
+     * 墓碑数：仍在队列中、出队时会被跳过的已取消任务数，任务离开队列时扣除，压缩后归零
+     */
+    private int mTombstones;
+    /**
+     * 交给工作线程执行的任务数
+     */
+    private long mDequeued;
+    /**
+     * 出队时跳过或压缩时移除的已取消任务数
+     */
+    private long mCancelledRemoved;
+
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Condition mNotEmpty = mLock.newCondition();
+    private final Condition mNotFull = mLock.newCondition();
+
+    PriorityTaskQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        mCapacity = capacity;
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            mLanes[i] = new Lane();
+            mLatencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * 获取通道的排队延迟统计
+     */
+    LatencyHistogram latencyOf(TaskPriority priority) {
+        return mLatencies[priority.ordinal()];
+    }
+
+    /**
+     * 通道中排队的任务数
+     */
+    int sizeOf(TaskPriority priority) {
+        mLock.lock();
+        try {
+            return mLanes[priority.ordinal()].size;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * 备用队列中的任务数
+     */
+    int spillSize() {
+        mLock.lock();
+        try {
+            return mSpill.size;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * 忽略容量放入备用队列
+     */
+    void spill(Runnable runnable) {
+        if (runnable == null) {
+            throw new NullPointerException();
+        }
+        mLock.lock();
+        try {
+            mSpill.add(runnable, System.nanoTime());
+            enter(runnable);
+            refillFromSpill();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * 移除指定通道中最早入队的任务
+     *
+     * @return 被移除的任务，通道为空时返回null
+     */
+    Runnable pollOldest(TaskPriority priority) {
+        mLock.lock();
+        try {
+            Lane lane = mLanes[priority.ordinal()];
+            if (lane.size == 0) {
+                return null;
+            }
+            Runnable runnable = lane.poll();
+            leave(runnable);
+            mCount--;
+            mNotFull.signal();
+            refillFromSpill();
+            return runnable;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * 记录一个排队中的任务已被取消，墓碑过多时压缩队列。
+     * 只有仍在队列中、出队时会被跳过（经TaskDispatcher提交）的任务才记墓碑，执行中、已结束或从未入队的任务不计
+     */
+    void markCancelled(AbstractTask<?> task) {
+        mLock.lock();
+        try {
+            if (task.mQueuedIn != this || task.mTombstoned || !task.isSubmitted()) {
+                return;
+            }
+            task.mTombstoned = true;
+            mTombstones++;
+            if (mTombstones >= PURGE_THRESHOLD && mTombstones * 2 > mCount + mSpill.size) {
+                purge();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    int tombstones() {
+        mLock.lock();
+        try {
+            return mTombstones;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * 离开队列的任务中已被取消的比例（出队时跳过与压缩移除的合计），用于评估页面切换等场景的无效排队
+     */
+    double cancelledRatio() {
+        mLock.lock();
+        try {
+            long total = mDequeued + mCancelledRemoved;
+            return total == 0 ? 0d : (double) mCancelledRemoved / total;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    static boolean isCancelled(Runnable runnable) {
+        if (runnable instanceof AbstractTask) {
+            return ((AbstractTask) runnable).dropIfCanceled();
+        }
+        return runnable instanceof Future && ((Future) runnable).isCancelled();
+    }
+
+    static TaskPriority priorityOf(Runnable runnable) {
+        if (runnable instanceof PriorityRunnable) {
+            return ((PriorityRunnable) runnable).mPriority;
+        }
+        if (runnable instanceof AbstractTask) {
+            return ((AbstractTask) runnable).getPriority();
+        }
+        return TaskPriority.DEFAULT;
+    }
+
+    @Override
+    public boolean offer(Runnable runnable) {
+        if (runnable == null) {
+            throw new NullPointerException();
+        }
+        mLock.lock();
+        try {
+            if (mCount >= mCapacity) {
+                return false;
+            }
+            enqueue(runnable);
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable runnable) throws InterruptedException {
+        if (runnable == null) {
+            throw new NullPointerException();
+        }
+        mLock.lockInterruptibly();
+        try {
+            while (mCount >= mCapacity) {
+                mNotFull.await();
+            }
+            enqueue(runnable);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable runnable, long timeout, TimeUnit unit) throws InterruptedException {
+        if (runnable == null) {
+            throw new NullPointerException();
+        }
+        long nanos = unit.toNanos(timeout);
+        mLock.lockInterruptibly();
+        try {
+            while (mCount >= mCapacity) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = mNotFull.awaitNanos(nanos);
+            }
+            enqueue(runnable);
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        mLock.lock();
+        try {
+            return mCount == 0 ? null : dequeue();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        mLock.lockInterruptibly();
+        try {
+            while (true) {
+                while (mCount == 0) {
+                    mNotEmpty.await();
+                }
+                Runnable runnable = dequeue();
+                if (runnable != null) {
+                    return runnable;
+                }
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        mLock.lockInterruptibly();
+        try {
+            while (true) {
+                while (mCount == 0) {
+                    if (nanos <= 0) {
+                        return null;
+                    }
+                    nanos = mNotEmpty.awaitNanos(nanos);
+                }
+                Runnable runnable = dequeue();
+                if (runnable != null) {
+                    return runnable;
+                }
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        mLock.lock();
+        try {
+            int lane = selectLane(System.nanoTime());
+            return lane < 0 ? null : mLanes[lane].peek();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        mLock.lock();
+        try {
+            return mCount + mSpill.size;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        mLock.lock();
+        try {
+            return mCapacity - mCount;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        mLock.lock();
+        try {
+            for (Lane lane : mLanes) {
+                if (lane.remove(o)) {
+                    leave((Runnable) o);
+                    mCount--;
+                    mNotFull.signal();
+                    refillFromSpill();
+                    return true;
+                }
+            }
+            if (mSpill.remove(o)) {
+                leave((Runnable) o);
+                return true;
+            }
+            return false;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        mLock.lock();
+        try {
+            int n = 0;
+            Runnable runnable;
+            while (n < maxElements && mCount > 0 && (runnable = dequeue()) != null) {
+                c.add(runnable);
+                n++;
+            }
+            return n;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        return snapshot().toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return snapshot().toArray(a);
+    }
+
+    @Override
+    public Iterator<Runnable> iterator() {
+        final Iterator<Runnable> snapshot = snapshot().iterator();
+        return new Iterator<Runnable>() {
+
+            private Runnable mLast;
+
+            @Override
+            public boolean hasNext() {
+                return snapshot.hasNext();
+            }
+
+            @Override
+            public Runnable next() {
+                mLast = snapshot.next();
+                return mLast;
+            }
+
+            @Override
+            public void remove() {
+                if (mLast == null) {
+                    throw new IllegalStateException();
+                }
+                PriorityTaskQueue.this.remove(mLast);
+                mLast = null;
+            }
+        };
+    }
+
+    private List<Runnable> snapshot() {
+        mLock.lock();
+        try {
+            List<Runnable> list = new ArrayList<>(mCount + mSpill.size);
+            for (Lane lane : mLanes) {
+                lane.copyTo(list);
+            }
+            mSpill.copyTo(list);
+            return list;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void enqueue(Runnable runnable) {
+        mLanes[priorityOf(runnable).ordinal()].add(runnable, System.nanoTime());
+        enter(runnable);
+        mCount++;
+        mNotEmpty.signal();
+    }
+
+    /**
+     * 出队一个未取消的任务，跳过途中遇到的已取消任务
+     *
+     * @return 队列中只剩已取消任务时返回null
+     */
+    private Runnable dequeue() {
+        long now = System.nanoTime();
+        while (mCount > 0) {
+            int lane = selectLane(now);
+            long enqueueNanos = mLanes[lane].peekTime();
+            Runnable runnable = mLanes[lane].poll();
+            leave(runnable);
+            mCount--;
+            mNotFull.signal();
+            refillFromSpill();
+            if (isCancelled(runnable)) {
+                mCancelledRemoved++;
+                continue;
+            }
+            mDequeued++;
+            mLatencies[lane].recordNanos(now - enqueueNanos);
+            TaskTracer.noteQueueWait(now - enqueueNanos);
+            return runnable;
+        }
+        return null;
+    }
+
+    /**
+     * 压缩所有通道与备用队列，移除已取消的任务
+     */
+    private void purge() {
+        int removed = 0;
+        for (Lane lane : mLanes) {
+            removed += lane.removeCancelled();
+        }
+        mCount -= removed;
+        removed += mSpill.removeCancelled();
+        mCancelledRemoved += removed;
+        mTombstones = 0;
+        if (removed > 0) {
+            mNotFull.signalAll();
+            refillFromSpill();
+        }
+    }
+
+    /**
+     * 工作队列有空位时把备用队列中的任务按顺序转入，保留原入队时间
+     */
+    private void enter(Runnable runnable) {
+        if (runnable instanceof AbstractTask) {
+            AbstractTask<?> task = (AbstractTask<?>) runnable;
+            task.mQueuedIn = this;
+            task.mTombstoned = false;
+        }
+    }
+
+    /**
+     * 任务离开队列，清除队列状态
+     *
+     * @return 是否已记过墓碑
+     */
+    static boolean exit(Runnable runnable) {
+        if (runnable instanceof AbstractTask) {
+            AbstractTask<?> task = (AbstractTask<?>) runnable;
+            boolean tombstoned = task.mTombstoned;
+            task.mQueuedIn = null;
+            task.mTombstoned = false;
+            return tombstoned;
+        }
+        return false;
+    }
+
+    private void leave(Runnable runnable) {
+        if (exit(runnable) && mTombstones > 0) {
+            mTombstones--;
+        }
+    }
+
+    /**
+     * 转回工作队列的任务保持原有的队列状态
+     */
+    private void refillFromSpill() {
+        while (mSpill.size > 0 && mCount < mCapacity) {
+            long enqueueNanos = mSpill.peekTime();
+            Runnable runnable = mSpill.poll();
+            mLanes[priorityOf(runnable).ordinal()].add(runnable, enqueueNanos);
+            mCount++;
+            mNotEmpty.signal();
+        }
+    }
+
+    /**
+     * 选择出队通道：得分 = 通道序号 - 队头等待时长 / 通道老化时长，得分最小者胜出，相同取高优先级
+     */
+    private int selectLane(long now) {
+        int selected = -1;
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < mLanes.length; i++) {
+            Lane lane = mLanes[i];
+            if (lane.size == 0) {
+                continue;
+            }
+            double waitMillis = (now - lane.peekTime()) / 1000000d;
+            double score = i - waitMillis / PRIORITIES[i].agingMillis;
+            if (score < best) {
+                best = score;
+                selected = i;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 通道：环形数组，同时保存入队时间，出入队不产生额外对象
+     */
+    private static final class Lane {
+
+        private Runnable[] mItems = new Runnable[16];
+        private long[] mTimes = new long[16];
+        private int mHead;
+        int size;
+
+        void add(Runnable runnable, long nanos) {
+            if (size == mItems.length) {
+                grow();
+            }
+            int tail = (mHead + size) & (mItems.length - 1);
+            mItems[tail] = runnable;
+            mTimes[tail] = nanos;
+            size++;
+        }
+
+        Runnable peek() {
+            return size == 0 ? null : mItems[mHead];
+        }
+
+        long peekTime() {
+            return mTimes[mHead];
+        }
+
+        Runnable poll() {
+            if (size == 0) {
+                throw new NoSuchElementException();
+            }
+            Runnable runnable = mItems[mHead];
+            mItems[mHead] = null;
+            mHead = (mHead + 1) & (mItems.length - 1);
+            size--;
+            return runnable;
+        }
+
+        boolean remove(Object o) {
+            int mask = mItems.length - 1;
+            for (int i = 0; i < size; i++) {
+                int index = (mHead + i) & mask;
+                if (o.equals(mItems[index])) {
+                    for (int j = i; j < size - 1; j++) {
+                        int from = (mHead + j + 1) & mask;
+                        int to = (mHead + j) & mask;
+                        mItems[to] = mItems[from];
+                        mTimes[to] = mTimes[from];
+                    }
+                    mItems[(mHead + size - 1) & mask] = null;
+                    size--;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 原地压缩，保持剩余任务的顺序与入队时间
+         *
+         * @return 移除的任务数
+         */
+        int removeCancelled() {
+            int mask = mItems.length - 1;
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int from = (mHead + i) & mask;
+                Runnable runnable = mItems[from];
+                if (isCancelled(runnable)) {
+                    exit(runnable);
+                    continue;
+                }
+                int to = (mHead + kept) & mask;
+                mItems[to] = runnable;
+                mTimes[to] = mTimes[from];
+                kept++;
+            }
+            for (int i = kept; i < size; i++) {
+                mItems[(mHead + i) & mask] = null;
+            }
+            int removed = size - kept;
+            size = kept;
+            return removed;
+        }
+
+        void copyTo(List<Runnable> list) {
+            int mask = mItems.length - 1;
+            for (int i = 0; i < size; i++) {
+                list.add(mItems[(mHead + i) & mask]);
+            }
+        }
+
+        private void grow() {
+            int length = mItems.length;
+            Runnable[] items = new Runnable[length << 1];
+            long[] times = new long[length << 1];
+            for (int i = 0; i < size; i++) {
+                int index = (mHead + i) & (length - 1);
+                items[i] = mItems[index];
+                times[i] = mTimes[index];
+            }
+            mItems = items;
+            mTimes = times;
+            mHead = 0;
+        }
+    }
+
+    /**
+     * 携带优先级的普通任务包装
+     */
+    static final class PriorityRunnable implements Runnable {
+
+        private final Runnable mRunnable;
+        private final TaskPriority mPriority;
+
+        PriorityRunnable(Runnable runnable, TaskPriority priority) {
+            this.mRunnable = runnable;
+            this.mPriority = priority;
+        }
+
+        Runnable getRunnable() {
+            return mRunnable;
+        }
+
+        @Override
+        public void run() {
+            mRunnable.run();
+        }
+
+        @Override
+        public String toString() {
+            return mRunnable.toString();
+        }
+    }
+}
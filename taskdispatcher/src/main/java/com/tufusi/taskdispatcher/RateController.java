@@ -0,0 +1,326 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by 鼠夏目 on 2020/3/24.
+ *
+ * @See
+ * @Description 按key的防抖、节流与令牌桶限流，每个目标线程一个实例
+ * <p>
+ * 每个key只占用一个调度槽：防抖期间重复调用只更新最新任务与截止时间，不会移除再重新post消息，
+ * 槽到期时若截止时间已被推后，则只按剩余时间重新挂一次。槽触发且无后续任务时从表中移除；
+ * 令牌桶在重新攒满（与新建的桶无法区分）后从表中移除，动态key不会让表无限增长
+ */
+final class RateController {
+
+    private static final String TAG = "RateController";
+    /**
+     * 并行线程池拒绝执行时，槽在计时线程上重试的间隔
+     */
+    private static final long REJECTED_RETRY_MILLIS = 20L;
+
+    private final DispatchTarget mTarget;
+    private final MainLoop mLoop;
+    private final Executor mExecutor;
+    private final HashedTimingWheel mTimer;
+
+    private final ConcurrentMap<String, Slot> mDebounceSlots = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Slot> mThrottleSlots = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TokenBucket> mBuckets = new ConcurrentHashMap<>();
+
+    RateController(DispatchTarget target, MainLoop loop, Executor executor, HashedTimingWheel timer) {
+        this.mTarget = target;
+        this.mLoop = loop;
+        this.mExecutor = executor;
+        this.mTimer = timer;
+    }
+
+    /**
+     * 防抖：delay时间内没有新调用时才执行最后一次提交的任务
+     */
+    void debounce(String key, long delayMillis, Runnable runnable) {
+        long now = System.nanoTime();
+        while (true) {
+            Slot slot = slotOf(mDebounceSlots, key);
+            synchronized (slot) {
+                if (slot.mDead) {
+                    continue;
+                }
+                slot.mPending = runnable;
+                slot.mDeadlineNanos = now + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+                if (!slot.mScheduled) {
+                    slot.mScheduled = true;
+                    schedule(slot, delayMillis);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 节流：每个interval最多执行一次，窗口内的调用只保留最后一次，在窗口结束时执行
+     */
+    void throttle(String key, long intervalMillis, Runnable runnable) {
+        long now = System.nanoTime();
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        while (true) {
+            Slot slot = slotOf(mThrottleSlots, key);
+            synchronized (slot) {
+                if (slot.mDead) {
+                    continue;
+                }
+                if (slot.mScheduled) {
+                    slot.mPending = runnable;
+                    return;
+                }
+                slot.mScheduled = true;
+                long nextAllowed = slot.mLastRunNanos + intervalNanos;
+                if (slot.mLastRunNanos == 0 || now >= nextAllowed) {
+                    //窗口外的第一次调用立即执行
+                    slot.mPending = runnable;
+                    slot.mDeadlineNanos = now;
+                    schedule(slot, 0);
+                } else {
+                    slot.mPending = runnable;
+                    slot.mDeadlineNanos = nextAllowed;
+                    schedule(slot, TimeUnit.NANOSECONDS.toMillis(nextAllowed - now));
+                }
+                slot.mIntervalNanos = intervalNanos;
+                return;
+            }
+        }
+    }
+
+    /**
+     * 令牌桶限流：令牌不足时直接丢弃
+     *
+     * @return 是否获得令牌并已提交执行
+     */
+    boolean rateLimit(String key, double permitsPerSecond, Runnable runnable) {
+        while (true) {
+            TokenBucket bucket = mBuckets.get(key);
+            if (bucket == null) {
+                TokenBucket created = new TokenBucket(key, permitsPerSecond);
+                bucket = mBuckets.putIfAbsent(key, created);
+                if (bucket == null) {
+                    bucket = created;
+                }
+            }
+            int result = bucket.tryAcquire(permitsPerSecond);
+            if (result == TokenBucket.EVICTED) {
+                //桶刚被回收，换新桶重试
+                continue;
+            }
+            if (result == TokenBucket.REJECTED) {
+                return false;
+            }
+            dispatch(runnable);
+            return true;
+        }
+    }
+
+    /**
+     * 当前保留的令牌桶数量
+     */
+    int bucketCount() {
+        return mBuckets.size();
+    }
+
+    /**
+     * 取消key上尚未执行的防抖与节流任务
+     */
+    void cancel(String key) {
+        cancelSlot(mDebounceSlots.get(key));
+        cancelSlot(mThrottleSlots.get(key));
+    }
+
+    private static void cancelSlot(Slot slot) {
+        if (slot != null) {
+            synchronized (slot) {
+                slot.mPending = null;
+            }
+        }
+    }
+
+    private Slot slotOf(ConcurrentMap<String, Slot> slots, String key) {
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            Slot created = new Slot(key, slots);
+            slot = slots.putIfAbsent(key, created);
+            if (slot == null) {
+                slot = created;
+            }
+        }
+        return slot;
+    }
+
+    private void schedule(Slot slot, long delayMillis) {
+        switch (mTarget) {
+            case MAIN:
+            case IO:
+                mLoop.postDelayed(slot, delayMillis);
+                break;
+            case PARALLEL:
+            default:
+                if (delayMillis <= 0) {
+                    executeOrRetry(slot);
+                } else {
+                    mTimer.newTimeout(slot, delayMillis, TimeUnit.MILLISECONDS);
+                }
+                break;
+        }
+    }
+
+    /**
+     * 投递槽到并行线程池。被拒绝时槽保持已调度状态，由计时线程稍后重试，
+     * 避免mScheduled停留在true却再没有执行，导致该key之后的调用全部被合并吞掉
+     */
+    private void executeOrRetry(Slot slot) {
+        try {
+            mExecutor.execute(slot);
+        } catch (RejectedExecutionException e) {
+            TaskDispatcher.logError(TAG + " slot " + slot.mKey + " rejected, retry in " + REJECTED_RETRY_MILLIS + "ms " + e);
+            mTimer.newTimeout(slot, REJECTED_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void dispatch(Runnable runnable) {
+        if (mTarget == DispatchTarget.PARALLEL) {
+            mExecutor.execute(runnable);
+        } else {
+            mLoop.post(runnable);
+        }
+    }
+
+    /**
+     * 每个key一个的调度槽，防抖和节流共用
+     */
+    private final class Slot implements Runnable, HashedTimingWheel.TimerTask {
+
+        private final String mKey;
+        private final ConcurrentMap<String, Slot> mSlots;
+        Runnable mPending;
+        long mDeadlineNanos;
+        long mLastRunNanos;
+        long mIntervalNanos;
+        boolean mScheduled;
+        boolean mDead;
+
+        Slot(String key, ConcurrentMap<String, Slot> slots) {
+            this.mKey = key;
+            this.mSlots = slots;
+        }
+
+        @Override
+        public void onTimeout(HashedTimingWheel.Timeout timeout) {
+            executeOrRetry(this);
+        }
+
+        @Override
+        public void run() {
+            Runnable runnable;
+            synchronized (this) {
+                long now = System.nanoTime();
+                long remaining = mDeadlineNanos - now;
+                if (mPending != null && remaining > 0) {
+                    //截止时间被推后，按剩余时间重新挂载一次
+                    schedule(this, Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+                    return;
+                }
+                runnable = mPending;
+                mPending = null;
+                mScheduled = false;
+                if (runnable != null) {
+                    mLastRunNanos = now;
+                }
+                if (runnable == null || mIntervalNanos == 0) {
+                    //防抖槽执行后即可回收；节流槽在窗口内无后续调用时回收
+                    mDead = true;
+                    mSlots.remove(mKey, this);
+                } else {
+                    //节流槽保留到下一个窗口结束，期间的调用继续合并
+                    mScheduled = true;
+                    mDeadlineNanos = now + mIntervalNanos;
+                    schedule(this, TimeUnit.NANOSECONDS.toMillis(mIntervalNanos));
+                }
+            }
+            if (runnable != null) {
+                runnable.run();
+            }
+        }
+    }
+
+    /**
+     * 令牌桶，容量为每秒许可数（至少1个）
+     * <p>
+     * 取走令牌后在计时器上挂一个回收检查，到期时桶已重新攒满则从表中移除，否则按攒满所需的时间再挂一次
+     */
+    private final class TokenBucket implements HashedTimingWheel.TimerTask {
+
+        static final int ACQUIRED = 0;
+        static final int REJECTED = 1;
+        static final int EVICTED = 2;
+
+        private final String mKey;
+        private double mTokens;
+        private double mPermitsPerSecond;
+        private long mLastRefillNanos;
+        private boolean mEvictionArmed;
+        private boolean mDead;
+
+        TokenBucket(String key, double permitsPerSecond) {
+            this.mKey = key;
+            this.mPermitsPerSecond = permitsPerSecond;
+            this.mTokens = Math.max(1d, permitsPerSecond);
+            this.mLastRefillNanos = System.nanoTime();
+        }
+
+        synchronized int tryAcquire(double permitsPerSecond) {
+            if (mDead) {
+                return EVICTED;
+            }
+            mPermitsPerSecond = permitsPerSecond;
+            refill(System.nanoTime());
+            if (mTokens < 1d) {
+                return REJECTED;
+            }
+            mTokens -= 1d;
+            if (!mEvictionArmed) {
+                mEvictionArmed = true;
+                armEviction();
+            }
+            return ACQUIRED;
+        }
+
+        @Override
+        public synchronized void onTimeout(HashedTimingWheel.Timeout timeout) {
+            refill(System.nanoTime());
+            if (mTokens >= capacity()) {
+                mDead = true;
+                mBuckets.remove(mKey, this);
+            } else {
+                armEviction();
+            }
+        }
+
+        private void refill(long now) {
+            mTokens = Math.min(capacity(), mTokens + (now - mLastRefillNanos) / 1e9d * mPermitsPerSecond);
+            mLastRefillNanos = now;
+        }
+
+        private double capacity() {
+            return Math.max(1d, mPermitsPerSecond);
+        }
+
+        private void armEviction() {
+            double secondsToFull = (capacity() - mTokens) / mPermitsPerSecond;
+            long delayMillis = Math.max(1L, (long) Math.ceil(secondsToFull * 1000d));
+            mTimer.newTimeout(this, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.tufusi.taskdispatcher;
+
+import android.content.ComponentCallbacks2;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Created by 鼠夏目 on 2020/4/5.
+ *
+ * @See
+ * @Description 任务结果缓存 - 以调用方给出的key缓存纯函数型任务的结果，配合 {@link TaskDispatcher#executeCached(String, AbstractTask)} 使用
+ * <p>
+ * 按访问顺序的LRU淘汰，条目数有上限；可选TTL与弱引用值（值被回收后视为未命中）。
+ * null结果不缓存。内存紧张时由 {@link #onTrimMemory(int)} 收缩，建议在Application.onTrimMemory中转发
+ */
+public final class ResultCache {
+
+    private static final class Entry {
+
+        final Object strongValue;
+        final WeakReference<Object> weakValue;
+        final long expireNanos;
+
+        Entry(Object value, boolean weak, long expireNanos) {
+            this.strongValue = weak ? null : value;
+            this.weakValue = weak ? new WeakReference<>(value) : null;
+            this.expireNanos = expireNanos;
+        }
+
+        Object value() {
+            return weakValue == null ? strongValue : weakValue.get();
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long mTtlNanos;
+    private final boolean mWeakValues;
+    private int mMaxEntries;
+
+    private long mHits;
+    private long mMisses;
+    private long mLoads;
+    private long mEvictions;
+    private long mExpirations;
+
+    ResultCache(int maxEntries, long ttlMillis, boolean weakValues) {
+        this.mMaxEntries = maxEntries;
+        this.mTtlNanos = ttlMillis * 1000000L;
+        this.mWeakValues = weakValues;
+    }
+
+    /**
+     * 查询缓存
+     *
+     * @param key    缓存key
+     * @param record 是否计入命中/未命中统计
+     * @return 缓存值，未命中、已过期或已被回收时返回null
+     */
+    synchronized Object get(String key, boolean record) {
+        Entry entry = mEntries.get(key);
+        Object value = null;
+        if (entry != null) {
+            if (mTtlNanos > 0 && System.nanoTime() - entry.expireNanos > 0) {
+                mEntries.remove(key);
+                mExpirations++;
+            } else {
+                value = entry.value();
+                if (value == null) {
+                    mEntries.remove(key);
+                    mEvictions++;
+                }
+            }
+        }
+        if (record) {
+            if (value != null) {
+                mHits++;
+            } else {
+                mMisses++;
+            }
+        }
+        return value;
+    }
+
+    synchronized void put(String key, Object value) {
+        if (value == null || mMaxEntries == 0) {
+            return;
+        }
+        mLoads++;
+        mEntries.put(key, new Entry(value, mWeakValues, System.nanoTime() + mTtlNanos));
+        trimToSizeLocked(mMaxEntries);
+    }
+
+    /**
+     * 移除一个key的缓存，下一次提交会重新执行任务
+     */
+    public synchronized void invalidate(String key) {
+        mEntries.remove(key);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        mEvictions += mEntries.size();
+        mEntries.clear();
+    }
+
+    /**
+     * 当前缓存的条目数（包含尚未清理的过期或已回收条目）
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * 调整条目数上限，超出部分按最近最少使用淘汰
+     *
+     * @param maxEntries 条目数上限，0表示关闭缓存
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("maxEntries must not be negative");
+        }
+        mMaxEntries = maxEntries;
+        trimToSizeLocked(maxEntries);
+    }
+
+    /**
+     * 响应系统内存紧张通知：进入后台或更严重时清空缓存，前台内存偏低时淘汰一半
+     *
+     * @param level ComponentCallbacks2中的TRIM_MEMORY_*级别
+     */
+    public synchronized void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSizeLocked(mEntries.size() / 2);
+        }
+    }
+
+    /**
+     * 命中、未命中、写入与淘汰统计
+     */
+    public synchronized ResultCacheStats stats() {
+        return new ResultCacheStats(mHits, mMisses, mLoads, mEvictions, mExpirations, mEntries.size());
+    }
+
+    private void trimToSizeLocked(int maxEntries) {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mEntries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            mEvictions++;
+        }
+    }
+}
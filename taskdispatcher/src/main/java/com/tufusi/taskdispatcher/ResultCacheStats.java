@@ -0,0 +1,58 @@
+package com.tufusi.taskdispatcher;
+
+/**
+ * Created by 鼠夏目 on 2020/4/5.
+ *
+ * @See
+ * @Description 任务结果缓存统计
+ */
+public final class ResultCacheStats {
+
+    /**
+     * 命中次数，命中的提交不经过线程池
+     */
+    public final long hits;
+    /**
+     * 未命中次数
+     */
+    public final long misses;
+    /**
+     * 写入缓存的结果数
+     */
+    public final long loads;
+    /**
+     * 因容量、内存紧张或弱引用值被回收而淘汰的条目数
+     */
+    public final long evictions;
+    /**
+     * 因TTL过期而移除的条目数
+     */
+    public final long expirations;
+    /**
+     * 当前条目数
+     */
+    public final int size;
+
+    ResultCacheStats(long hits, long misses, long loads, long evictions, long expirations, int size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.loads = loads;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.size = size;
+    }
+
+    /**
+     * 命中率
+     */
+    public double hitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0d : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultCacheStats{hits=" + hits + ", misses=" + misses + ", loads=" + loads + ", evictions=" + evictions
+                + ", expirations=" + expirations + ", size=" + size + "}";
+    }
+}
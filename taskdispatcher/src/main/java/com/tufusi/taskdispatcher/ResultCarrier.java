@@ -0,0 +1,130 @@
+package com.tufusi.taskdispatcher;
+
+/**
+ * Created by 鼠夏目 on 2020/3/21.
+ *
+ * @See
+ * @Description AbstractTask主线程回调的载体，对象池复用（与android.os.Message的池化方式一致），回调执行后自动回收
+ */
+final class ResultCarrier implements Runnable {
+
+    static final int TYPE_SUCCESS = 0;
+    static final int TYPE_FAIL = 1;
+    static final int TYPE_CANCEL = 2;
+
+    private static final int MAX_POOL_SIZE = 50;
+    private static final Object POOL_LOCK = new Object();
+    private static ResultCarrier sPool;
+    private static int sPoolSize;
+
+    private ResultCarrier mNext;
+    private AbstractTask<Object> mTask;
+    private Object mResult;
+    private Throwable mThrowable;
+    private int mType;
+    private TaskMetrics.TaskStats mStats;
+    private long mPostNanos;
+    /**
+     * 投递时取自任务，任务在回调前再次提交也不影响本次回调的投递位置
+     */
+    private String mCallSite;
+
+    private ResultCarrier() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static ResultCarrier obtain(AbstractTask<?> task, int type, Object result, Throwable throwable, TaskMetrics.TaskStats stats) {
+        ResultCarrier carrier = null;
+        synchronized (POOL_LOCK) {
+            if (sPool != null) {
+                carrier = sPool;
+                sPool = carrier.mNext;
+                carrier.mNext = null;
+                sPoolSize--;
+            }
+        }
+        if (carrier == null) {
+            carrier = new ResultCarrier();
+        }
+        carrier.mTask = (AbstractTask<Object>) task;
+        carrier.mType = type;
+        carrier.mResult = result;
+        carrier.mThrowable = throwable;
+        carrier.mStats = stats;
+        carrier.mPostNanos = stats == null ? 0 : System.nanoTime();
+        carrier.mCallSite = task.mCallSite;
+        return carrier;
+    }
+
+    @Override
+    public void run() {
+        AbstractTask<Object> task = mTask;
+        int type = mType;
+        Object result = mResult;
+        Throwable throwable = mThrowable;
+        TaskMetrics.TaskStats stats = mStats;
+        if (stats != null && type != TYPE_CANCEL) {
+            stats.deliveryLag.recordNanos(System.nanoTime() - mPostNanos);
+        }
+        recycle();
+
+        switch (type) {
+            case TYPE_SUCCESS:
+                if (!task.isCanceled()) {
+                    task.onSuccess(result);
+                }
+                break;
+            case TYPE_FAIL:
+                if (!task.isCanceled()) {
+                    task.onFail(throwable);
+                }
+                break;
+            case TYPE_CANCEL:
+            default:
+                task.onCancel();
+                break;
+        }
+    }
+
+    /**
+     * 任务名与回调类型，如“LoadTask#onSuccess”，须在执行前调用
+     */
+    String describe() {
+        String callback;
+        switch (mType) {
+            case TYPE_SUCCESS:
+                callback = "#onSuccess";
+                break;
+            case TYPE_FAIL:
+                callback = "#onFail";
+                break;
+            case TYPE_CANCEL:
+            default:
+                callback = "#onCancel";
+                break;
+        }
+        return mTask.getTaskName() + callback;
+    }
+
+    /**
+     * 任务提交时的调用位置，未抓取时为null，须在执行前调用
+     */
+    String callSite() {
+        return mCallSite;
+    }
+
+    private void recycle() {
+        mTask = null;
+        mResult = null;
+        mThrowable = null;
+        mStats = null;
+        mCallSite = null;
+        synchronized (POOL_LOCK) {
+            if (sPoolSize < MAX_POOL_SIZE) {
+                mNext = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
+}
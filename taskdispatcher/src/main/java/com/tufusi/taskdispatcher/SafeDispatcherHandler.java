@@ -19,14 +19,49 @@ public class SafeDispatcherHandler extends Handler {
         super(looper);
     }
 
+    @Override
+    public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+        StallMonitor monitor = StallMonitor.sMonitor;
+        if (monitor != null && monitor.isCaptureCallSite()) {
+            monitor.onPost(msg.getCallback());
+        }
+        return super.sendMessageAtTime(msg, uptimeMillis);
+    }
+
     @Override
     public void dispatchMessage(Message msg) {
+        StallMonitor monitor = StallMonitor.sMonitor;
+        Runnable callback = msg.getCallback();
+        boolean traced = TaskTracer.isEnabled();
+        //合并投递的排空消息由其中的回调逐条计时
+        boolean measured = (monitor != null || traced) && !(callback instanceof MainThreadBatcher.Drain);
+        String name = null;
+        String postedAt = null;
+        long startNanos = 0;
+        if (measured) {
+            //回调载体执行后即被回收，名称与投递位置在执行前取出
+            name = callback != null ? TaskMetrics.nameOf(callback) : "Message#" + msg.what;
+            postedAt = monitor != null ? monitor.postedAt(callback) : null;
+            if (traced) {
+                TaskTracer.begin(name);
+            }
+            startNanos = System.nanoTime();
+        }
         try {
             super.dispatchMessage(msg);
         } catch (Exception e) {
             Log.d(TAG, "dispatchMessage Exception " + msg + " , " + e);
         } catch (Error error) {
             Log.d(TAG, "dispatchMessage error " + msg + " , " + error);
+        } finally {
+            if (measured) {
+                if (traced) {
+                    TaskTracer.end();
+                }
+                if (monitor != null) {
+                    monitor.onDispatched(name, postedAt, System.nanoTime() - startNanos);
+                }
+            }
         }
     }
 }
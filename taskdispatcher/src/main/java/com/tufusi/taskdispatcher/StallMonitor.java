@@ -0,0 +1,242 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by 鼠夏目 on 2020/3/27.
+ *
+ * @See
+ * @Description 慢消息检测 - 统计SafeDispatcherHandler中执行超过预算的消息
+ * <p>
+ * 超出预算的消息按“线程 + Runnable类 + 投递位置”归类，保存在有界的最近违规表中（最久未出现的先淘汰），
+ * 记录次数、最大耗时与总耗时。投递位置需要在post时抓取调用栈，开销较大，默认关闭
+ * <p>
+ * AbstractTask的主线程回调按“任务名#回调类型”归类，投递位置取任务提交时的调用位置；合并投递的回调逐条计时
+ */
+public final class StallMonitor {
+
+    private static final int MAX_OFFENDERS = 64;
+
+    /**
+     * 当前开启的检测器，未开启时为null
+     */
+    static volatile StallMonitor sMonitor;
+
+    /**
+     * 慢消息回调，在执行慢消息的线程中调用
+     */
+    public interface Listener {
+        void onSlowMessage(Offender offender, long durationMillis);
+    }
+
+    /**
+     * 一类慢消息的统计
+     */
+    public static final class Offender {
+
+        public final String threadName;
+        public final String callbackClass;
+        /**
+         * 投递位置，未开启抓取时为null
+         */
+        public final String postedAt;
+        private int mCount;
+        private long mMaxMillis;
+        private long mTotalMillis;
+
+        Offender(String threadName, String callbackClass, String postedAt) {
+            this.threadName = threadName;
+            this.callbackClass = callbackClass;
+            this.postedAt = postedAt;
+        }
+
+        public synchronized int count() {
+            return mCount;
+        }
+
+        public synchronized long maxMillis() {
+            return mMaxMillis;
+        }
+
+        public synchronized long totalMillis() {
+            return mTotalMillis;
+        }
+
+        synchronized void record(long millis) {
+            mCount++;
+            mTotalMillis += millis;
+            mMaxMillis = Math.max(mMaxMillis, millis);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return callbackClass + "{thread=" + threadName + ", postedAt=" + postedAt + ", count=" + mCount
+                    + ", max=" + mMaxMillis + "ms, total=" + mTotalMillis + "ms}";
+        }
+    }
+
+    private final long mBudgetNanos;
+    private final boolean mCaptureCallSite;
+    private final Listener mListener;
+    private final Map<String, Offender> mOffenders = new LinkedHashMap<String, Offender>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Offender> eldest) {
+            return size() > MAX_OFFENDERS;
+        }
+    };
+    private final Map<Runnable, String> mCallSites = new WeakHashMap<>();
+
+    StallMonitor(long budgetMillis, boolean captureCallSite, Listener listener) {
+        this.mBudgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        this.mCaptureCallSite = captureCallSite;
+        this.mListener = listener;
+    }
+
+    /**
+     * 按最大耗时从高到低返回最近的违规消息
+     */
+    public List<Offender> offenders() {
+        List<Offender> offenders;
+        synchronized (mOffenders) {
+            offenders = new ArrayList<>(mOffenders.values());
+        }
+        Collections.sort(offenders, new Comparator<Offender>() {
+            @Override
+            public int compare(Offender o1, Offender o2) {
+                long max1 = o1.maxMillis();
+                long max2 = o2.maxMillis();
+                return max1 < max2 ? 1 : (max1 == max2 ? 0 : -1);
+            }
+        });
+        return offenders;
+    }
+
+    public void clear() {
+        synchronized (mOffenders) {
+            mOffenders.clear();
+        }
+    }
+
+    /**
+     * 在消息线程中执行一个工作：开启追踪时记录区段，开启检测时计时。
+     * 名称与投递位置在执行前取出，回调载体执行后即被回收；合并投递的排空消息不整体计时，由其中的回调逐条计时
+     */
+    static void dispatch(Runnable runnable) {
+        StallMonitor monitor = sMonitor;
+        boolean traced = TaskTracer.isEnabled();
+        if ((monitor == null && !traced) || runnable instanceof MainThreadBatcher.Drain) {
+            runnable.run();
+            return;
+        }
+        String name = TaskMetrics.nameOf(runnable);
+        String postedAt = monitor != null ? monitor.postedAt(runnable) : null;
+        if (traced) {
+            TaskTracer.begin(name);
+        }
+        long startNanos = System.nanoTime();
+        try {
+            runnable.run();
+        } finally {
+            if (traced) {
+                TaskTracer.end();
+            }
+            if (monitor != null) {
+                monitor.onDispatched(name, postedAt, System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    /**
+     * 提交任务时抓取调用位置，未开启抓取时返回null
+     */
+    static String captureCallSite() {
+        StallMonitor monitor = sMonitor;
+        if (monitor == null || !monitor.mCaptureCallSite) {
+            return null;
+        }
+        return findCallSite(new Throwable().getStackTrace());
+    }
+
+    /**
+     * 投递时记录调用位置。回调载体与排空消息是复用对象，不按对象记录，回调载体改用任务提交时的调用位置
+     */
+    void onPost(Runnable callback) {
+        if (!mCaptureCallSite || callback == null
+                || callback instanceof ResultCarrier || callback instanceof MainThreadBatcher.Drain) {
+            return;
+        }
+        String callSite = findCallSite(new Throwable().getStackTrace());
+        synchronized (mCallSites) {
+            mCallSites.put(callback, callSite);
+        }
+    }
+
+    /**
+     * 取出投递位置，须在执行前调用
+     */
+    String postedAt(Runnable callback) {
+        if (!mCaptureCallSite || callback == null) {
+            return null;
+        }
+        if (callback instanceof ResultCarrier) {
+            return ((ResultCarrier) callback).callSite();
+        }
+        synchronized (mCallSites) {
+            return mCallSites.get(callback);
+        }
+    }
+
+    /**
+     * 消息执行完成
+     *
+     * @param callbackClass 消息名称，见 {@link TaskMetrics#nameOf(Object)}
+     * @param postedAt      执行前取出的投递位置
+     */
+    void onDispatched(String callbackClass, String postedAt, long durationNanos) {
+        if (durationNanos < mBudgetNanos) {
+            return;
+        }
+        String threadName = Thread.currentThread().getName();
+        String key = threadName + '|' + callbackClass + '|' + postedAt;
+        Offender offender;
+        synchronized (mOffenders) {
+            offender = mOffenders.get(key);
+            if (offender == null) {
+                offender = new Offender(threadName, callbackClass, postedAt);
+                mOffenders.put(key, offender);
+            }
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        offender.record(millis);
+        TaskDispatcher.logError("slow message " + callbackClass + " took " + millis + "ms on " + threadName
+                + (postedAt == null ? "" : ", posted at " + postedAt));
+        if (mListener != null) {
+            mListener.onSlowMessage(offender, millis);
+        }
+    }
+
+    boolean isCaptureCallSite() {
+        return mCaptureCallSite;
+    }
+
+    /**
+     * 跳过Handler与TaskDispatcher自身的栈帧，取第一个调用方位置
+     */
+    private static String findCallSite(StackTraceElement[] stackTrace) {
+        for (StackTraceElement element : stackTrace) {
+            String className = element.getClassName();
+            if (className.startsWith("android.os.") || className.startsWith(StallMonitor.class.getPackage().getName() + ".")) {
+                continue;
+            }
+            return element.toString();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,409 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Created by 鼠夏目 on 2020/3/19.
+ *
+ * @See
+ * @Description 启动任务图 - 按依赖关系拓扑调度启动任务
+ * <p>
+ * 构建时检查未知依赖与环；运行时无依赖关系的分支在并行线程池中并发执行，
+ * 主线程任务合并到一条主线程消息中批量执行。全部完成后输出每个节点耗时与关键路径。
+ * 任务失败时，直接或间接依赖它的任务不再执行，在报告中标记为跳过并记录失败的任务名。
+ */
+public final class StartupGraph {
+
+    private static final String TAG = "StartupGraph";
+
+    /**
+     * 图执行完成回调，在最后一个完成的任务所在线程中执行
+     */
+    public interface Listener {
+        void onFinished(Report report);
+    }
+
+    private final List<Node> mNodes = new ArrayList<>();
+    private final Listener mListener;
+    private final AtomicBoolean mStarted = new AtomicBoolean(false);
+    private final AtomicInteger mRemaining = new AtomicInteger();
+    private final AtomicInteger mBarrierRemaining = new AtomicInteger();
+
+    private final Queue<Node> mMainQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mMainDrainScheduled = new AtomicBoolean(false);
+    private final Object mMainSignal = new Object();
+    private final Runnable mMainDrain = new Runnable() {
+        @Override
+        public void run() {
+            mMainDrainScheduled.set(false);
+            drainMainQueue();
+        }
+    };
+
+    private long mStartNanos;
+
+    private StartupGraph(Listener listener) {
+        this.mListener = listener;
+    }
+
+    /**
+     * 开始执行，只能调用一次
+     */
+    public void start() {
+        if (!mStarted.compareAndSet(false, true)) {
+            throw new IllegalStateException("StartupGraph already started");
+        }
+        mStartNanos = System.nanoTime();
+        if (mNodes.isEmpty()) {
+            finish();
+            return;
+        }
+        for (Node node : mNodes) {
+            if (node.pendingDependencies.get() == 0) {
+                schedule(node);
+            }
+        }
+    }
+
+    /**
+     * 等待所有 waitBeforeFirstFrame 任务完成，通常在首帧前调用。
+     * 在主线程调用时，等待期间会直接执行已就绪的主线程任务，不会死锁
+     *
+     * @param timeoutMillis 最长等待时间
+     * @return 是否在超时前全部完成
+     */
+    public boolean await(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        boolean mainThread = TaskDispatcher.isMainThread();
+        while (mBarrierRemaining.get() > 0) {
+            if (mainThread) {
+                drainMainQueue();
+            }
+            synchronized (mMainSignal) {
+                if (mBarrierRemaining.get() == 0) {
+                    break;
+                }
+                if (mainThread && !mMainQueue.isEmpty()) {
+                    continue;
+                }
+                long waitNanos = deadline - System.nanoTime();
+                if (waitNanos <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(mMainSignal, waitNanos);
+            }
+        }
+        return true;
+    }
+
+    private void schedule(final Node node) {
+        String failed = node.failedDependency();
+        if (failed != null) {
+            //依赖初始化失败，不在半初始化的依赖上继续执行
+            long now = System.nanoTime();
+            node.startNanos = now;
+            node.endNanos = now;
+            node.skippedBecause = failed;
+            TaskDispatcher.logError(TAG + " task " + node.task.getName() + " skipped, dependency " + failed + " failed");
+            onNodeFinished(node);
+            return;
+        }
+        if (node.task.isMainThread()) {
+            mMainQueue.add(node);
+            synchronized (mMainSignal) {
+                mMainSignal.notifyAll();
+            }
+            if (mMainDrainScheduled.compareAndSet(false, true)) {
+                TaskDispatcher.runOnUIThread(mMainDrain);
+            }
+        } else {
+            TaskDispatcher.execute(node);
+        }
+    }
+
+    private void drainMainQueue() {
+        Node node;
+        while ((node = mMainQueue.poll()) != null) {
+            node.run();
+        }
+    }
+
+    private void onNodeFinished(Node node) {
+        for (Node child : node.children) {
+            if (child.pendingDependencies.decrementAndGet() == 0) {
+                schedule(child);
+            }
+        }
+        if (node.task.isWaitBeforeFirstFrame()) {
+            mBarrierRemaining.decrementAndGet();
+        }
+        synchronized (mMainSignal) {
+            mMainSignal.notifyAll();
+        }
+        if (mRemaining.decrementAndGet() == 0) {
+            finish();
+        }
+    }
+
+    private void finish() {
+        Report report = new Report(mStartNanos, System.nanoTime(), mNodes);
+        TaskDispatcher.logInfo(TAG + " " + report);
+        if (mListener != null) {
+            mListener.onFinished(report);
+        }
+    }
+
+    /**
+     * 图中的节点，同时作为提交到线程池的任务
+     */
+    private final class Node implements Runnable {
+
+        final AbstractStartupTask task;
+        final List<Node> dependencies = new ArrayList<>();
+        final List<Node> children = new ArrayList<>();
+        final AtomicInteger pendingDependencies = new AtomicInteger();
+
+        volatile long startNanos;
+        volatile long endNanos;
+        volatile String threadName;
+        volatile Throwable error;
+        /**
+         * 因依赖失败而跳过时，为最初失败的任务名
+         */
+        volatile String skippedBecause;
+
+        Node(AbstractStartupTask task) {
+            this.task = task;
+        }
+
+        /**
+         * 所有依赖都已结束时调用
+         *
+         * @return 失败（或因失败而跳过）的依赖追溯到的最初失败任务名，依赖全部成功时返回null
+         */
+        String failedDependency() {
+            for (Node dependency : dependencies) {
+                if (dependency.skippedBecause != null) {
+                    return dependency.skippedBecause;
+                }
+                if (dependency.error != null) {
+                    return dependency.task.getName();
+                }
+            }
+            return null;
+        }
+
+        boolean ran() {
+            return skippedBecause == null;
+        }
+
+        @Override
+        public void run() {
+            startNanos = System.nanoTime();
+            threadName = Thread.currentThread().getName();
+            try {
+                task.onStartup();
+            } catch (Throwable throwable) {
+                error = throwable;
+                TaskDispatcher.logError(TAG + " task " + task.getName() + " failed " + throwable);
+            } finally {
+                endNanos = System.nanoTime();
+                onNodeFinished(this);
+            }
+        }
+    }
+
+    /**
+     * 单个节点的执行记录
+     */
+    public static final class NodeTiming {
+
+        public final String name;
+        public final String threadName;
+        /**
+         * 相对图开始执行的启动时间
+         */
+        public final long startOffsetMillis;
+        public final long wallTimeMillis;
+        public final Throwable error;
+        /**
+         * 因依赖失败而跳过时为最初失败的任务名，此时任务没有执行，执行线程为null
+         */
+        public final String skippedBecause;
+
+        NodeTiming(String name, String threadName, long startOffsetMillis, long wallTimeMillis, Throwable error, String skippedBecause) {
+            this.name = name;
+            this.threadName = threadName;
+            this.startOffsetMillis = startOffsetMillis;
+            this.wallTimeMillis = wallTimeMillis;
+            this.error = error;
+            this.skippedBecause = skippedBecause;
+        }
+
+        public boolean isSkipped() {
+            return skippedBecause != null;
+        }
+
+        @Override
+        public String toString() {
+            if (skippedBecause != null) {
+                return name + "{skipped, " + skippedBecause + " failed}";
+            }
+            return name + "{thread=" + threadName + ", start=+" + startOffsetMillis + "ms, wall=" + wallTimeMillis + "ms"
+                    + (error == null ? "" : ", error=" + error) + "}";
+        }
+    }
+
+    /**
+     * 图执行报告
+     */
+    public static final class Report {
+
+        public final long totalMillis;
+        public final List<NodeTiming> timings;
+        /**
+         * 关键路径：从最后完成的节点沿“最后完成的依赖”回溯得到的任务链，按执行顺序排列，跳过的任务不计入
+         */
+        public final List<String> criticalPath;
+
+        private Report(long startNanos, long endNanos, List<StartupGraph.Node> nodes) {
+            this.totalMillis = TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+            List<NodeTiming> timings = new ArrayList<>(nodes.size());
+            StartupGraph.Node last = null;
+            for (StartupGraph.Node node : nodes) {
+                timings.add(new NodeTiming(node.task.getName(), node.threadName,
+                        TimeUnit.NANOSECONDS.toMillis(node.startNanos - startNanos),
+                        TimeUnit.NANOSECONDS.toMillis(node.endNanos - node.startNanos), node.error, node.skippedBecause));
+                if (node.ran() && (last == null || node.endNanos > last.endNanos)) {
+                    last = node;
+                }
+            }
+            Deque<String> path = new ArrayDeque<>();
+            while (last != null) {
+                path.addFirst(last.task.getName());
+                StartupGraph.Node latest = null;
+                for (StartupGraph.Node dependency : last.dependencies) {
+                    //已执行节点的依赖都已成功执行
+                    if (latest == null || dependency.endNanos > latest.endNanos) {
+                        latest = dependency;
+                    }
+                }
+                last = latest;
+            }
+            this.timings = Collections.unmodifiableList(timings);
+            this.criticalPath = Collections.unmodifiableList(new ArrayList<>(path));
+        }
+
+        @Override
+        public String toString() {
+            return "total=" + totalMillis + "ms, criticalPath=" + criticalPath + ", timings=" + timings;
+        }
+    }
+
+    public static final class Builder {
+
+        private final Map<String, AbstractStartupTask> mTasks = new LinkedHashMap<>();
+        private final Map<String, List<String>> mDependencies = new LinkedHashMap<>();
+        private Listener mListener;
+
+        /**
+         * 添加任务
+         *
+         * @param task      启动任务
+         * @param dependsOn 依赖的任务名
+         */
+        public Builder addTask(AbstractStartupTask task, String... dependsOn) {
+            if (mTasks.put(task.getName(), task) != null) {
+                throw new IllegalArgumentException("duplicate startup task " + task.getName());
+            }
+            mDependencies.put(task.getName(), Arrays.asList(dependsOn));
+            return this;
+        }
+
+        public Builder setListener(Listener listener) {
+            this.mListener = listener;
+            return this;
+        }
+
+        /**
+         * 构建任务图，存在未知依赖或环时抛出IllegalStateException
+         */
+        public StartupGraph build() {
+            StartupGraph graph = new StartupGraph(mListener);
+            Map<String, Node> nodes = new LinkedHashMap<>();
+            for (AbstractStartupTask task : mTasks.values()) {
+                nodes.put(task.getName(), graph.new Node(task));
+            }
+            for (Map.Entry<String, List<String>> entry : mDependencies.entrySet()) {
+                Node node = nodes.get(entry.getKey());
+                for (String dependencyName : entry.getValue()) {
+                    Node dependency = nodes.get(dependencyName);
+                    if (dependency == null) {
+                        throw new IllegalStateException(entry.getKey() + " depends on unknown task " + dependencyName);
+                    }
+                    node.dependencies.add(dependency);
+                    dependency.children.add(node);
+                }
+                node.pendingDependencies.set(node.dependencies.size());
+            }
+            checkAcyclic(nodes.values());
+            graph.mNodes.addAll(nodes.values());
+            graph.mRemaining.set(nodes.size());
+            int barrier = 0;
+            for (Node node : nodes.values()) {
+                if (node.task.isWaitBeforeFirstFrame()) {
+                    barrier++;
+                }
+            }
+            graph.mBarrierRemaining.set(barrier);
+            return graph;
+        }
+
+        /**
+         * Kahn算法检查环，无法排序的剩余节点即为环上（或依赖环）的节点
+         */
+        private static void checkAcyclic(Iterable<Node> nodes) {
+            Map<Node, Integer> inDegree = new LinkedHashMap<>();
+            Deque<Node> ready = new ArrayDeque<>();
+            for (Node node : nodes) {
+                inDegree.put(node, node.dependencies.size());
+                if (node.dependencies.isEmpty()) {
+                    ready.add(node);
+                }
+            }
+            int sorted = 0;
+            while (!ready.isEmpty()) {
+                Node node = ready.poll();
+                sorted++;
+                for (Node child : node.children) {
+                    int degree = inDegree.get(child) - 1;
+                    inDegree.put(child, degree);
+                    if (degree == 0) {
+                        ready.add(child);
+                    }
+                }
+            }
+            if (sorted != inDegree.size()) {
+                List<String> cyclic = new ArrayList<>();
+                for (Map.Entry<Node, Integer> entry : inDegree.entrySet()) {
+                    if (entry.getValue() > 0) {
+                        cyclic.add(entry.getKey().task.getName());
+                    }
+                }
+                throw new IllegalStateException("startup graph has a cycle among " + cyclic);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Created by 鼠夏目 on 2020/3/25.
+ *
+ * @See
+ * @Description 分段计数器 - 按线程分散到不同槽位累加，读取时求和，降低多线程同时计数的竞争
+ * <p>
+ * 与LongAdder思路一致（LongAdder需要API 24），每个槽位间隔一个缓存行，避免伪共享
+ */
+final class StripedCounter {
+
+    private static final int PADDING = 8;
+    private static final int STRIPES;
+
+    static {
+        int stripes = 1;
+        int cpus = Runtime.getRuntime().availableProcessors();
+        while (stripes < cpus) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+
+    private final AtomicLongArray mCells = new AtomicLongArray(STRIPES * PADDING);
+
+    void increment() {
+        add(1);
+    }
+
+    void add(long delta) {
+        mCells.addAndGet(indexOf(Thread.currentThread()), delta);
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += mCells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            mCells.set(i * PADDING, 0);
+        }
+    }
+
+    private static int indexOf(Thread thread) {
+        long id = thread.getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash >>> 16) & (STRIPES - 1)) * PADDING;
+    }
+}
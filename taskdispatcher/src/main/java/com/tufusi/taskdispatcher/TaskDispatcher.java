@@ -1,25 +1,24 @@
 package com.tufusi.taskdispatcher;
 
 import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Looper;
-import android.os.Process;
-import android.util.Log;
 
 import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleOwner;
 
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by 鼠夏目 on 2020/3/12.
@@ -29,71 +28,186 @@ import java.util.concurrent.TimeoutException;
  */
 public class TaskDispatcher {
 
-    private static final String TAG = "TaskDispatcher";
     private static volatile TaskDispatcher sTaskDispatcher = null;
+    /**
+     * 是否输出提交/执行类的info日志，默认关闭，避免热路径上的字符串拼接
+     */
+    private static volatile boolean sLogEnabled = false;
 
-    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
     /**
-     * 复制AsyncTask
-     * 从AsyncTask复制的核心池中至少有2个线程，最多4个线程，
-     * 更倾向于比CPU处理器数量少一个，从而避免饱和，同时希望核心池中至少有2个线程和最多4个线程
-     * 从AsyncTask复制CPU与后台工作
+     * 时间轮每个刻度的时长（毫秒），周期任务的实际触发精度
      */
-    private static final int CORE_POOL_SIZE = Math.max(2, Math.min(CPU_COUNT - 1, 4));
+    private static final long TIMER_TICK_MILLIS = 10L;
     /**
-     * 线程池中最大数量
+     * 时间轮槽数量
      */
-    private static final int MAXIMUM_POOL_SIZE = CORE_POOL_SIZE * 2 + 1;
+    private static final int TIMER_WHEEL_SIZE = 512;
+
     /**
-     * 线程存活时长
+     * 初始化配置，只能在第一次getInstance()之前设置
      */
-    private static final long KEEP_ALIVE = 60L;
+    private static DispatcherConfig sConfig;
     /**
-     * 线程池工作队列（用阻塞队列装载）
+     * 运行平台，构造时最先设置，工作线程启动时读取
      */
-    private static final BlockingQueue<Runnable> POOL_WORK_QUEUE = new LinkedBlockingDeque<>(128);
+    private static volatile DispatcherPlatform sPlatform;
 
-    private ThreadPoolExecutor mParallelExecutor;
+    /**
+     * 线程池工作队列（按优先级分通道的阻塞队列），WORK_STEALING后端没有共享队列，为null
+     */
+    private PriorityTaskQueue mWorkQueue;
+    private OverflowHandler mOverflowHandler;
+    /**
+     * 并行执行器，按配置为ThreadPoolExecutor或WorkStealingExecutor
+     */
+    private ExecutorService mParallelExecutor;
+    /**
+     * IO执行域：核心线程即最大线程且允许回收，任务到来时优先创建线程而不是排队，适合阻塞型任务。
+     * 平台提供每任务一个线程的执行器时任务不排队，工作队列为null
+     */
+    private PriorityTaskQueue mIOWorkQueue;
+    private ExecutorService mIOExecutor;
     private ThreadPoolExecutor mTimeOutExecutor;
+    /**
+     * 所有周期任务共用的计时器，只占用一个线程
+     */
+    private HashedTimingWheel mTimer;
+
+    /**
+     * 按key串行执行器注册表，空闲的执行器会被移除
+     */
+    private final ConcurrentMap<String, KeyedSerialExecutor> mSerialExecutors = new ConcurrentHashMap<>();
 
+    /**
+     * 去重任务进行中表，key为调用方提供的去重标识
+     */
+    private final ConcurrentMap<String, DedupTask<?>> mInFlightTasks = new ConcurrentHashMap<>();
+    /**
+     * 可缓存任务的进行中表，key为缓存key，与调用方的去重标识分开存放，避免两者碰撞
+     */
+    private final ConcurrentMap<String, DedupTask<?>> mInFlightCacheLoads = new ConcurrentHashMap<>();
+    /**
+     * 按key注册的批处理执行器
+     */
+    private final ConcurrentMap<String, BatchExecutor<?>> mBatchExecutors = new ConcurrentHashMap<>();
+
+    /**
+     * 防抖、节流、限流控制器，按DispatchTarget序号存放
+     */
+    private final RateController[] mRateControllers = new RateController[DispatchTarget.values().length];
+
+    /**
+     * 任务执行指标，开启后才记录
+     */
+    private final TaskMetrics mMetrics = new TaskMetrics();
+    private volatile boolean mMetricsEnabled;
+    private MetricsExporter mMetricsExporter;
+
+    /**
+     * 主线程与IO串行线程的消息循环，由运行平台提供
+     */
+    private MainLoop mMainLoop;
+    private MainLoop mIOLoop;
+    /**
+     * Android平台下消息循环背后的Handler，其他平台为null
+     */
     private Handler mIOHandler;
-    private SafeDispatcherHandler mMainHandler = new SafeDispatcherHandler(Looper.getMainLooper());
+    private Handler mMainHandler;
+    /**
+     * AbstractTask主线程回调的合并投递器，未开启时为null
+     */
+    private MainThreadBatcher mResultBatcher;
+    /**
+     * 主线程空闲通道，依赖Choreographer，仅Android平台创建
+     */
+    private IdleLane mIdleLane;
+    private long mIdleMaxLatencyMillis;
+    /**
+     * 主线程单条消息的时间预算，用于合并投递与分片投递
+     */
+    private long mMainBudgetMillis;
+    /**
+     * 任务结果缓存
+     */
+    private ResultCache mResultCache;
 
     /**
      * 日志输出实现
      */
-    private ILog mILog = new ILog() {
-        @Override
-        public void info(String info) {
-            Log.i(TAG, info);
-        }
-
-        @Override
-        public void error(String error) {
-            Log.e(TAG, error);
-        }
-    };
+    private ILog mILog;
 
     /**
      * 私有构造函数
      */
-    private TaskDispatcher() {
+    private TaskDispatcher(DispatcherConfig config) {
+        sPlatform = config.platform;
+        mILog = config.platform.newLogger();
+        mMainLoop = config.platform.newMainLoop();
+        if (mMainLoop instanceof AndroidMainLoop) {
+            mMainHandler = ((AndroidMainLoop) mMainLoop).handler();
+        }
+
         //创建线程池执行器 - 任务调度
-        mParallelExecutor = new ThreadPoolExecutor(CORE_POOL_SIZE, MAXIMUM_POOL_SIZE, KEEP_ALIVE, TimeUnit.SECONDS, POOL_WORK_QUEUE, ThreadFactoryWrap.TASK_DISPATCHER_FACTORY);
+        mOverflowHandler = new OverflowHandler(config.overflowPolicy, config.blockTimeoutMillis, config.overflowListener);
+        if (config.executorBackend == ExecutorBackend.WORK_STEALING) {
+            mParallelExecutor = new WorkStealingExecutor(config.corePoolSize, ThreadFactoryWrap.TASK_DISPATCHER_FACTORY);
+        } else {
+            mWorkQueue = new PriorityTaskQueue(config.queueCapacity);
+            mParallelExecutor = new DispatcherThreadPoolExecutor(config.corePoolSize, config.maximumPoolSize, config.keepAliveSeconds, TimeUnit.SECONDS,
+                    mWorkQueue, ThreadFactoryWrap.TASK_DISPATCHER_FACTORY, mOverflowHandler);
+        }
+        //创建线程池执行器 - IO
+        //核心线程数取最大值并允许核心线程超时，这样在达到上限前总是新建线程，队列只在线程全部忙碌时才使用
+        //平台提供每任务一个线程的执行器（如虚拟线程）时直接使用，不再排队
+        ExecutorService blockingExecutor = config.platform.newBlockingExecutor();
+        if (blockingExecutor != null) {
+            mIOExecutor = blockingExecutor;
+        } else {
+            mIOWorkQueue = new PriorityTaskQueue(config.queueCapacity);
+            DispatcherThreadPoolExecutor ioExecutor = new DispatcherThreadPoolExecutor(config.ioMaximumPoolSize, config.ioMaximumPoolSize, Math.max(1, config.keepAliveSeconds), TimeUnit.SECONDS,
+                    mIOWorkQueue, ThreadFactoryWrap.IO_THREAD_FACTORY, mOverflowHandler);
+            ioExecutor.allowCoreThreadTimeOut(true);
+            mIOExecutor = ioExecutor;
+        }
         //创建线程池执行器 - 超时
         //这里创建超时线程只能通过SynchronousQueue
         //没有核心线程的线程池要用SynchronousQueue，而不是LinkedBlockingQueue，SynchronousQueue是一个只有一个任务的队列，
         //这样每次就会创建非核心线程执行任务,因为线程池任务放入队列的优先级比创建非核心线程优先级大.
-        mTimeOutExecutor = new ThreadPoolExecutor(0, MAXIMUM_POOL_SIZE, KEEP_ALIVE, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), ThreadFactoryWrap.TIME_OUT_THREAD_FACTORY);
+        mTimeOutExecutor = new DispatcherThreadPoolExecutor(0, config.maximumPoolSize, config.keepAliveSeconds, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), ThreadFactoryWrap.TIME_OUT_THREAD_FACTORY);
+
+        mTimer = new HashedTimingWheel(ThreadFactoryWrap.DISPATCHER_THREAD_FACTORY, TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS, TIMER_WHEEL_SIZE);
 
-        mIOHandler = provideHandler("IoHandler");
+        if (config.adaptivePoolSizing && mParallelExecutor instanceof DispatcherThreadPoolExecutor) {
+            DispatcherThreadPoolExecutor executor = (DispatcherThreadPoolExecutor) mParallelExecutor;
+            AdaptivePoolSizer poolSizer = new AdaptivePoolSizer(executor, mTimer, config.platform, config.adaptiveMinCoreSize, config.adaptiveMaxCoreSize, config.poolSizeListener);
+            executor.setPoolSizer(poolSizer);
+            poolSizer.start();
+        }
+
+        mIOLoop = config.platform.newBackgroundLoop("IoHandler");
+        if (mIOLoop instanceof AndroidMainLoop) {
+            mIOHandler = ((AndroidMainLoop) mIOLoop).handler();
+        }
+
+        mRateControllers[DispatchTarget.MAIN.ordinal()] = new RateController(DispatchTarget.MAIN, mMainLoop, mParallelExecutor, mTimer);
+        mRateControllers[DispatchTarget.IO.ordinal()] = new RateController(DispatchTarget.IO, mIOLoop, mParallelExecutor, mTimer);
+        mRateControllers[DispatchTarget.PARALLEL.ordinal()] = new RateController(DispatchTarget.PARALLEL, mMainLoop, mParallelExecutor, mTimer);
+
+        mIdleLane = config.platform.newIdleLane(mMainLoop, mTimer, config.idleSliceMillis);
+        mIdleMaxLatencyMillis = config.idleMaxLatencyMillis;
+        mMainBudgetMillis = config.mainBatchBudgetMillis;
+        mResultCache = new ResultCache(config.resultCacheMaxEntries, config.resultCacheTtlMillis, config.resultCacheWeakValues);
+
+        if (config.batchMainCallbacks) {
+            mResultBatcher = new MainThreadBatcher(mMainLoop, config.mainBatchMaxItems, config.mainBatchBudgetMillis);
+        }
     }
 
     public static TaskDispatcher getInstance() {
         if (sTaskDispatcher == null) {
             synchronized (TaskDispatcher.class) {
                 if (sTaskDispatcher == null) {
-                    sTaskDispatcher = new TaskDispatcher();
+                    sTaskDispatcher = new TaskDispatcher(sConfig != null ? sConfig : DispatcherConfig.defaultConfig());
                 }
             }
         }
@@ -101,24 +215,118 @@ public class TaskDispatcher {
     }
 
     /**
-     * 获取回调到handlerName的handler。
-     * 用于在一个后台线程执行同一种任务时，目的为了线程安全。如数据库、文件操作等等
+     * 设置初始化配置，必须在第一次使用TaskDispatcher之前调用（如Application.onCreate），之后调用抛出IllegalStateException
      *
-     * @param handlerName 线程句柄名称
-     * @return 异步任务handler
+     * @param config 配置
      */
-    private static Handler provideHandler(String handlerName) {
-        HandlerThread handlerThread = new HandlerThread(handlerName, Process.THREAD_PRIORITY_BACKGROUND);
-        handlerThread.start();
+    public static void init(DispatcherConfig config) {
+        synchronized (TaskDispatcher.class) {
+            if (sTaskDispatcher != null) {
+                throw new IllegalStateException("TaskDispatcher already initialized");
+            }
+            sConfig = config;
+        }
+    }
+
+    /**
+     * 共享时间轮计时线程累计被唤醒的次数
+     */
+    static long timerWakeups() {
+        return getInstance().mTimer.wakeups();
+    }
+
+    /**
+     * 共享时间轮上尚未到期的节点数
+     */
+    static long pendingTimers() {
+        return getInstance().mTimer.pendingTimeouts();
+    }
+
+    /**
+     * 当前运行平台，调度器创建前为null
+     */
+    static DispatcherPlatform platform() {
+        return sPlatform;
+    }
 
-        return new SafeDispatcherHandler(handlerThread.getLooper());
+    /**
+     * Handler只在Android平台存在，其他平台调用依赖Handler的接口时抛出IllegalStateException
+     */
+    private static Handler requireHandler(Handler handler) {
+        if (handler == null) {
+            throw new IllegalStateException("Handler is only available on the Android platform");
+        }
+        return handler;
     }
 
     /**
      * 提供一个公用的异步handler
      */
     public static Handler ioHandler() {
-        return getInstance().mIOHandler;
+        return requireHandler(getInstance().mIOHandler);
+    }
+
+    /**
+     * 获取按key串行的执行器：同一key的任务按提交顺序依次执行，不同key之间并行，
+     * 全部复用并行线程池。适合不同数据库、文件各自需要有序写入的场景
+     *
+     * @param key 资源标识，如数据库名、文件路径
+     * @return 串行执行器
+     */
+    public static Executor serial(String key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+        TaskDispatcher dispatcher = getInstance();
+        KeyedSerialExecutor executor = dispatcher.mSerialExecutors.get(key);
+        if (executor == null) {
+            KeyedSerialExecutor created = new KeyedSerialExecutor(key, dispatcher.mSerialExecutors, dispatcher.mParallelExecutor);
+            executor = dispatcher.mSerialExecutors.putIfAbsent(key, created);
+            if (executor == null) {
+                executor = created;
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 获取按key注册的批处理执行器，条目累积到maxItems条或等待maxDelayMillis后整批在IO执行域中交给handler处理。
+     * 适合大量细小的写入（插入一行、记录一条事件），把每条一次的线程池投递合并为每批一次
+     *
+     * @param key            批处理标识，同一key只在第一次获取时创建，之后的参数被忽略
+     * @param maxItems       每批条目数
+     * @param maxDelayMillis 一批中第一条最多等待的时间
+     * @param handler        批处理回调
+     * @return 批处理执行器
+     */
+    public static <T> BatchExecutor<T> batch(String key, int maxItems, long maxDelayMillis, BatchHandler<T> handler) {
+        return batch(key, maxItems, maxDelayMillis, handler, getInstance().mIOExecutor);
+    }
+
+    /**
+     * 获取按key注册的批处理执行器
+     *
+     * @param executor 执行批次的执行器，批次需要按顺序处理时传入 {@link #serial(String)}
+     * @see #batch(String, int, long, BatchHandler)
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> BatchExecutor<T> batch(String key, int maxItems, long maxDelayMillis, BatchHandler<T> handler, Executor executor) {
+        if (key == null || handler == null || executor == null) {
+            throw new NullPointerException("key, handler and executor must not be null");
+        }
+        if (maxItems < 1 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException("maxItems must be positive and maxDelayMillis not negative");
+        }
+        TaskDispatcher dispatcher = getInstance();
+        BatchExecutor<T> executorForKey = (BatchExecutor<T>) dispatcher.mBatchExecutors.get(key);
+        if (executorForKey == null) {
+            BatchExecutor<T> created = new BatchExecutor<>(key, maxItems, maxDelayMillis, handler, executor, dispatcher.mTimer);
+            executorForKey = (BatchExecutor<T>) dispatcher.mBatchExecutors.putIfAbsent(key, created);
+            if (executorForKey == null) {
+                executorForKey = created;
+            }
+        }
+        return executorForKey;
     }
 
     /**
@@ -130,6 +338,33 @@ public class TaskDispatcher {
         }
     }
 
+    /**
+     * 开启或关闭任务提交、执行等info日志，错误日志不受影响
+     */
+    public static void setLogEnabled(boolean enabled) {
+        sLogEnabled = enabled;
+    }
+
+    public static boolean isLogEnabled() {
+        return sLogEnabled;
+    }
+
+    /**
+     * 输出日志，供内部组件使用
+     */
+    static void logInfo(String info) {
+        if (sLogEnabled) {
+            getInstance().mILog.info(info);
+        }
+    }
+
+    /**
+     * 输出错误日志，供内部组件使用
+     */
+    static void logError(String error) {
+        getInstance().mILog.error(error);
+    }
+
     /**
      * 执行器平行执行
      *
@@ -139,81 +374,705 @@ public class TaskDispatcher {
         return getInstance().mParallelExecutor;
     }
 
+    /**
+     * CPU执行域，线程数与核数相当，用于计算密集任务，与 {@link #executorService()} 相同
+     *
+     * @return 执行服务
+     */
+    public static ExecutorService cpu() {
+        return getInstance().mParallelExecutor;
+    }
+
+    /**
+     * IO执行域，线程按需创建、空闲回收，上限见 {@link DispatcherConfig.Builder#setIOMaximumPoolSize(int)}，
+     * 用于文件读写、数据库、网络等阻塞型任务，避免占满CPU执行域的线程
+     *
+     * @return 执行服务
+     */
+    public static ExecutorService io() {
+        return getInstance().mIOExecutor;
+    }
+
+    private ExecutorService executorOf(ExecutionDomain domain) {
+        return domain == ExecutionDomain.IO ? mIOExecutor : mParallelExecutor;
+    }
+
     /**
      * 主线程周期性执行任务，默认立刻执行，之后间隔period执行，不需要时注意取消,每次执行时如果有相同的任务，默认会先取消
+     * 所有周期任务共用一个时间轮计时线程，非主线程任务到期后投递到并行线程池执行，上一次未执行完时跳过本次
      *
      * @param task 执行的任务
      */
     public static void dispatchTask(final AbstractDispatcherTask task) {
-        task.canceled.compareAndSet(true, false);
-        final ScheduledExecutorService service = new ScheduledThreadPoolExecutor(1, ThreadFactoryWrap.DISPATCHER_THREAD_FACTORY);
-
-        service.scheduleAtFixedRate(new Runnable() {
-            @Override
-            public void run() {
-                if (task.canceled.get()) {
-                    service.shutdownNow();
-                } else {
-                    if (task.mainThread) {
-                        runOnUIThread(task);
-                    } else {
-                        task.run();
-                    }
-                }
+        if (task.periodMillisecond <= 0) {
+            throw new IllegalArgumentException("periodMillisecond must be positive");
+        }
+        synchronized (task) {
+            HashedTimingWheel.Timeout previous = task.timeout;
+            if (previous != null) {
+                previous.cancel();
             }
-        }, task.startDelayMillisecond, task.periodMillisecond, TimeUnit.MILLISECONDS);
+            task.canceled.set(false);
+            DispatchTimerTask timerTask = new DispatchTimerTask(task);
+            task.timeout = getInstance().mTimer.newTimeout(timerTask, task.startDelayMillisecond, TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
-     * 取消周期性任务
+     * 取消周期性任务，任务会立即从时间轮中摘除
      *
      * @param dispatcherTask 任务对象
      */
     public static void stopDispatchTask(final AbstractDispatcherTask dispatcherTask) {
-        dispatcherTask.canceled.compareAndSet(false, true);
+        synchronized (dispatcherTask) {
+            dispatcherTask.canceled.set(true);
+            HashedTimingWheel.Timeout timeout = dispatcherTask.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+                dispatcherTask.timeout = null;
+            }
+        }
+    }
+
+    /**
+     * 周期任务在时间轮上的载体，按固定频率重新挂载自身
+     */
+    private static final class DispatchTimerTask implements HashedTimingWheel.TimerTask, Runnable {
+
+        private final AbstractDispatcherTask mTask;
+        private final AtomicBoolean mRunning = new AtomicBoolean(false);
+        private long mNextRunNanos;
+
+        DispatchTimerTask(AbstractDispatcherTask task) {
+            this.mTask = task;
+            this.mNextRunNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(task.startDelayMillisecond);
+        }
+
+        @Override
+        public void onTimeout(HashedTimingWheel.Timeout timeout) {
+            if (mTask.canceled.get()) {
+                return;
+            }
+            mNextRunNanos += TimeUnit.MILLISECONDS.toNanos(mTask.periodMillisecond);
+            long delayNanos = Math.max(0, mNextRunNanos - System.nanoTime());
+            synchronized (mTask) {
+                if (mTask.timeout != timeout) {
+                    //已被重新调度或取消
+                    return;
+                }
+                mTask.timeout = getInstance().mTimer.newTimeout(this, delayNanos, TimeUnit.NANOSECONDS);
+            }
+
+            if (mTask.mainThread) {
+                runOnUIThread(mTask);
+            } else if (mRunning.compareAndSet(false, true)) {
+                try {
+                    getInstance().mParallelExecutor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    //本次被拒绝只跳过这一拍，下一拍已挂载，清除运行标记以免之后每一拍都被当作上一次未执行完
+                    mRunning.set(false);
+                    TaskMetrics metrics = metrics();
+                    if (metrics != null) {
+                        metrics.statsOf(mTask.getClass().getName()).rejections.increment();
+                    }
+                    logError("dispatch task rejected, skip this period " + mTask + " " + e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                mTask.run();
+            } finally {
+                mRunning.set(false);
+            }
+        }
     }
 
     /**
      * 执行一个无回调的后台任务
      */
     public static void execute(Runnable task) {
-        getInstance().mILog.info("execute Runnable" + task.toString());
+        if (sLogEnabled) {
+            getInstance().mILog.info("execute Runnable" + task.toString());
+        }
         getInstance().mParallelExecutor.execute(task);
     }
 
+    /**
+     * 按指定优先级执行一个无回调的后台任务
+     *
+     * @param task     任务
+     * @param priority 优先级通道
+     */
+    public static void execute(Runnable task, TaskPriority priority) {
+        if (sLogEnabled) {
+            getInstance().mILog.info("execute Runnable" + task.toString() + " priority " + priority);
+        }
+        getInstance().mParallelExecutor.execute(priority == null || priority == TaskPriority.DEFAULT ? task : new PriorityTaskQueue.PriorityRunnable(task, priority));
+    }
+
     /**
      * 执行一个后台任务，如果不需回调
      *
      * @see #execute(Runnable)
      **/
     public static <R> void execute(AbstractTask<R> task) {
-        getInstance().mILog.info("execute task" + task.toString());
-        getInstance().mParallelExecutor.execute(task);
+        execute(task, TaskPriority.DEFAULT);
+    }
+
+    /**
+     * 按指定优先级执行一个后台任务
+     *
+     * @param task     任务
+     * @param priority 优先级通道
+     */
+    public static <R> void execute(AbstractTask<R> task, TaskPriority priority) {
+        if (sLogEnabled) {
+            getInstance().mILog.info("execute task" + task.toString());
+        }
+        task.setPriority(priority);
+        if (!markSubmitted(task)) {
+            return;
+        }
+        TaskDispatcher dispatcher = getInstance();
+        try {
+            dispatcher.executorOf(task.getExecutionDomain()).execute(task);
+        } catch (RejectedExecutionException e) {
+            task.onRejected();
+            throw e;
+        }
+    }
+
+    /**
+     * 提交一个后台任务并返回可组合的异步结果，任务自身的onSuccess/onFail仍照常回调。
+     * 不需要组合时使用 {@link #execute(AbstractTask)}，避免额外分配
+     *
+     * @param task 任务
+     * @return 异步结果，取消它等同于取消任务
+     */
+    public static <R> TaskFuture<R> submit(AbstractTask<R> task) {
+        return submit(task, TaskPriority.DEFAULT);
+    }
+
+    /**
+     * 按指定优先级提交一个后台任务并返回可组合的异步结果
+     *
+     * @param task     任务
+     * @param priority 优先级通道
+     * @return 异步结果
+     */
+    public static <R> TaskFuture<R> submit(AbstractTask<R> task, TaskPriority priority) {
+        TaskFuture<R> future = new TaskFuture<>(task);
+        task.mFuture = future;
+        try {
+            execute(task, priority);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 按去重key执行后台任务：同一key的任务正在排队或执行时不再重复执行，
+     * 新任务的onSuccess/onFail挂载到进行中的那次执行上
+     *
+     * @param dedupKey 去重标识
+     * @param task     任务
+     */
+    public static <R> void execute(String dedupKey, AbstractTask<R> task) {
+        execute(dedupKey, task, false);
+    }
+
+    /**
+     * 按去重key执行后台任务
+     *
+     * @param dedupKey        去重标识
+     * @param task            任务
+     * @param replaceIfQueued 进行中的执行尚未开始时，是否改用新任务的doInBackground（适合“以最新参数为准”的场景）
+     */
+    public static <R> void execute(String dedupKey, AbstractTask<R> task, boolean replaceIfQueued) {
+        if (dedupKey == null) {
+            execute(task);
+            return;
+        }
+        //与其他提交方式一致：清除上一次的取消标记，继承作用域与父任务；回调投递后由DedupTask结束本次提交
+        if (!task.onSubmit()) {
+            return;
+        }
+        try {
+            executeDeduplicated(getInstance().mInFlightTasks, dedupKey, task, replaceIfQueued);
+        } catch (RejectedExecutionException e) {
+            task.onRejected();
+            throw e;
+        }
+    }
+
+    /**
+     * 挂载到同一key进行中的执行上，没有时新建一次执行，任务须已调用过 {@link AbstractTask#onSubmit()}
+     */
+    @SuppressWarnings("unchecked")
+    private static <R> void executeDeduplicated(ConcurrentMap<String, DedupTask<?>> inFlight, String dedupKey,
+                                                AbstractTask<R> task, boolean replaceIfQueued) {
+        while (true) {
+            DedupTask<R> existing = (DedupTask<R>) inFlight.get(dedupKey);
+            if (existing != null) {
+                if (existing.attach(task, replaceIfQueued)) {
+                    return;
+                }
+                //已结束但尚未从表中移除，等待移除后重新提交
+                inFlight.remove(dedupKey, existing);
+                continue;
+            }
+            DedupTask<R> created = new DedupTask<>(dedupKey, inFlight, task);
+            if (inFlight.putIfAbsent(dedupKey, created) == null) {
+                try {
+                    execute(created, task.getPriority());
+                } catch (RuntimeException e) {
+                    inFlight.remove(dedupKey, created);
+                    throw e;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 执行结果可缓存的后台任务，适用于结果只取决于输入的任务（如解析配置、按宽度计算布局）。
+     * 命中缓存时直接在主线程回调onSuccess，不经过线程池；未命中时同一key同时只执行一次，结果写入缓存
+     *
+     * @param cacheKey 缓存key，应完整描述任务输入
+     * @param task     任务，返回null的结果不缓存
+     * @see #resultCache()
+     */
+    @SuppressWarnings("unchecked")
+    public static <R> void executeCached(String cacheKey, AbstractTask<R> task) {
+        if (cacheKey == null) {
+            execute(task);
+            return;
+        }
+        if (!task.onSubmit()) {
+            return;
+        }
+        ResultCache cache = getInstance().mResultCache;
+        Object cached = cache.get(cacheKey, true);
+        if (cached != null) {
+            task.endDelegatedSubmission();
+            postResult(ResultCarrier.obtain(task, ResultCarrier.TYPE_SUCCESS, cached, null, null));
+            return;
+        }
+        try {
+            executeDeduplicated(getInstance().mInFlightCacheLoads, cacheKey, new CachingTask<>(cache, cacheKey, task), false);
+        } catch (RejectedExecutionException e) {
+            task.onRejected();
+            throw e;
+        }
+    }
+
+    /**
+     * 任务结果缓存，可用于失效指定key、查看命中统计，以及在内存紧张时收缩
+     */
+    public static ResultCache resultCache() {
+        return getInstance().mResultCache;
+    }
+
+    /**
+     * 并行执行一组子任务并等待全部结果，通常在某个任务的doInBackground中调用以拆分工作。
+     * 第一个子任务在当前线程执行，其余提交到并行线程池；等待期间当前线程会帮忙执行尚未开始的子任务，
+     * 工作窃取后端下还会执行自己队列中或窃取来的任务，不会因线程池占满而死锁。
+     * 子任务只执行doInBackground，不回调onSuccess/onFail
+     *
+     * @param tasks 子任务
+     * @return 按顺序排列的子任务结果
+     * @throws ExecutionException         子任务抛出异常
+     * @throws InterruptedException       等待时被中断
+     * @throws RejectedExecutionException 并行线程池拒绝子任务，此时已提交的子任务都会被取消
+     */
+    public static <T> List<T> forkJoin(List<? extends AbstractTask<T>> tasks) throws InterruptedException, ExecutionException {
+        return forkJoin(getInstance().mParallelExecutor, tasks);
+    }
+
+    static <T> List<T> forkJoin(ExecutorService executor, List<? extends AbstractTask<T>> tasks) throws InterruptedException, ExecutionException {
+        int size = tasks.size();
+        List<T> results = new ArrayList<>(size);
+        if (size == 0) {
+            return results;
+        }
+        List<FutureTask<T>> forked = new ArrayList<>(size - 1);
+        for (int i = 1; i < size; i++) {
+            final AbstractTask<T> task = tasks.get(i);
+            FutureTask<T> future = new FutureTask<>(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    return task.doInBackground();
+                }
+            });
+            try {
+                executor.execute(future);
+            } catch (RejectedExecutionException e) {
+                //中途被拒绝：取消已提交的兄弟子任务，不让它们在调用方放弃后继续占用线程池
+                cancelForked(forked);
+                throw e;
+            }
+            forked.add(future);
+        }
+        try {
+            results.add(tasks.get(0).doInBackground());
+        } catch (Throwable throwable) {
+            cancelForked(forked);
+            if (throwable instanceof InterruptedException) {
+                throw (InterruptedException) throwable;
+            }
+            throw new ExecutionException(throwable);
+        }
+        for (FutureTask<T> future : forked) {
+            if (!future.isDone()) {
+                if (executor instanceof WorkStealingExecutor) {
+                    ((WorkStealingExecutor) executor).helpUntilDone(future);
+                } else if (((ThreadPoolExecutor) executor).remove(future)) {
+                    //仍在排队，直接在当前线程执行
+                    future.run();
+                }
+            }
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    private static <T> void cancelForked(List<FutureTask<T>> forked) {
+        for (FutureTask<T> future : forked) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * 执行域是否有工作队列：WORK_STEALING后端的CPU执行域与平台提供每任务一个线程执行器（如虚拟线程）的IO执行域没有，
+     * 这时任务不排队，排队延迟、排队数与取消比例等队列指标不适用
+     *
+     * @param domain 执行域
+     * @return 是否有工作队列
+     */
+    public static boolean hasWorkQueue(ExecutionDomain domain) {
+        TaskDispatcher dispatcher = getInstance();
+        return (domain == ExecutionDomain.IO ? dispatcher.mIOWorkQueue : dispatcher.mWorkQueue) != null;
+    }
+
+    /**
+     * 获取CPU执行域某个优先级通道的排队延迟统计（入队到开始执行）
+     *
+     * @param priority 优先级通道
+     * @return 延迟直方图
+     * @throws IllegalStateException 执行域没有工作队列，见 {@link #hasWorkQueue(ExecutionDomain)}
+     */
+    public static LatencyHistogram queueLatency(TaskPriority priority) {
+        return queueLatency(ExecutionDomain.CPU, priority);
+    }
+
+    /**
+     * 获取指定执行域某个优先级通道的排队延迟统计
+     *
+     * @param domain   执行域
+     * @param priority 优先级通道
+     * @return 延迟直方图
+     * @throws IllegalStateException 执行域没有工作队列，见 {@link #hasWorkQueue(ExecutionDomain)}
+     */
+    public static LatencyHistogram queueLatency(ExecutionDomain domain, TaskPriority priority) {
+        return getInstance().queueOf(domain).latencyOf(priority);
+    }
+
+    /**
+     * 指定执行域当前排队的任务数（含溢出通道）
+     *
+     * @param domain 执行域
+     * @return 排队任务数
+     * @throws IllegalStateException 执行域没有工作队列，见 {@link #hasWorkQueue(ExecutionDomain)}
+     */
+    public static int queueSize(ExecutionDomain domain) {
+        return getInstance().queueOf(domain).size();
+    }
+
+    /**
+     * 指定执行域离开工作队列的任务中已被取消的比例，取消后不再占用工作线程
+     *
+     * @param domain 执行域
+     * @return 0 ~ 1
+     * @throws IllegalStateException 执行域没有工作队列，见 {@link #hasWorkQueue(ExecutionDomain)}
+     */
+    public static double cancelledRatio(ExecutionDomain domain) {
+        return getInstance().queueOf(domain).cancelledRatio();
+    }
+
+    private PriorityTaskQueue queueOf(ExecutionDomain domain) {
+        PriorityTaskQueue queue = domain == ExecutionDomain.IO ? mIOWorkQueue : mWorkQueue;
+        if (queue == null) {
+            //返回一个永远为空的队列会让指标全为0，看起来像是没有排队，直接报错
+            throw new IllegalStateException(domain + " domain has no work queue, tasks are not queued so queue metrics do not apply");
+        }
+        return queue;
+    }
+
+    /**
+     * 并行线程池溢出策略累计触发次数
+     */
+    public static long overflowCount() {
+        return getInstance().mOverflowHandler.overflowCount();
+    }
+
+    /**
+     * 开启或关闭任务指标统计（排队、执行、回调延迟与超时、取消、拒绝次数），默认关闭
+     */
+    public static void setMetricsEnabled(boolean enabled) {
+        getInstance().mMetricsEnabled = enabled;
+    }
+
+    /**
+     * 获取所有任务的指标快照
+     */
+    public static List<TaskMetrics.Snapshot> metricsSnapshot() {
+        return getInstance().mMetrics.snapshot();
+    }
+
+    /**
+     * 设置指标导出，开启指标统计并每隔intervalMillis在并行线程池中回调一次快照，传入null停止导出
+     *
+     * @param sink           导出实现
+     * @param intervalMillis 导出间隔
+     */
+    public static void setMetricsSink(MetricsSink sink, long intervalMillis) {
+        TaskDispatcher dispatcher = getInstance();
+        synchronized (dispatcher.mMetrics) {
+            if (dispatcher.mMetricsExporter != null) {
+                dispatcher.mMetricsExporter.stop();
+                dispatcher.mMetricsExporter = null;
+            }
+            if (sink != null) {
+                if (intervalMillis <= 0) {
+                    throw new IllegalArgumentException("intervalMillis must be positive");
+                }
+                dispatcher.mMetricsEnabled = true;
+                dispatcher.mMetricsExporter = new MetricsExporter(sink, intervalMillis, dispatcher.mMetrics, dispatcher.mParallelExecutor, dispatcher.mTimer);
+                dispatcher.mMetricsExporter.start();
+            }
+        }
+    }
+
+    /**
+     * 开启指标统计时返回指标记录器，否则返回null
+     */
+    static TaskMetrics metrics() {
+        TaskDispatcher dispatcher = getInstance();
+        return dispatcher.mMetricsEnabled ? dispatcher.mMetrics : null;
+    }
+
+    static void recordRejection(Runnable task) {
+        TaskMetrics metrics = metrics();
+        if (metrics != null) {
+            metrics.statsOf(TaskMetrics.nameOf(task)).rejections.increment();
+        }
+    }
+
+    /**
+     * @return 任务因所属作用域或父任务已取消而不应入队时返回false
+     */
+    private static boolean markSubmitted(AbstractTask<?> task) {
+        if (!task.onSubmit()) {
+            return false;
+        }
+        TaskMetrics metrics = metrics();
+        if (metrics != null) {
+            task.mEnqueueNanos = System.nanoTime();
+            metrics.statsOf(task.getTaskName()).submitted.increment();
+        }
+        return true;
+    }
+
+    /**
+     * 在所在执行域的工作队列中为已取消的任务记墓碑，出队时跳过，墓碑过多时批量压缩
+     */
+    static void removeQueued(AbstractTask<?> task) {
+        TaskDispatcher dispatcher = sTaskDispatcher;
+        if (dispatcher == null) {
+            return;
+        }
+        if (dispatcher.executorOf(task.getExecutionDomain()) instanceof ThreadPoolExecutor) {
+            dispatcher.queueOf(task.getExecutionDomain()).markCancelled(task);
+        }
+    }
+
+    /**
+     * 指标周期导出，借用时间轮计时，在并行线程池中回调
+     * <p>
+     * 线程池拒绝时跳过本轮并重新计时，不会因一次拒绝停止导出
+     */
+    static final class MetricsExporter implements HashedTimingWheel.TimerTask, Runnable {
+
+        private final MetricsSink mSink;
+        private final long mIntervalMillis;
+        private final TaskMetrics mMetrics;
+        private final Executor mExecutor;
+        private final HashedTimingWheel mTimer;
+        private volatile boolean mStopped;
+
+        MetricsExporter(MetricsSink sink, long intervalMillis, TaskMetrics metrics, Executor executor, HashedTimingWheel timer) {
+            this.mSink = sink;
+            this.mIntervalMillis = intervalMillis;
+            this.mMetrics = metrics;
+            this.mExecutor = executor;
+            this.mTimer = timer;
+        }
+
+        void start() {
+            mTimer.newTimeout(this, mIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        void stop() {
+            mStopped = true;
+        }
+
+        @Override
+        public void onTimeout(HashedTimingWheel.Timeout timeout) {
+            if (mStopped) {
+                return;
+            }
+            try {
+                mExecutor.execute(this);
+            } catch (RejectedExecutionException e) {
+                logError("metrics export rejected, skip this round " + e);
+                start();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                mSink.onMetrics(mMetrics.snapshot());
+            } catch (Throwable throwable) {
+                logError("metrics sink error " + throwable);
+            } finally {
+                if (!mStopped) {
+                    start();
+                }
+            }
+        }
+    }
+
+    /**
+     * 开启慢消息检测：主线程与IoHandler中执行超过budgetMillis的消息会被记录并回调。
+     * AbstractTask的回调按“任务名#onSuccess/onFail/onCancel”归类
+     *
+     * @param budgetMillis    单条消息的耗时预算，如8或16毫秒
+     * @param captureCallSite 是否在post时抓取调用位置（需要获取调用栈，建议只在调试包开启）
+     * @param listener        慢消息回调，可为null
+     * @return 检测器，可通过 {@link StallMonitor#offenders()} 查看最近的违规消息
+     */
+    public static StallMonitor enableStallMonitor(long budgetMillis, boolean captureCallSite, StallMonitor.Listener listener) {
+        if (budgetMillis <= 0) {
+            throw new IllegalArgumentException("budgetMillis must be positive");
+        }
+        StallMonitor monitor = new StallMonitor(budgetMillis, captureCallSite, listener);
+        StallMonitor.sMonitor = monitor;
+        return monitor;
+    }
+
+    /**
+     * 关闭慢消息检测
+     */
+    public static void disableStallMonitor() {
+        StallMonitor.sMonitor = null;
+    }
+
+    /**
+     * 当前的慢消息检测器，未开启时返回null
+     */
+    public static StallMonitor stallMonitor() {
+        return StallMonitor.sMonitor;
     }
 
     /**
      * 主线程执行
      */
     public static void runOnUIThread(Runnable runnable) {
-        getInstance().mMainHandler.post(runnable);
+        getInstance().mMainLoop.post(runnable);
+    }
+
+    /**
+     * 投递AbstractTask的主线程回调，开启合并投递时与同一时间段的其他回调共用一条主线程消息
+     */
+    static void postResult(Runnable runnable) {
+        MainThreadBatcher batcher = getInstance().mResultBatcher;
+        if (batcher != null) {
+            batcher.post(runnable);
+        } else {
+            runOnUIThread(runnable);
+        }
+    }
+
+    /**
+     * 在主线程空闲且不影响出帧时执行非紧急工作（如缓存清理、统计上报、预加载），
+     * 超过默认最大延迟仍未等到空闲时直接执行
+     *
+     * @param runnable 在主线程中执行的工作
+     * @see DispatcherConfig.Builder#setIdleMaxLatencyMillis(long)
+     */
+    public static void runWhenIdle(Runnable runnable) {
+        TaskDispatcher dispatcher = getInstance();
+        dispatcher.postIdle(runnable, dispatcher.mIdleMaxLatencyMillis);
+    }
+
+    /**
+     * 在主线程空闲时执行非紧急工作
+     *
+     * @param runnable         在主线程中执行的工作
+     * @param maxLatencyMillis 最大延迟，超过后不再等待空闲
+     */
+    public static void runWhenIdle(Runnable runnable, long maxLatencyMillis) {
+        getInstance().postIdle(runnable, maxLatencyMillis);
+    }
+
+    /**
+     * 非Android平台没有出帧与空闲信号，直接投递到主线程消息循环
+     */
+    private void postIdle(Runnable runnable, long maxLatencyMillis) {
+        if (mIdleLane != null) {
+            mIdleLane.post(runnable, maxLatencyMillis);
+        } else {
+            mMainLoop.post(runnable);
+        }
+    }
+
+    /**
+     * 空闲通道统计：空闲时执行与到期强制执行的数量、占用的空闲时间
+     */
+    public static IdleLaneStats idleLaneStats() {
+        IdleLane lane = getInstance().mIdleLane;
+        return lane == null ? new IdleLaneStats(0, 0, 0, 0, 0) : lane.stats();
+    }
+
+    static long mainBudgetMillis() {
+        return getInstance().mMainBudgetMillis;
+    }
+
+    /**
+     * 合并投递AbstractTask回调累计节省的主线程消息数，未开启合并投递时为0
+     */
+    public static long savedMainMessages() {
+        MainThreadBatcher batcher = getInstance().mResultBatcher;
+        return batcher == null ? 0 : batcher.savedMessages();
     }
 
     /**
      * 执行有生命周期的任务
      */
     public static Runnable runOnUIThread(LifecycleOwner lifecycleOwner, Runnable runnable) {
-        LifecycleRunnableDelegate lifecycleRunnableDelegate = new LifecycleRunnableDelegate(lifecycleOwner, getInstance().mMainHandler, Lifecycle.Event.ON_DESTROY, runnable);
-        getInstance().mMainHandler.post(lifecycleRunnableDelegate);
-        return lifecycleRunnableDelegate;
+        return postLifecycleRunnable(lifecycleOwner, mainHandler(), Lifecycle.Event.ON_DESTROY, runnable, 0);
     }
 
     /**
      * 执行有生命周期的任务，指定Lifecycle.Event
      */
     public static Runnable runOnUIThread(LifecycleOwner lifecycleOwner, Lifecycle.Event targetEvent, Runnable runnable) {
-        LifecycleRunnableDelegate lifecycleRunnableDelegate = new LifecycleRunnableDelegate(lifecycleOwner, getInstance().mMainHandler, targetEvent, runnable);
-        getInstance().mMainHandler.post(lifecycleRunnableDelegate);
-        return lifecycleRunnableDelegate;
+        return postLifecycleRunnable(lifecycleOwner, mainHandler(), targetEvent, runnable, 0);
     }
 
     /**
@@ -223,7 +1082,7 @@ public class TaskDispatcher {
      * @param delayed  延迟时间
      */
     public static void runOnUIThread(Runnable runnable, long delayed) {
-        getInstance().mMainHandler.postDelayed(runnable, delayed);
+        getInstance().mMainLoop.postDelayed(runnable, delayed);
     }
 
     /**
@@ -235,9 +1094,7 @@ public class TaskDispatcher {
      * @return 被委托执行的拥有生命周期的线程，并在主线程中执行
      */
     public static Runnable runOnUIThread(LifecycleOwner lifecycleOwner, Runnable runnable, long delayed) {
-        LifecycleRunnableDelegate lifecycleRunnableDelegate = new LifecycleRunnableDelegate(lifecycleOwner, getInstance().mMainHandler, Lifecycle.Event.ON_DESTROY, runnable);
-        getInstance().mMainHandler.postDelayed(lifecycleRunnableDelegate, delayed);
-        return lifecycleRunnableDelegate;
+        return postLifecycleRunnable(lifecycleOwner, mainHandler(), Lifecycle.Event.ON_DESTROY, runnable, delayed);
     }
 
     /**
@@ -250,86 +1107,232 @@ public class TaskDispatcher {
      * @return 被委托执行的拥有生命周期的线程，并在主线程中执行
      */
     public static Runnable runOnUIThread(LifecycleOwner lifecycleOwner, Lifecycle.Event targetEvent, Runnable runnable, long delayed) {
-        LifecycleRunnableDelegate lifecycleRunnableDelegate = new LifecycleRunnableDelegate(lifecycleOwner, getInstance().mMainHandler, targetEvent, runnable);
-        getInstance().mMainHandler.postDelayed(lifecycleRunnableDelegate, delayed);
-        return lifecycleRunnableDelegate;
+        return postLifecycleRunnable(lifecycleOwner, mainHandler(), targetEvent, runnable, delayed);
     }
 
     /**
      * 外部提供执行任务的Handler
      */
     public static Runnable runLifecycleRunnable(LifecycleOwner lifecycleOwner, Handler anyThreadHandler, Runnable runnable) {
-        LifecycleRunnableDelegate lifecycleRunnableDelegate = new LifecycleRunnableDelegate(lifecycleOwner, anyThreadHandler, Lifecycle.Event.ON_DESTROY, runnable);
-        anyThreadHandler.post(lifecycleRunnableDelegate);
-        return lifecycleRunnableDelegate;
+        return postLifecycleRunnable(lifecycleOwner, anyThreadHandler, Lifecycle.Event.ON_DESTROY, runnable, 0);
     }
 
     /**
      * 外部提供执行任务的Handler，指定Lifecycle.Event
      */
     public static Runnable runLifecycleRunnable(LifecycleOwner lifecycleOwner, Handler anyThreadHandler, Runnable runnable, long delayed) {
-        LifecycleRunnableDelegate lifecycleRunnableDelegate = new LifecycleRunnableDelegate(lifecycleOwner, anyThreadHandler, Lifecycle.Event.ON_DESTROY, runnable);
-        anyThreadHandler.postDelayed(lifecycleRunnableDelegate, delayed);
-        return lifecycleRunnableDelegate;
+        return postLifecycleRunnable(lifecycleOwner, anyThreadHandler, Lifecycle.Event.ON_DESTROY, runnable, delayed);
     }
 
     /**
      * 外部提供执行任务的Handler,指定移除的Lifecycle.Event
      */
     public static Runnable runLifecycleRunnable(LifecycleOwner lifecycleOwner, Handler anyThreadHandler, Lifecycle.Event targetEvent, Runnable runnable, long delayed) {
-        LifecycleRunnableDelegate lifecycleRunnableDelegate = new LifecycleRunnableDelegate(lifecycleOwner, anyThreadHandler, targetEvent, runnable);
-        anyThreadHandler.postDelayed(lifecycleRunnableDelegate, delayed);
+        return postLifecycleRunnable(lifecycleOwner, anyThreadHandler, targetEvent, runnable, delayed);
+    }
+
+    private static Runnable postLifecycleRunnable(LifecycleOwner lifecycleOwner, Handler handler, Lifecycle.Event targetEvent, Runnable runnable, long delayed) {
+        LifecycleRunnableDelegate lifecycleRunnableDelegate = new LifecycleRunnableDelegate(lifecycleOwner, handler, targetEvent, runnable);
+        lifecycleRunnableDelegate.post(delayed);
         return lifecycleRunnableDelegate;
     }
 
+    /**
+     * 执行有生命周期的后台任务，lifecycleOwner ON_DESTROY时取消，排队中的任务不再执行
+     *
+     * @param lifecycleOwner Lifecycle持有者
+     * @param task           任务
+     */
+    public static <R> void execute(LifecycleOwner lifecycleOwner, AbstractTask<R> task) {
+        execute(lifecycleOwner, Lifecycle.Event.ON_DESTROY, task);
+    }
+
+    /**
+     * 执行有生命周期的后台任务，指定取消任务的Lifecycle.Event
+     *
+     * @param lifecycleOwner Lifecycle持有者
+     * @param targetEvent    取消任务的事件
+     * @param task           任务
+     */
+    public static <R> void execute(LifecycleOwner lifecycleOwner, Lifecycle.Event targetEvent, AbstractTask<R> task) {
+        LifecycleTaskRegistry.of(lifecycleOwner).bucket(targetEvent).scope().execute(task);
+    }
+
     /**
      * 移除主线程回调
      *
      * @param runnable 在主线程中执行的线程
      */
     public static void removeUICallback(Runnable runnable) {
-        mainHandler().removeCallbacks(runnable);
+        getInstance().mMainLoop.removeCallbacks(runnable);
     }
 
     /**
-     * 获取主线程句柄
+     * 获取主线程句柄，仅Android平台可用
      *
      * @return 返回Handler
      */
     public static Handler mainHandler() {
-        return getInstance().mMainHandler;
+        return requireHandler(getInstance().mMainHandler);
+    }
+
+    /**
+     * 获取主线程消息循环，各平台通用
+     */
+    public static MainLoop mainLoop() {
+        return getInstance().mMainLoop;
     }
 
     public static boolean isMainThread() {
-        return Thread.currentThread() == getInstance().mMainHandler.getLooper().getThread();
+        return getInstance().mMainLoop.isCurrentThread();
     }
 
     /**
      * 使用一个单独的线程池来执行超时任务，避免引起他线程不够用导致超时
+     * 超时由公用的时间轮统一看守，每个超时任务只占用一个执行线程
      *
      * @param timeOutMillis 超时时间，单位毫秒
      *                      通过实现error(Exception) 判断是否为 TimeoutException 来判断是否超时,
      *                      不能100%保证实际的超时时间就是timeOutMillis，但一般没必要那么精确
      */
     public static <R> void executeTimeOutTask(final long timeOutMillis, final AbstractTask<R> timeOutTask) {
-        final Future future = getInstance().mTimeOutExecutor.submit(timeOutTask);
-        getInstance().mTimeOutExecutor.execute(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    future.get(timeOutMillis, TimeUnit.MILLISECONDS);
-                } catch (InterruptedException | ExecutionException | TimeoutException e) {
-                    runOnUIThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            if (!timeOutTask.isCanceled()) {
-                                timeOutTask.cancel();
-                            }
-                        }
-                    });
-                }
+        if (!markSubmitted(timeOutTask)) {
+            return;
+        }
+        TimeOutFutureTask<R> futureTask = new TimeOutFutureTask<>(timeOutTask);
+        futureTask.mTimeout = getInstance().mTimer.newTimeout(futureTask, timeOutMillis, TimeUnit.MILLISECONDS);
+        try {
+            getInstance().mTimeOutExecutor.execute(futureTask);
+        } catch (RejectedExecutionException e) {
+            futureTask.mTimeout.cancel();
+            timeOutTask.onRejected();
+            throw e;
+        }
+    }
+
+    /**
+     * 超时任务载体，任务结束时立即撤销时间轮上的超时节点，超时先到则在主线程取消任务
+     */
+    private static final class TimeOutFutureTask<R> extends FutureTask<R> implements HashedTimingWheel.TimerTask {
+
+        private final AbstractTask<R> mTask;
+        private volatile HashedTimingWheel.Timeout mTimeout;
+
+        TimeOutFutureTask(AbstractTask<R> task) {
+            super(task, null);
+            this.mTask = task;
+        }
+
+        @Override
+        protected void done() {
+            HashedTimingWheel.Timeout timeout = mTimeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+
+        @Override
+        public void onTimeout(HashedTimingWheel.Timeout timeout) {
+            if (isDone()) {
+                return;
             }
-        });
+            TaskMetrics metrics = metrics();
+            if (metrics != null) {
+                metrics.statsOf(mTask.getTaskName()).timeouts.increment();
+            }
+            runOnUIThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mTask.isCanceled()) {
+                        mTask.cancel();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 主线程防抖，delayMillis内没有新的调用时才执行最后一次提交的任务，适合输入联想等场景
+     *
+     * @param key         防抖标识
+     * @param delayMillis 静默时长
+     * @param runnable    任务
+     */
+    public static void debounce(String key, long delayMillis, Runnable runnable) {
+        debounce(DispatchTarget.MAIN, key, delayMillis, runnable);
+    }
+
+    /**
+     * 在指定线程上防抖，每个key只占用一个调度槽，重复调用不会重新post消息
+     *
+     * @param target      执行线程
+     * @param key         防抖标识
+     * @param delayMillis 静默时长
+     * @param runnable    任务
+     */
+    public static void debounce(DispatchTarget target, String key, long delayMillis, Runnable runnable) {
+        getInstance().mRateControllers[target.ordinal()].debounce(key, delayMillis, runnable);
+    }
+
+    /**
+     * 主线程节流，每intervalMillis最多执行一次，窗口内的调用只保留最后一次并在窗口结束时执行
+     *
+     * @param key            节流标识
+     * @param intervalMillis 窗口时长
+     * @param runnable       任务
+     */
+    public static void throttle(String key, long intervalMillis, Runnable runnable) {
+        throttle(DispatchTarget.MAIN, key, intervalMillis, runnable);
+    }
+
+    /**
+     * 在指定线程上节流
+     *
+     * @param target         执行线程
+     * @param key            节流标识
+     * @param intervalMillis 窗口时长
+     * @param runnable       任务
+     */
+    public static void throttle(DispatchTarget target, String key, long intervalMillis, Runnable runnable) {
+        getInstance().mRateControllers[target.ordinal()].throttle(key, intervalMillis, runnable);
+    }
+
+    /**
+     * 主线程令牌桶限流，令牌不足时丢弃任务
+     *
+     * @param key              限流标识
+     * @param permitsPerSecond 每秒许可数，同时也是允许的突发数量（至少为1）
+     * @param runnable         任务
+     * @return 是否获得令牌并已提交执行
+     */
+    public static boolean rateLimit(String key, double permitsPerSecond, Runnable runnable) {
+        return rateLimit(DispatchTarget.MAIN, key, permitsPerSecond, runnable);
+    }
+
+    /**
+     * 在指定线程上令牌桶限流
+     *
+     * @param target           执行线程
+     * @param key              限流标识
+     * @param permitsPerSecond 每秒许可数
+     * @param runnable         任务
+     * @return 是否获得令牌并已提交执行
+     */
+    public static boolean rateLimit(DispatchTarget target, String key, double permitsPerSecond, Runnable runnable) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        return getInstance().mRateControllers[target.ordinal()].rateLimit(key, permitsPerSecond, runnable);
+    }
+
+    /**
+     * 取消key上尚未执行的防抖、节流任务
+     *
+     * @param target 执行线程
+     * @param key    标识
+     */
+    public static void cancelDebounce(DispatchTarget target, String key) {
+        getInstance().mRateControllers[target.ordinal()].cancel(key);
     }
 
     /**
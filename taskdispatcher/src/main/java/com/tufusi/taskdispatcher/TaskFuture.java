@@ -0,0 +1,525 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Created by 鼠夏目 on 2020/3/31.
+ *
+ * @See
+ * @Description 可组合的异步结果，由 {@link TaskDispatcher#submit(AbstractTask)} 或 {@link #supply(Callable, Executor)} 创建
+ * <p>
+ * 每个阶段在指定的执行器中执行（默认CPU执行域），阶段之间不经过主线程，只有 {@link #onMainThread(Callback)} 在主线程回调。
+ * 取消与AbstractTask语义一致：正在执行的阶段线程被中断，结果不再投递，只回调onCancel；
+ * 上游被取消或失败时下游随之结束。下游结束（取消、失败或allOf/anyOf提前完成）时释放对上游的依赖，
+ * 上游只有在没有其他下游仍在等待时才会被取消，同一上游分出的多个分支互不影响
+ */
+public class TaskFuture<R> implements Future<R> {
+
+    /**
+     * 同步转换阶段
+     */
+    public interface Function<T, U> {
+        U apply(T value) throws Exception;
+    }
+
+    /**
+     * 异步转换阶段，返回下一个异步结果
+     */
+    public interface AsyncFunction<T, U> {
+        TaskFuture<U> apply(T value) throws Exception;
+    }
+
+    /**
+     * 主线程结果回调
+     */
+    public abstract static class Callback<R> {
+
+        public abstract void onSuccess(R result);
+
+        public void onFail(Throwable throwable) {
+        }
+
+        public void onCancel() {
+        }
+    }
+
+    /**
+     * 阶段执行体
+     */
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    private static final int PENDING = 0;
+    private static final int SUCCESS = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private int mState = PENDING;
+    private R mResult;
+    private Throwable mThrowable;
+    /**
+     * 完成时在完成线程上执行的监听，完成后置空
+     */
+    private List<Runnable> mListeners;
+    /**
+     * 正在执行本阶段的线程，仅在持有锁时读写
+     */
+    private Thread mRunner;
+    /**
+     * 本阶段依赖的上游，结束时释放，仅在持有锁时读写
+     */
+    private TaskFuture<?>[] mUpstreams;
+    /**
+     * 仍在等待本结果的下游数量，降为0且本结果尚未完成时取消本结果
+     */
+    private int mDependents;
+    /**
+     * 由AbstractTask产生时对应的任务
+     */
+    private final AbstractTask<?> mSourceTask;
+
+    TaskFuture() {
+        this(null);
+    }
+
+    TaskFuture(AbstractTask<?> sourceTask) {
+        this.mSourceTask = sourceTask;
+    }
+
+    /**
+     * 在指定执行器中执行callable
+     *
+     * @param callable 执行体
+     * @param executor 执行器，如 {@link TaskDispatcher#io()}
+     */
+    public static <R> TaskFuture<R> supply(final Callable<R> callable, Executor executor) {
+        final TaskFuture<R> future = new TaskFuture<>();
+        future.runStage(executor, new Stage() {
+            @Override
+            public void run() throws Exception {
+                future.complete(callable.call());
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 已完成的结果
+     */
+    public static <R> TaskFuture<R> completed(R result) {
+        TaskFuture<R> future = new TaskFuture<>();
+        future.complete(result);
+        return future;
+    }
+
+    /**
+     * 所有输入都成功后以结果列表完成（顺序与输入一致）；任一输入失败或取消时立即以同样方式结束，并取消其余输入
+     *
+     * @param futures 输入
+     */
+    public static <T> TaskFuture<List<T>> allOf(final List<? extends TaskFuture<? extends T>> futures) {
+        if (futures.isEmpty()) {
+            return completed(Collections.<T>emptyList());
+        }
+        final TaskFuture<List<T>> all = new TaskFuture<>();
+        final Object[] results = new Object[futures.size()];
+        final AtomicInteger remaining = new AtomicInteger(futures.size());
+        all.dependOn(futures.toArray(new TaskFuture<?>[futures.size()]));
+        for (int i = 0; i < futures.size(); i++) {
+            final int index = i;
+            final TaskFuture<? extends T> input = futures.get(i);
+            input.addListener(new Runnable() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public void run() {
+                    //失败时all随之失败，并释放对其余输入的依赖，没有其他下游的输入被取消
+                    if (!all.propagate(input)) {
+                        return;
+                    }
+                    results[index] = input.mResult;
+                    if (remaining.decrementAndGet() == 0) {
+                        all.complete((List<T>) Collections.unmodifiableList(Arrays.asList(results)));
+                    }
+                }
+            });
+        }
+        return all;
+    }
+
+    /**
+     * 以第一个成功的输入完成，并取消其余输入；全部失败时以最后一个失败结束
+     *
+     * @param futures 输入，不能为空
+     */
+    public static <T> TaskFuture<T> anyOf(final List<? extends TaskFuture<? extends T>> futures) {
+        if (futures.isEmpty()) {
+            throw new IllegalArgumentException("anyOf requires at least one future");
+        }
+        final TaskFuture<T> any = new TaskFuture<>();
+        final AtomicInteger remaining = new AtomicInteger(futures.size());
+        any.dependOn(futures.toArray(new TaskFuture<?>[futures.size()]));
+        for (final TaskFuture<? extends T> input : futures) {
+            input.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    int state = input.state();
+                    if (state == SUCCESS) {
+                        //完成后释放对其余输入的依赖，没有其他下游的输入被取消
+                        any.complete(input.mResult);
+                    } else if (remaining.decrementAndGet() == 0) {
+                        any.completeExceptionally(state == FAILED ? input.mThrowable : new CancellationException("all inputs canceled"));
+                    }
+                }
+            });
+        }
+        return any;
+    }
+
+    /**
+     * 在CPU执行域中转换结果
+     */
+    public <U> TaskFuture<U> thenApply(Function<? super R, ? extends U> fn) {
+        return thenApply(fn, TaskDispatcher.cpu());
+    }
+
+    /**
+     * 在指定执行器中转换结果
+     *
+     * @param fn       转换
+     * @param executor 执行器
+     */
+    public <U> TaskFuture<U> thenApply(final Function<? super R, ? extends U> fn, final Executor executor) {
+        final TaskFuture<U> next = new TaskFuture<>();
+        next.dependOn(this);
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (!next.propagate(TaskFuture.this)) {
+                    return;
+                }
+                next.runStage(executor, new Stage() {
+                    @Override
+                    public void run() throws Exception {
+                        next.complete(fn.apply(mResult));
+                    }
+                });
+            }
+        });
+        return next;
+    }
+
+    /**
+     * 在CPU执行域中以结果发起下一个异步操作
+     */
+    public <U> TaskFuture<U> thenCompose(AsyncFunction<? super R, U> fn) {
+        return thenCompose(fn, TaskDispatcher.cpu());
+    }
+
+    /**
+     * 在指定执行器中以结果发起下一个异步操作，返回值随该操作完成
+     *
+     * @param fn       返回下一个异步结果
+     * @param executor 执行fn的执行器
+     */
+    public <U> TaskFuture<U> thenCompose(final AsyncFunction<? super R, U> fn, final Executor executor) {
+        final TaskFuture<U> next = new TaskFuture<>();
+        next.dependOn(this);
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (!next.propagate(TaskFuture.this)) {
+                    return;
+                }
+                next.runStage(executor, new Stage() {
+                    @Override
+                    public void run() throws Exception {
+                        final TaskFuture<U> inner = fn.apply(mResult);
+                        if (inner == null) {
+                            throw new NullPointerException("thenCompose function returned null");
+                        }
+                        //next已结束时dependOn立即释放inner
+                        next.dependOn(inner);
+                        inner.addListener(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (next.propagate(inner)) {
+                                    next.complete(inner.mResult);
+                                }
+                            }
+                        });
+                    }
+                });
+            }
+        });
+        return next;
+    }
+
+    /**
+     * 完成后在主线程回调，遵循 {@link DispatcherConfig.Builder#setBatchMainCallbacks(boolean)} 的合并投递
+     *
+     * @param callback 回调
+     * @return 当前对象，便于继续挂载
+     */
+    public TaskFuture<R> onMainThread(final Callback<? super R> callback) {
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                TaskDispatcher.postResult(new Runnable() {
+                    @Override
+                    public void run() {
+                        switch (state()) {
+                            case SUCCESS:
+                                callback.onSuccess(mResult);
+                                break;
+                            case FAILED:
+                                callback.onFail(mThrowable);
+                                break;
+                            default:
+                                callback.onCancel();
+                                break;
+                        }
+                    }
+                });
+            }
+        });
+        return this;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!finish(CANCELLED, null, null)) {
+            return false;
+        }
+        if (mayInterruptIfRunning) {
+            synchronized (this) {
+                if (mRunner != null) {
+                    mRunner.interrupt();
+                }
+            }
+        }
+        AbstractTask<?> sourceTask = mSourceTask;
+        if (sourceTask != null && !sourceTask.isCanceled()) {
+            sourceTask.cancel();
+        }
+        releaseUpstreams(mayInterruptIfRunning);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mState == CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mState != PENDING;
+    }
+
+    @Override
+    public synchronized R get() throws InterruptedException, ExecutionException {
+        while (mState == PENDING) {
+            wait();
+        }
+        return report();
+    }
+
+    @Override
+    public synchronized R get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (mState == PENDING) {
+            long waitNanos = deadline - System.nanoTime();
+            if (waitNanos <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+        }
+        return report();
+    }
+
+    boolean complete(R result) {
+        if (!finish(SUCCESS, result, null)) {
+            return false;
+        }
+        releaseUpstreams(true);
+        return true;
+    }
+
+    boolean completeExceptionally(Throwable throwable) {
+        if (!finish(FAILED, null, throwable)) {
+            return false;
+        }
+        releaseUpstreams(true);
+        return true;
+    }
+
+    /**
+     * 登记本阶段依赖的上游，替换之前的上游（thenCompose中由外层结果换为内层结果）。本阶段已结束时立即释放
+     */
+    private void dependOn(TaskFuture<?>... upstreams) {
+        for (TaskFuture<?> upstream : upstreams) {
+            upstream.addDependent();
+        }
+        TaskFuture<?>[] previous;
+        boolean finished;
+        synchronized (this) {
+            previous = mUpstreams;
+            finished = mState != PENDING;
+            mUpstreams = finished ? null : upstreams;
+        }
+        release(previous, true);
+        if (finished) {
+            release(upstreams, true);
+        }
+    }
+
+    private void releaseUpstreams(boolean mayInterruptIfRunning) {
+        TaskFuture<?>[] upstreams;
+        synchronized (this) {
+            upstreams = mUpstreams;
+            mUpstreams = null;
+        }
+        release(upstreams, mayInterruptIfRunning);
+    }
+
+    private static void release(TaskFuture<?>[] upstreams, boolean mayInterruptIfRunning) {
+        if (upstreams != null) {
+            for (TaskFuture<?> upstream : upstreams) {
+                upstream.releaseDependent(mayInterruptIfRunning);
+            }
+        }
+    }
+
+    private synchronized void addDependent() {
+        mDependents++;
+    }
+
+    /**
+     * 一个下游不再等待本结果，最后一个下游离开且本结果尚未完成时取消本结果
+     */
+    private void releaseDependent(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (--mDependents > 0 || mState != PENDING) {
+                return;
+            }
+        }
+        cancel(mayInterruptIfRunning);
+    }
+
+    private R report() throws ExecutionException {
+        if (mState == CANCELLED) {
+            throw new CancellationException();
+        }
+        if (mState == FAILED) {
+            throw new ExecutionException(mThrowable);
+        }
+        return mResult;
+    }
+
+    private synchronized int state() {
+        return mState;
+    }
+
+    private boolean finish(int state, R result, Throwable throwable) {
+        List<Runnable> listeners;
+        synchronized (this) {
+            if (mState != PENDING) {
+                return false;
+            }
+            mState = state;
+            mResult = result;
+            mThrowable = throwable;
+            listeners = mListeners;
+            mListeners = null;
+            notifyAll();
+        }
+        if (listeners != null) {
+            for (Runnable listener : listeners) {
+                runListener(listener);
+            }
+        }
+        return true;
+    }
+
+    private void addListener(Runnable listener) {
+        synchronized (this) {
+            if (mState == PENDING) {
+                if (mListeners == null) {
+                    mListeners = new ArrayList<>(2);
+                }
+                mListeners.add(listener);
+                return;
+            }
+        }
+        runListener(listener);
+    }
+
+    private static void runListener(Runnable listener) {
+        try {
+            listener.run();
+        } catch (Throwable throwable) {
+            TaskDispatcher.logError("TaskFuture listener error " + throwable);
+        }
+    }
+
+    /**
+     * 上游未成功时按同样方式结束本阶段
+     *
+     * @return 上游是否成功
+     */
+    private boolean propagate(TaskFuture<?> upstream) {
+        int state = upstream.state();
+        if (state == SUCCESS) {
+            return true;
+        }
+        if (state == FAILED) {
+            completeExceptionally(upstream.mThrowable);
+        } else {
+            cancel(false);
+        }
+        return false;
+    }
+
+    private void runStage(Executor executor, final Stage stage) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (TaskFuture.this) {
+                        if (mState != PENDING) {
+                            return;
+                        }
+                        mRunner = Thread.currentThread();
+                    }
+                    try {
+                        stage.run();
+                    } catch (Throwable throwable) {
+                        completeExceptionally(throwable);
+                    } finally {
+                        synchronized (TaskFuture.this) {
+                            mRunner = null;
+                        }
+                        if (isCancelled()) {
+                            //清除取消时留下的中断标记，避免影响线程池中的下一个任务
+                            Thread.interrupted();
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            completeExceptionally(e);
+        }
+    }
+}
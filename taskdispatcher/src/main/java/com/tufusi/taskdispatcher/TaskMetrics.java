@@ -0,0 +1,147 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Created by 鼠夏目 on 2020/3/25.
+ *
+ * @See
+ * @Description 任务执行指标 - 按任务名统计次数与延迟分布
+ * <p>
+ * 计数使用分段计数器，延迟使用 {@link LatencyHistogram}，记录过程无锁；任务名默认为任务类名
+ */
+public final class TaskMetrics {
+
+    private final ConcurrentMap<String, TaskStats> mStats = new ConcurrentHashMap<>();
+
+    static String nameOf(Object task) {
+        if (task instanceof AbstractTask) {
+            return ((AbstractTask) task).getTaskName();
+        }
+        if (task instanceof ResultCarrier) {
+            return ((ResultCarrier) task).describe();
+        }
+        if (task instanceof PriorityTaskQueue.PriorityRunnable) {
+            return nameOf(((PriorityTaskQueue.PriorityRunnable) task).getRunnable());
+        }
+        return task.getClass().getName();
+    }
+
+    TaskStats statsOf(String name) {
+        TaskStats stats = mStats.get(name);
+        if (stats == null) {
+            TaskStats created = new TaskStats(name);
+            stats = mStats.putIfAbsent(name, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 获取所有任务的指标快照
+     */
+    public List<Snapshot> snapshot() {
+        List<Snapshot> snapshots = new ArrayList<>(mStats.size());
+        for (TaskStats stats : mStats.values()) {
+            snapshots.add(stats.snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * 清空所有指标
+     */
+    public void reset() {
+        mStats.clear();
+    }
+
+    /**
+     * 单个任务名的实时统计
+     */
+    static final class TaskStats {
+
+        final String name;
+        final StripedCounter submitted = new StripedCounter();
+        final StripedCounter completed = new StripedCounter();
+        final StripedCounter failed = new StripedCounter();
+        final StripedCounter timeouts = new StripedCounter();
+        final StripedCounter cancellations = new StripedCounter();
+        final StripedCounter rejections = new StripedCounter();
+        /**
+         * 入队到开始执行
+         */
+        final LatencyHistogram queueWait = new LatencyHistogram();
+        /**
+         * 执行耗时
+         */
+        final LatencyHistogram runTime = new LatencyHistogram();
+        /**
+         * 后台执行结束到主线程回调onSuccess/onFail
+         */
+        final LatencyHistogram deliveryLag = new LatencyHistogram();
+
+        TaskStats(String name) {
+            this.name = name;
+        }
+
+        Snapshot snapshot() {
+            return new Snapshot(this);
+        }
+    }
+
+    /**
+     * 单个任务名的指标快照，延迟单位均为微秒
+     */
+    public static final class Snapshot {
+
+        public final String name;
+        public final long submitted;
+        public final long completed;
+        public final long failed;
+        public final long timeouts;
+        public final long cancellations;
+        public final long rejections;
+        public final long queueWaitP50Micros;
+        public final long queueWaitP99Micros;
+        public final long queueWaitMaxMicros;
+        public final long runTimeP50Micros;
+        public final long runTimeP99Micros;
+        public final long runTimeMaxMicros;
+        public final long deliveryLagP50Micros;
+        public final long deliveryLagP99Micros;
+        public final long deliveryLagMaxMicros;
+
+        Snapshot(TaskStats stats) {
+            this.name = stats.name;
+            this.submitted = stats.submitted.sum();
+            this.completed = stats.completed.sum();
+            this.failed = stats.failed.sum();
+            this.timeouts = stats.timeouts.sum();
+            this.cancellations = stats.cancellations.sum();
+            this.rejections = stats.rejections.sum();
+            this.queueWaitP50Micros = stats.queueWait.percentileMicros(50);
+            this.queueWaitP99Micros = stats.queueWait.percentileMicros(99);
+            this.queueWaitMaxMicros = stats.queueWait.maxMicros();
+            this.runTimeP50Micros = stats.runTime.percentileMicros(50);
+            this.runTimeP99Micros = stats.runTime.percentileMicros(99);
+            this.runTimeMaxMicros = stats.runTime.maxMicros();
+            this.deliveryLagP50Micros = stats.deliveryLag.percentileMicros(50);
+            this.deliveryLagP99Micros = stats.deliveryLag.percentileMicros(99);
+            this.deliveryLagMaxMicros = stats.deliveryLag.maxMicros();
+        }
+
+        @Override
+        public String toString() {
+            return name + "{submitted=" + submitted + ", completed=" + completed + ", failed=" + failed
+                    + ", timeouts=" + timeouts + ", cancellations=" + cancellations + ", rejections=" + rejections
+                    + ", queueWait p50/p99/max=" + queueWaitP50Micros + "/" + queueWaitP99Micros + "/" + queueWaitMaxMicros + "us"
+                    + ", runTime p50/p99/max=" + runTimeP50Micros + "/" + runTimeP99Micros + "/" + runTimeMaxMicros + "us"
+                    + ", deliveryLag p50/p99/max=" + deliveryLagP50Micros + "/" + deliveryLagP99Micros + "/" + deliveryLagMaxMicros + "us}";
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.tufusi.taskdispatcher;
+
+/**
+ * Created by 鼠夏目 on 2020/3/17.
+ *
+ * @See
+ * @Description 并行线程池的任务优先级通道
+ * <p>
+ * 高优先级通道先出队；低优先级任务随等待时间老化提升，每等待 agingMillis 提升一个通道，避免饿死
+ */
+public enum TaskPriority {
+
+    /**
+     * 用户正在等待的结果，如当前屏幕的图片解码
+     */
+    IMMEDIATE(1L),
+    /**
+     * 用户可见但可以稍晚的工作，普通任务的默认通道
+     */
+    USER_VISIBLE(100L),
+    /**
+     * 批量后台工作，如预加载
+     */
+    BACKGROUND(300L),
+    /**
+     * 可有可无的工作，如统计上报
+     */
+    IDLE(500L);
+
+    /**
+     * 未指定优先级时使用的通道
+     */
+    public static final TaskPriority DEFAULT = USER_VISIBLE;
+
+    final long agingMillis;
+
+    TaskPriority(long agingMillis) {
+        this.agingMillis = agingMillis;
+    }
+}
@@ -0,0 +1,136 @@
+package com.tufusi.taskdispatcher;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Created by 鼠夏目 on 2020/4/1.
+ *
+ * @See
+ * @Description 任务作用域 - 持有一个取消标记，通过作用域提交的任务以及这些任务执行中再提交的子任务都归属于它
+ * <p>
+ * 取消作用域时，仍在排队的任务直接从工作队列中移除，不再占用线程；正在执行的任务被中断，结果不再投递。
+ * 绑定LifecycleOwner的作用域在ON_DESTROY时自动取消，适合页面退出时丢弃无人关心的后台工作
+ */
+public final class TaskScope {
+
+    private final CancellationToken mToken = new CancellationToken();
+    private final Set<AbstractTask<?>> mTasks = Collections.newSetFromMap(new ConcurrentHashMap<AbstractTask<?>, Boolean>());
+    private final TaskScope mParent;
+    private final Runnable mCancelAction = new Runnable() {
+        @Override
+        public void run() {
+            cancel();
+        }
+    };
+
+    public TaskScope() {
+        this((TaskScope) null);
+    }
+
+    /**
+     * 创建在lifecycleOwner ON_DESTROY时自动取消的作用域，同一个LifecycleOwner的所有作用域共用一个观察者
+     *
+     * @param lifecycleOwner 生命周期持有者，如Activity、Fragment
+     */
+    public TaskScope(LifecycleOwner lifecycleOwner) {
+        this(LifecycleTaskRegistry.of(lifecycleOwner).bucket(Lifecycle.Event.ON_DESTROY).scope());
+    }
+
+    private TaskScope(TaskScope parent) {
+        this.mParent = parent;
+        if (parent != null) {
+            parent.mToken.register(mCancelAction);
+        }
+    }
+
+    /**
+     * 创建子作用域，父作用域取消时子作用域一起取消，子作用域取消不影响父作用域
+     */
+    public TaskScope newChild() {
+        return new TaskScope(this);
+    }
+
+    public CancellationToken token() {
+        return mToken;
+    }
+
+    public boolean isCanceled() {
+        return mToken.isCancellationRequested();
+    }
+
+    /**
+     * 在作用域内执行一个后台任务
+     *
+     * @see TaskDispatcher#execute(AbstractTask)
+     */
+    public <R> void execute(AbstractTask<R> task) {
+        execute(task, TaskPriority.DEFAULT);
+    }
+
+    /**
+     * 在作用域内按指定优先级执行一个后台任务，作用域已取消时直接回调onCancel
+     *
+     * @param task     任务
+     * @param priority 优先级通道
+     */
+    public <R> void execute(AbstractTask<R> task, TaskPriority priority) {
+        if (attach(task)) {
+            TaskDispatcher.execute(task, priority);
+        }
+    }
+
+    /**
+     * 在作用域内提交一个后台任务并返回可组合的异步结果
+     *
+     * @see TaskDispatcher#submit(AbstractTask)
+     */
+    public <R> TaskFuture<R> submit(AbstractTask<R> task) {
+        if (!attach(task)) {
+            TaskFuture<R> future = new TaskFuture<>(task);
+            future.cancel(false);
+            return future;
+        }
+        return TaskDispatcher.submit(task);
+    }
+
+    /**
+     * 取消作用域：排队中的任务从工作队列移除，执行中的任务被中断，子作用域一并取消。只有第一次调用生效
+     */
+    public void cancel() {
+        if (!mToken.cancel()) {
+            return;
+        }
+        if (mParent != null) {
+            mParent.mToken.unregister(mCancelAction);
+        }
+        for (AbstractTask<?> task : mTasks) {
+            task.cancel();
+        }
+        mTasks.clear();
+    }
+
+    /**
+     * 把任务归入作用域
+     *
+     * @return 作用域已取消时返回false，任务已被取消
+     */
+    boolean attach(AbstractTask<?> task) {
+        task.mScope = this;
+        mTasks.add(task);
+        if (mToken.isCancellationRequested()) {
+            mTasks.remove(task);
+            task.cancel();
+            return false;
+        }
+        return true;
+    }
+
+    void detach(AbstractTask<?> task) {
+        mTasks.remove(task);
+    }
+}
@@ -0,0 +1,285 @@
+package com.tufusi.taskdispatcher;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Created by 鼠夏目 on 2020/3/26.
+ *
+ * @See
+ * @Description 任务追踪 - 记录TaskDispatcher各线程执行任务的起止时间，可导出为Chrome trace-event JSON
+ * <p>
+ * 每个线程一个固定大小的环形缓冲区，只有所属线程写入，热路径无锁；缓冲区写满后覆盖最旧的事件。
+ * 缓冲区只弱引用所属线程，新线程注册或清空时移除已结束线程的缓冲区。
+ * 开启时同时通过 {@link DispatcherPlatform#beginSection(String)} 输出平台追踪片段（Android上为android.os.Trace，systrace/Perfetto中可直接看到任务名）；追踪中途关闭时已打开的片段仍会在end时关闭。
+ * 关闭且没有未关闭片段时只有两次volatile读
+ */
+public final class TaskTracer {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1024;
+    private static final int MAX_DEPTH = 8;
+
+    private static volatile boolean sEnabled;
+    /**
+     * 每次开启追踪递增，用于丢弃上次关闭时未配对的begin
+     */
+    private static volatile int sGeneration;
+    private static volatile int sBufferSize = DEFAULT_BUFFER_SIZE;
+    /**
+     * 最近一次 {@link #clear()} 的时间，导出时跳过在此之前开始的事件；缓冲区只由所属线程写入，清空不直接改写它们
+     */
+    private static volatile long sClearedAtNanos = Long.MIN_VALUE;
+    /**
+     * 所有线程中已打开尚未关闭的片段数，关闭追踪后end据此判断是否还需要关闭片段
+     */
+    private static final AtomicInteger OPEN_SECTIONS = new AtomicInteger();
+    private static final List<TraceBuffer> BUFFERS = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<TraceBuffer> LOCAL_BUFFER = new ThreadLocal<>();
+
+    private TaskTracer() {
+    }
+
+    /**
+     * 开启或关闭追踪
+     */
+    public static void setEnabled(boolean enabled) {
+        if (enabled && !sEnabled) {
+            sGeneration++;
+        }
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * 设置每个线程缓冲区可保存的事件数，只影响之后新建的缓冲区
+     */
+    public static void setBufferSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        sBufferSize = size;
+    }
+
+    /**
+     * 清空所有已记录的事件，同时移除已结束线程的缓冲区
+     */
+    public static void clear() {
+        sClearedAtNanos = System.nanoTime();
+        pruneDeadBuffers();
+    }
+
+    /**
+     * 当前保留的线程缓冲区数量
+     */
+    static int bufferCount() {
+        return BUFFERS.size();
+    }
+
+    /**
+     * 记录当前线程中任务的排队时长，由下一次 {@link #begin(String)} 使用
+     */
+    static void noteQueueWait(long nanos) {
+        if (sEnabled) {
+            localBuffer().mPendingQueueWait = nanos;
+        }
+    }
+
+    /**
+     * 任务开始执行，必须与 {@link #end()} 在同一线程成对调用
+     */
+    static void begin(String name) {
+        if (!sEnabled) {
+            return;
+        }
+        TraceBuffer buffer = localBuffer();
+        buffer.begin(name);
+        buffer.mOpenSections++;
+        OPEN_SECTIONS.incrementAndGet();
+        buffer.mPlatform.beginSection(name);
+    }
+
+    /**
+     * 任务执行结束，关闭当前线程由 {@link #begin(String)} 打开的片段；begin时追踪未开启则不做任何事
+     */
+    static void end() {
+        if (!sEnabled && OPEN_SECTIONS.get() == 0) {
+            return;
+        }
+        TraceBuffer buffer = LOCAL_BUFFER.get();
+        if (buffer == null || buffer.mOpenSections == 0) {
+            //begin时追踪未开启
+            return;
+        }
+        buffer.mOpenSections--;
+        OPEN_SECTIONS.decrementAndGet();
+        buffer.end();
+        buffer.mPlatform.endSection();
+    }
+
+    private static TraceBuffer localBuffer() {
+        TraceBuffer buffer = LOCAL_BUFFER.get();
+        if (buffer == null) {
+            pruneDeadBuffers();
+            buffer = new TraceBuffer(sBufferSize);
+            BUFFERS.add(buffer);
+            LOCAL_BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+
+    private static void pruneDeadBuffers() {
+        for (TraceBuffer buffer : BUFFERS) {
+            Thread owner = buffer.mOwner.get();
+            if (owner == null || !owner.isAlive()) {
+                BUFFERS.remove(buffer);
+            }
+        }
+    }
+
+    /**
+     * 导出Chrome trace-event JSON，可在 chrome://tracing 或 Perfetto UI 中离线打开
+     */
+    public static String exportChromeTrace() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeChromeTrace(writer);
+        } catch (IOException e) {
+            //StringWriter不会抛出IOException
+        }
+        return writer.toString();
+    }
+
+    /**
+     * 把Chrome trace-event JSON写入writer
+     */
+    public static void writeChromeTrace(Writer writer) throws IOException {
+        DispatcherPlatform platform = TaskDispatcher.platform();
+        int pid = platform == null ? 0 : platform.processId();
+        long clearedAt = sClearedAtNanos;
+        writer.write("{\"traceEvents\":[");
+        boolean first = true;
+        for (TraceBuffer buffer : BUFFERS) {
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":" + pid + ",\"tid\":" + buffer.mTid
+                    + ",\"args\":{\"name\":\"" + escape(buffer.mThreadName) + "\"}}");
+            long written = buffer.mWritten;
+            int capacity = buffer.mNames.length;
+            for (long i = Math.max(0, written - capacity); i < written; i++) {
+                int index = (int) (i % capacity);
+                String name = buffer.mNames[index];
+                long begin = buffer.mBegins[index];
+                long end = buffer.mEnds[index];
+                long queueWait = buffer.mQueueWaits[index];
+                if (name == null || buffer.mWritten - i > capacity) {
+                    //读取期间被覆盖
+                    continue;
+                }
+                if (begin - clearedAt < 0) {
+                    //清空前记录的事件
+                    continue;
+                }
+                writer.write(",{\"name\":\"" + escape(name) + "\",\"cat\":\"TaskDispatcher\",\"ph\":\"X\",\"pid\":" + pid
+                        + ",\"tid\":" + buffer.mTid + ",\"ts\":" + begin / 1000 + ",\"dur\":" + Math.max(0, end - begin) / 1000
+                        + ",\"args\":{\"queueWaitUs\":" + queueWait / 1000 + "}}");
+            }
+        }
+        writer.write("],\"displayTimeUnit\":\"ms\"}");
+        writer.flush();
+    }
+
+    private static String escape(String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 单线程环形缓冲区，所属线程写入，导出线程通过volatile的写入计数读取
+     */
+    private static final class TraceBuffer {
+
+        /**
+         * 调度器创建的线程才会记录事件，此时平台已确定
+         */
+        final DispatcherPlatform mPlatform = TaskDispatcher.platform();
+        final int mTid = mPlatform.currentThreadId();
+        final String mThreadName = Thread.currentThread().getName();
+        final WeakReference<Thread> mOwner = new WeakReference<>(Thread.currentThread());
+        final String[] mNames;
+        final long[] mBegins;
+        final long[] mEnds;
+        final long[] mQueueWaits;
+        volatile long mWritten;
+
+        private final String[] mOpenNames = new String[MAX_DEPTH];
+        private final long[] mOpenBegins = new long[MAX_DEPTH];
+        private final long[] mOpenQueueWaits = new long[MAX_DEPTH];
+        int mDepth;
+        /**
+         * 本线程已打开尚未关闭的片段数，与记录事件用的mDepth不同，不随追踪代数重置
+         */
+        int mOpenSections;
+        int mGeneration = sGeneration;
+        long mPendingQueueWait;
+
+        TraceBuffer(int size) {
+            mNames = new String[size];
+            mBegins = new long[size];
+            mEnds = new long[size];
+            mQueueWaits = new long[size];
+        }
+
+        void begin(String name) {
+            if (mGeneration != sGeneration) {
+                mGeneration = sGeneration;
+                mDepth = 0;
+            }
+            if (mDepth < MAX_DEPTH) {
+                mOpenNames[mDepth] = name;
+                mOpenBegins[mDepth] = System.nanoTime();
+                mOpenQueueWaits[mDepth] = mPendingQueueWait;
+            }
+            mPendingQueueWait = 0;
+            mDepth++;
+        }
+
+        void end() {
+            if (mGeneration != sGeneration || mDepth == 0) {
+                //上一代未配对的begin
+                return;
+            }
+            mDepth--;
+            if (mDepth >= MAX_DEPTH) {
+                return;
+            }
+            long written = mWritten;
+            int index = (int) (written % mNames.length);
+            mNames[index] = mOpenNames[mDepth];
+            mBegins[index] = mOpenBegins[mDepth];
+            mEnds[index] = System.nanoTime();
+            mQueueWaits[index] = mOpenQueueWaits[mDepth];
+            mOpenNames[mDepth] = null;
+            mWritten = written + 1;
+        }
+    }
+}
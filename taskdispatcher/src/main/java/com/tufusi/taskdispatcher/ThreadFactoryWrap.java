@@ -1,7 +1,5 @@
 package com.tufusi.taskdispatcher;
 
-import android.os.Process;
-
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -23,8 +21,11 @@ public class ThreadFactoryWrap {
 
         @Override
         public void run() {
-            //设置线程优先级别
-            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            //由平台设置线程优先级别
+            DispatcherPlatform platform = TaskDispatcher.platform();
+            if (platform != null) {
+                platform.onWorkerThreadStart();
+            }
             runnable.run();
         }
     }
@@ -42,6 +43,19 @@ public class ThreadFactoryWrap {
         }
     };
 
+    /**
+     * IO执行域线程生产
+     */
+    static final ThreadFactory IO_THREAD_FACTORY = new ThreadFactory() {
+
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(new BackgroundRunnable(r), "TaskDispatcher io #" + count.getAndIncrement());
+        }
+    };
+
     /**
      * 超时线程生产
      */
@@ -0,0 +1,270 @@
+package com.tufusi.taskdispatcher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Created by 鼠夏目 on 2020/3/28.
+ *
+ * @See
+ * @Description 工作窃取线程池
+ * <p>
+ * 每个工作线程持有自己的双端队列：工作线程内提交的任务放入自己队列尾部并后进先出执行，
+ * 外部提交轮流分配到各队列；自己队列为空时从其他队列头部窃取。各队列独立加锁，不再争抢同一把队列锁。
+ * ForkJoinPool需要API 21，这里自行实现以兼容minSdkVersion 19
+ */
+final class WorkStealingExecutor extends AbstractExecutorService {
+
+    private static final String TAG = "WorkStealingExecutor";
+
+    private static final int RUNNING = 0;
+    private static final int SHUTDOWN = 1;
+    private static final int STOP = 2;
+
+    private static final ThreadLocal<Worker> CURRENT_WORKER = new ThreadLocal<>();
+
+    private final Worker[] mWorkers;
+    private final AtomicInteger mNextQueue = new AtomicInteger();
+    private final AtomicInteger mIdle = new AtomicInteger();
+    private final AtomicLong mSteals = new AtomicLong();
+    private final ReentrantLock mSleepLock = new ReentrantLock();
+    private final Condition mWorkAvailable = mSleepLock.newCondition();
+    private final CountDownLatch mTerminated;
+    private volatile int mRunState = RUNNING;
+
+    WorkStealingExecutor(int parallelism, ThreadFactory threadFactory) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        mWorkers = new Worker[parallelism];
+        mTerminated = new CountDownLatch(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            mWorkers[i] = new Worker(i);
+        }
+        for (Worker worker : mWorkers) {
+            worker.mThread = threadFactory.newThread(worker);
+            worker.mThread.start();
+        }
+    }
+
+    /**
+     * 累计窃取次数
+     */
+    long stealCount() {
+        return mSteals.get();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (mRunState != RUNNING) {
+            throw new RejectedExecutionException("Task " + command + " rejected, executor is shutdown");
+        }
+        Worker current = CURRENT_WORKER.get();
+        if (current != null && current.mOwner == this) {
+            current.push(command);
+        } else {
+            mWorkers[(mNextQueue.getAndIncrement() & Integer.MAX_VALUE) % mWorkers.length].push(command);
+        }
+        if (mIdle.get() > 0) {
+            mSleepLock.lock();
+            try {
+                mWorkAvailable.signal();
+            } finally {
+                mSleepLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 在等待future期间帮忙执行任务，避免工作线程在join时空等导致线程耗尽
+     */
+    void helpUntilDone(Future<?> future) throws InterruptedException {
+        Worker current = CURRENT_WORKER.get();
+        if (current == null || current.mOwner != this) {
+            return;
+        }
+        while (!future.isDone()) {
+            Runnable task = current.pop();
+            if (task == null) {
+                task = steal(current.mIndex);
+            }
+            if (task != null) {
+                current.runTask(task);
+            } else {
+                //没有可帮忙的任务，短暂让出等待子任务完成
+                try {
+                    future.get(1, TimeUnit.MILLISECONDS);
+                } catch (Exception ignore) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        mRunState = Math.max(mRunState, SHUTDOWN);
+        wakeAll();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        mRunState = STOP;
+        List<Runnable> pending = new ArrayList<>();
+        for (Worker worker : mWorkers) {
+            worker.drainTo(pending);
+            worker.mThread.interrupt();
+        }
+        wakeAll();
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return mRunState != RUNNING;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return mTerminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return mTerminated.await(timeout, unit);
+    }
+
+    private void wakeAll() {
+        mSleepLock.lock();
+        try {
+            mWorkAvailable.signalAll();
+        } finally {
+            mSleepLock.unlock();
+        }
+    }
+
+    /**
+     * 从其他工作线程队列头部窃取任务
+     */
+    private Runnable steal(int thiefIndex) {
+        int length = mWorkers.length;
+        for (int i = 1; i < length; i++) {
+            Runnable task = mWorkers[(thiefIndex + i) % length].poll();
+            if (task != null) {
+                mSteals.incrementAndGet();
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private final class Worker implements Runnable {
+
+        final WorkStealingExecutor mOwner = WorkStealingExecutor.this;
+        final int mIndex;
+        final ArrayDeque<Runnable> mDeque = new ArrayDeque<>();
+        Thread mThread;
+
+        Worker(int index) {
+            this.mIndex = index;
+        }
+
+        synchronized void push(Runnable task) {
+            mDeque.addLast(task);
+        }
+
+        synchronized Runnable pop() {
+            return mDeque.pollLast();
+        }
+
+        synchronized Runnable poll() {
+            return mDeque.pollFirst();
+        }
+
+        synchronized void drainTo(List<Runnable> list) {
+            list.addAll(mDeque);
+            mDeque.clear();
+        }
+
+        @Override
+        public void run() {
+            CURRENT_WORKER.set(this);
+            try {
+                while (mRunState != STOP) {
+                    Runnable task = pop();
+                    if (task == null) {
+                        task = steal(mIndex);
+                    }
+                    if (task == null) {
+                        task = awaitWork();
+                    }
+                    if (task == null) {
+                        break;
+                    }
+                    runTask(task);
+                }
+            } finally {
+                CURRENT_WORKER.remove();
+                mTerminated.countDown();
+            }
+        }
+
+        void runTask(Runnable task) {
+            boolean traced = TaskTracer.isEnabled();
+            if (traced) {
+                TaskTracer.begin(TaskMetrics.nameOf(task));
+            }
+            try {
+                task.run();
+            } catch (Throwable throwable) {
+                TaskDispatcher.logError(TAG + " task error " + throwable);
+            } finally {
+                if (traced) {
+                    TaskTracer.end();
+                }
+            }
+        }
+
+        /**
+         * 所有队列为空时休眠；休眠前在锁内重新扫描一次，提交方入队后再检查空闲数，不会丢失唤醒
+         */
+        private Runnable awaitWork() {
+            mSleepLock.lock();
+            mIdle.incrementAndGet();
+            try {
+                while (true) {
+                    Runnable task = pop();
+                    if (task == null) {
+                        task = steal(mIndex);
+                    }
+                    if (task != null) {
+                        return task;
+                    }
+                    if (mRunState != RUNNING) {
+                        return null;
+                    }
+                    mWorkAvailable.awaitUninterruptibly();
+                }
+            } finally {
+                mIdle.decrementAndGet();
+                mSleepLock.unlock();
+            }
+        }
+    }
+}
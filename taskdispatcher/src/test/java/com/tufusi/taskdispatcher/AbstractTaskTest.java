@@ -0,0 +1,146 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description AbstractTask：取消后经线程池直接复用仍会执行，排队中取消的提交被跳过，被拒绝的提交撤销作用域与父任务登记，
+ * 复用的父任务取消时不影响之前执行中提交、已结束的子任务
+ */
+public class AbstractTaskTest {
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+    }
+
+    private static final class CountingTask extends AbstractTask<Integer> {
+
+        final AtomicInteger mRuns = new AtomicInteger();
+        volatile CountDownLatch mLatch = new CountDownLatch(1);
+
+        @Override
+        public Integer doInBackground() {
+            int runs = mRuns.incrementAndGet();
+            mLatch.countDown();
+            return runs;
+        }
+
+        @Override
+        public void onSuccess(Integer result) {
+        }
+    }
+
+    @Test
+    public void cancelledTaskCanBeReusedThroughExecutorService() throws Exception {
+        CountingTask task = new CountingTask();
+        task.cancel();
+        assertTrue(task.isCanceled());
+
+        TaskDispatcher.executorService().execute(task);
+        assertTrue("reused task never ran", task.mLatch.await(2, TimeUnit.SECONDS));
+
+        task.cancel();
+        task.mLatch = new CountDownLatch(1);
+        TaskDispatcher.serial("abstract-task-reuse").execute(task);
+        assertTrue("reused task never ran on serial executor", task.mLatch.await(2, TimeUnit.SECONDS));
+        assertEquals(2, task.mRuns.get());
+    }
+
+    @Test
+    public void queueSkipsOnlyDispatcherSubmissionsCancelledWhileQueued() {
+        PriorityTaskQueue queue = new PriorityTaskQueue(16);
+
+        CountingTask submitted = new CountingTask();
+        assertTrue(submitted.onSubmit());
+        queue.offer(submitted);
+        submitted.cancel();
+        assertNull(queue.poll());
+
+        //跳过即结束本次提交，之后直接交给线程池的执行不再受这次取消影响
+        queue.offer(submitted);
+        assertSame(submitted, queue.poll());
+
+        CountingTask plain = new CountingTask();
+        plain.cancel();
+        queue.offer(plain);
+        assertSame(plain, queue.poll());
+    }
+
+    @Test
+    public void rejectedSubmissionLeavesScopeAndParent() throws Exception {
+        final TaskScope scope = new TaskScope();
+        final CountingTask child = new CountingTask();
+        final AtomicBoolean childCancelled = new AtomicBoolean();
+        AbstractTask<Void> parent = new AbstractTask<Void>() {
+            @Override
+            public Void doInBackground() {
+                assertTrue(child.onSubmit());
+                //模拟TaskDispatcher.execute中线程池拒绝
+                child.onRejected();
+                return null;
+            }
+
+            @Override
+            public void onSuccess(Void result) {
+            }
+        };
+        //父任务在作用域内执行，子任务提交时继承作用域并登记为子任务
+        assertTrue(scope.attach(parent));
+        parent.run();
+
+        assertNull(child.mScope);
+        parent.cancel();
+        scope.cancel();
+        childCancelled.set(child.isCanceled());
+        assertFalse("rejected child was still cancelled with its former parent", childCancelled.get());
+
+        TaskDispatcher.execute(child);
+        assertTrue(child.mLatch.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void reusedParentDoesNotCancelChildrenOfEarlierRun() throws Exception {
+        final CountingTask child = new CountingTask();
+        final boolean[] submitChild = {true};
+        AbstractTask<Void> parent = new AbstractTask<Void>() {
+            @Override
+            public Void doInBackground() {
+                if (submitChild[0]) {
+                    TaskDispatcher.execute(child);
+                }
+                return null;
+            }
+
+            @Override
+            public void onSuccess(Void result) {
+            }
+        };
+        TaskDispatcher.execute(parent);
+        assertTrue(child.mLatch.await(2, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (child.isSubmitted() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+
+        //父任务复用：第二次执行不再提交子任务，之后取消父任务
+        submitChild[0] = false;
+        parent.run();
+        parent.cancel();
+        assertFalse("child of an earlier run was cancelled with the reused parent", child.isCanceled());
+    }
+}
@@ -0,0 +1,127 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description 提交与完成路径的内存分配：稳定状态下每个任务（提交登记、入队出队、执行、结果投递与主线程回调）不分配内存
+ * <p>
+ * 分配量由com.sun.management.ThreadMXBean按线程统计，只在HotSpot等支持的JVM上运行
+ */
+public class AllocationTest {
+
+    private static final String RESULT = "done";
+    private static final int TASKS = 200000;
+    /**
+     * 每投递这么多个任务等待主线程追上，让回收的消息与回调载体留在对象池中
+     */
+    private static final int WINDOW = 32;
+
+    private static com.sun.management.ThreadMXBean sThreadBean;
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+        sThreadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        sThreadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private static final class ConstantTask extends AbstractTask<String> {
+
+        private final AtomicInteger mDelivered;
+
+        ConstantTask(AtomicInteger delivered) {
+            this.mDelivered = delivered;
+        }
+
+        @Override
+        public String doInBackground() {
+            return RESULT;
+        }
+
+        @Override
+        public void onSuccess(String result) {
+            mDelivered.incrementAndGet();
+        }
+    }
+
+    private static Thread mainLoopThread() throws Exception {
+        final Thread[] holder = new Thread[1];
+        final Object lock = new Object();
+        synchronized (lock) {
+            TaskDispatcher.runOnUIThread(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (lock) {
+                        holder[0] = Thread.currentThread();
+                        lock.notifyAll();
+                    }
+                }
+            });
+            while (holder[0] == null) {
+                lock.wait();
+            }
+        }
+        return holder[0];
+    }
+
+    /**
+     * 在当前线程依次走完提交登记、入队、出队、执行与结果投递，主线程负责回调
+     */
+    private static void runTasks(PriorityTaskQueue queue, ConstantTask[] tasks, AtomicInteger delivered, int count) {
+        int base = delivered.get();
+        for (int i = 0; i < count; i++) {
+            ConstantTask task = tasks[i % tasks.length];
+            task.onSubmit();
+            queue.offer(task);
+            queue.poll().run();
+            if (i % WINDOW == WINDOW - 1) {
+                while (delivered.get() < base + i + 1) {
+                    Thread.yield();
+                }
+            }
+        }
+        while (delivered.get() < base + count) {
+            Thread.yield();
+        }
+    }
+
+    @Test
+    public void steadyStateTaskPathDoesNotAllocate() throws Exception {
+        assertTrue(sThreadBean.isThreadAllocatedMemorySupported());
+        Thread mainLoop = mainLoopThread();
+        assertNotNull(mainLoop);
+
+        PriorityTaskQueue queue = new PriorityTaskQueue(64);
+        AtomicInteger delivered = new AtomicInteger();
+        ConstantTask[] tasks = new ConstantTask[WINDOW];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new ConstantTask(delivered);
+        }
+        //预热：填满对象池、触发JIT，并让ThreadLocal等一次性结构完成分配
+        runTasks(queue, tasks, delivered, TASKS);
+
+        long callerId = Thread.currentThread().getId();
+        long mainId = mainLoop.getId();
+        long callerBefore = sThreadBean.getThreadAllocatedBytes(callerId);
+        long mainBefore = sThreadBean.getThreadAllocatedBytes(mainId);
+        runTasks(queue, tasks, delivered, TASKS);
+        long callerBytes = sThreadBean.getThreadAllocatedBytes(callerId) - callerBefore;
+        long mainBytes = sThreadBean.getThreadAllocatedBytes(mainId) - mainBefore;
+
+        double perTask = (double) (callerBytes + mainBytes) / TASKS;
+        System.out.println("AllocationTest: " + TASKS + " tasks, worker side " + callerBytes + " bytes, main loop "
+                + mainBytes + " bytes, " + perTask + " bytes/task");
+        //测量调用本身有少量固定开销，按每个任务平均不足1字节判定为零分配
+        assertTrue("allocated " + perTask + " bytes per task", perTask < 1d);
+    }
+}
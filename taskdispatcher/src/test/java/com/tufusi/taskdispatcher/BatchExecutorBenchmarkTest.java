@@ -0,0 +1,113 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description 批处理与逐条 execute(Runnable) 的对比基准：同样数量的细小写入，比较耗时与线程池投递次数。
+ * 结果输出到标准输出，断言只检查正确性，不对机器相关的耗时设阈值
+ */
+public class BatchExecutorBenchmarkTest {
+
+    private static final int ITEMS = 50000;
+    private static final int PRODUCERS = 4;
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+    }
+
+    @Test
+    public void batchVersusPerItemExecute() throws Exception {
+        //预热两种路径
+        runPerItem(ITEMS / 10);
+        runBatched("warmup", ITEMS / 10);
+
+        long perItemNanos = runPerItem(ITEMS);
+        long batchedNanos = runBatched("bench", ITEMS);
+        BatchExecutor<?> executor = TaskDispatcher.batch("bench", 256, 5, new BatchHandler<Object>() {
+            @Override
+            public void onBatch(List<Object> items) {
+            }
+        });
+
+        System.out.println("BatchExecutorBenchmark: " + ITEMS + " items, " + PRODUCERS + " producers"
+                + " | per-item execute: " + TimeUnit.NANOSECONDS.toMillis(perItemNanos) + "ms, " + ITEMS + " pool submissions"
+                + " | batched(256/5ms): " + TimeUnit.NANOSECONDS.toMillis(batchedNanos) + "ms, " + executor.batches() + " pool submissions");
+        assertEquals(ITEMS, executor.items());
+        assertTrue(executor.batches() < ITEMS);
+    }
+
+    private static long runPerItem(final int items) throws Exception {
+        final AtomicLong sum = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(items);
+        final Runnable work = new Runnable() {
+            @Override
+            public void run() {
+                sum.incrementAndGet();
+                done.countDown();
+            }
+        };
+        long start = System.nanoTime();
+        produce(items, new Runnable() {
+            @Override
+            public void run() {
+                TaskDispatcher.execute(work);
+            }
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        return System.nanoTime() - start;
+    }
+
+    private static long runBatched(String key, final int items) throws Exception {
+        final AtomicLong sum = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(items);
+        final BatchExecutor<Integer> executor = TaskDispatcher.batch(key, 256, 5, new BatchHandler<Integer>() {
+            @Override
+            public void onBatch(List<Integer> batch) {
+                for (int i = 0; i < batch.size(); i++) {
+                    sum.incrementAndGet();
+                    done.countDown();
+                }
+            }
+        });
+        long start = System.nanoTime();
+        produce(items, new Runnable() {
+            @Override
+            public void run() {
+                executor.submit(1);
+            }
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        return System.nanoTime() - start;
+    }
+
+    private static void produce(final int items, final Runnable submit) throws InterruptedException {
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            producers[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < items / PRODUCERS; i++) {
+                        submit.run();
+                    }
+                }
+            });
+            producers[p].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+    }
+}
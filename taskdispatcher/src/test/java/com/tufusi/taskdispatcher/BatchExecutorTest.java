@@ -0,0 +1,195 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description BatchExecutor：最大延迟出栈（含与并发flush交错的情况）、提交顺序与逐条回调
+ */
+public class BatchExecutorTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static HashedTimingWheel sTimer;
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+        sTimer = new HashedTimingWheel(Executors.defaultThreadFactory(), 5, TimeUnit.MILLISECONDS, 64);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        sTimer = null;
+    }
+
+    @Test
+    public void partialBatchIsFlushedAfterMaxDelay() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+        BatchExecutor<Integer> executor = new BatchExecutor<>("delay", 100, 20, new BatchHandler<Integer>() {
+            @Override
+            public void onBatch(List<Integer> items) {
+                received.addAll(items);
+                latch.countDown();
+            }
+        }, DIRECT, sTimer);
+
+        executor.submit(1);
+        executor.submit(2);
+        executor.submit(3);
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(3, received.size());
+        assertEquals(Integer.valueOf(1), received.get(0));
+        assertEquals(Integer.valueOf(3), received.get(2));
+        assertEquals(1, executor.batches());
+    }
+
+    @Test
+    public void maxDelayStillFiresWhenInterleavedWithConcurrentFlushes() throws Exception {
+        final int rounds = 300;
+        final AtomicInteger received = new AtomicInteger();
+        //maxItems足够大，只有显式flush与最大延迟会出栈
+        final BatchExecutor<Integer> executor = new BatchExecutor<>("interleaved", Integer.MAX_VALUE, 10, new BatchHandler<Integer>() {
+            @Override
+            public void onBatch(List<Integer> items) {
+                received.addAndGet(items.size());
+            }
+        }, DIRECT, sTimer);
+
+        int expected = 0;
+        for (int round = 0; round < rounds; round++) {
+            //让一次flush与一批的第一条提交尽量同时发生，之后不再有任何flush，残留条目只能由最大延迟送出
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread flusher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    awaitQuietly(start);
+                    executor.flush();
+                }
+            });
+            Thread submitter = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    awaitQuietly(start);
+                    executor.submit(1);
+                }
+            });
+            flusher.start();
+            submitter.start();
+            start.countDown();
+            flusher.join();
+            submitter.join();
+            expected++;
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            while (received.get() < expected && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals("batch stranded in round " + round, expected, received.get());
+        }
+        assertEquals(expected, executor.items());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void perItemCallbacksAreDeliveredInOrderOnMainLoop() throws Exception {
+        final int count = 10;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger offMain = new AtomicInteger();
+        BatchExecutor<String> executor = new BatchExecutor<>("callbacks", 4, 20, new BatchHandler<String>() {
+            @Override
+            public void onBatch(List<String> items) {
+            }
+        }, DIRECT, sTimer);
+
+        for (int i = 0; i < count; i++) {
+            executor.submit("item" + i, new BatchCallback<String>() {
+                @Override
+                public void onSuccess(String item) {
+                    if (!TaskDispatcher.isMainThread()) {
+                        offMain.incrementAndGet();
+                    }
+                    order.add(item);
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(0, offMain.get());
+        for (int i = 0; i < count; i++) {
+            assertEquals("item" + i, order.get(i));
+        }
+        //4 + 4 条按数量出栈，剩余 2 条按最大延迟出栈
+        assertEquals(3, executor.batches());
+    }
+
+    @Test
+    public void rejectedBatchFailsEveryItem() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(2);
+        final AtomicInteger failures = new AtomicInteger();
+        BatchExecutor<Integer> executor = new BatchExecutor<>("rejected", 2, 20, new BatchHandler<Integer>() {
+            @Override
+            public void onBatch(List<Integer> items) {
+                throw new AssertionError("rejected batch must not run");
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException("full");
+            }
+        }, sTimer);
+
+        BatchCallback<Integer> callback = new BatchCallback<Integer>() {
+            @Override
+            public void onSuccess(Integer item) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFail(Integer item, Throwable throwable) {
+                if (throwable instanceof RejectedExecutionException) {
+                    failures.incrementAndGet();
+                }
+                latch.countDown();
+            }
+        };
+        executor.submit(1, callback);
+        executor.submit(2, callback);
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(2, failures.get());
+    }
+}
@@ -0,0 +1,108 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description 按去重key执行：取消过的任务复用后仍能收到结果，挂载的任务与其他提交方式一样继承作用域
+ */
+public class DedupTaskTest {
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+    }
+
+    private static final class ResultTask extends AbstractTask<String> {
+
+        final AtomicInteger mSuccesses = new AtomicInteger();
+        volatile CountDownLatch mDelivered = new CountDownLatch(1);
+
+        @Override
+        public String doInBackground() {
+            return "ok";
+        }
+
+        @Override
+        public void onSuccess(String result) {
+            mSuccesses.incrementAndGet();
+            mDelivered.countDown();
+        }
+    }
+
+    @Test
+    public void taskReusedAfterCancelReceivesResult() throws Exception {
+        ResultTask task = new ResultTask();
+        task.cancel();
+        assertTrue(task.isCanceled());
+
+        TaskDispatcher.execute("dedup-reuse", task);
+        assertTrue("reused task never received its result", task.mDelivered.await(2, TimeUnit.SECONDS));
+
+        task.mDelivered = new CountDownLatch(1);
+        TaskDispatcher.execute("dedup-reuse", task);
+        assertTrue(task.mDelivered.await(2, TimeUnit.SECONDS));
+        assertEquals(2, task.mSuccesses.get());
+    }
+
+    @Test
+    public void attachedTaskInheritsScope() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch loaded = new CountDownLatch(1);
+        TaskDispatcher.execute("dedup-scope", new AbstractTask<String>() {
+            @Override
+            public String doInBackground() throws InterruptedException {
+                release.await(5, TimeUnit.SECONDS);
+                return "ok";
+            }
+
+            @Override
+            public void onSuccess(String result) {
+                loaded.countDown();
+            }
+        });
+
+        final TaskScope scope = new TaskScope();
+        final ResultTask attached = new ResultTask();
+        AbstractTask<Void> parent = new AbstractTask<Void>() {
+            @Override
+            public Void doInBackground() {
+                //在作用域内的任务中挂载，挂载的任务归入同一作用域
+                TaskDispatcher.execute("dedup-scope", attached);
+                return null;
+            }
+
+            @Override
+            public void onSuccess(Void result) {
+            }
+        };
+        assertTrue(scope.attach(parent));
+        parent.run();
+        scope.cancel();
+        assertTrue(attached.isCanceled());
+
+        release.countDown();
+        assertTrue(loaded.await(2, TimeUnit.SECONDS));
+        final CountDownLatch drained = new CountDownLatch(1);
+        TaskDispatcher.runOnUIThread(new Runnable() {
+            @Override
+            public void run() {
+                drained.countDown();
+            }
+        });
+        assertTrue(drained.await(2, TimeUnit.SECONDS));
+        assertEquals(0, attached.mSuccesses.get());
+        assertFalse(attached.isSubmitted());
+    }
+}
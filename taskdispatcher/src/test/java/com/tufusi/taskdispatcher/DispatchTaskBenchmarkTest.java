@@ -0,0 +1,101 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description 周期任务基准：注册1000个周期任务，对比共享时间轮与每个任务一个ScheduledThreadPoolExecutor（原实现）的线程数与唤醒次数。
+ * 结果输出到标准输出
+ */
+public class DispatchTaskBenchmarkTest {
+
+    private static final int TASKS = 1000;
+    private static final long PERIOD_MILLIS = 100;
+    private static final long MEASURE_MILLIS = 1000;
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+    }
+
+    @Test
+    public void thousandPeriodicTasksShareOneTimerThread() throws Exception {
+        final AtomicLong runs = new AtomicLong();
+        List<AbstractDispatcherTask> tasks = new ArrayList<>(TASKS);
+        for (int i = 0; i < TASKS; i++) {
+            tasks.add(new AbstractDispatcherTask(PERIOD_MILLIS, false, i % PERIOD_MILLIS) {
+                @Override
+                public void onDispatch() {
+                    runs.incrementAndGet();
+                }
+            });
+        }
+
+        long pendingBefore = TaskDispatcher.pendingTimers();
+        int threadsBefore = Thread.activeCount();
+        long wakeupsBefore = TaskDispatcher.timerWakeups();
+        for (AbstractDispatcherTask task : tasks) {
+            TaskDispatcher.dispatchTask(task);
+        }
+        Thread.sleep(MEASURE_MILLIS);
+        long wheelWakeups = TaskDispatcher.timerWakeups() - wakeupsBefore;
+        int wheelThreads = countThreads("TaskDispatcher scheduler");
+        int wheelThreadDelta = Thread.activeCount() - threadsBefore;
+        for (AbstractDispatcherTask task : tasks) {
+            TaskDispatcher.stopDispatchTask(task);
+        }
+        long wheelRuns = runs.getAndSet(0);
+        long pendingAfterStop = TaskDispatcher.pendingTimers();
+
+        //原实现：每个任务一个单线程ScheduledThreadPoolExecutor
+        List<ScheduledExecutorService> services = new ArrayList<>(TASKS);
+        threadsBefore = Thread.activeCount();
+        for (int i = 0; i < TASKS; i++) {
+            ScheduledExecutorService service = new ScheduledThreadPoolExecutor(1);
+            service.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    runs.incrementAndGet();
+                }
+            }, i % PERIOD_MILLIS, PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+            services.add(service);
+        }
+        Thread.sleep(MEASURE_MILLIS);
+        int perTaskThreadDelta = Thread.activeCount() - threadsBefore;
+        for (ScheduledExecutorService service : services) {
+            service.shutdownNow();
+        }
+        long perTaskRuns = runs.get();
+
+        System.out.println("DispatchTaskBenchmark: " + TASKS + " periodic tasks @" + PERIOD_MILLIS + "ms for " + MEASURE_MILLIS + "ms"
+                + " | timing wheel: " + wheelThreads + " timer thread(s), +" + wheelThreadDelta + " threads, " + wheelWakeups + " wakeups, " + wheelRuns + " runs"
+                + " | thread per task: +" + perTaskThreadDelta + " threads, " + perTaskRuns + " runs");
+        assertEquals(1, wheelThreads);
+        assertTrue(wheelRuns > 0);
+        //停止后节点立即从时间轮摘除
+        assertEquals(pendingBefore, pendingAfterStop);
+    }
+
+    private static int countThreads(String prefix) {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
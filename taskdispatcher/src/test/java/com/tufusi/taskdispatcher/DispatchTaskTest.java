@@ -0,0 +1,82 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description 周期任务：主线程与并行线程池两种目标、抛出异常后继续调度、停止后立即从时间轮摘除
+ */
+public class DispatchTaskTest {
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+    }
+
+    @Test
+    public void mainThreadTaskRunsPeriodicallyOnMainLoop() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        final AtomicInteger offMain = new AtomicInteger();
+        AbstractDispatcherTask task = new AbstractDispatcherTask(20) {
+            @Override
+            public void onDispatch() {
+                if (!TaskDispatcher.isMainThread()) {
+                    offMain.incrementAndGet();
+                }
+                latch.countDown();
+            }
+        };
+        TaskDispatcher.dispatchTask(task);
+        try {
+            assertTrue(latch.await(2, TimeUnit.SECONDS));
+            assertEquals(0, offMain.get());
+        } finally {
+            TaskDispatcher.stopDispatchTask(task);
+        }
+    }
+
+    @Test
+    public void throwingTaskKeepsItsSchedule() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        AbstractDispatcherTask task = new AbstractDispatcherTask(20, false) {
+            @Override
+            public void onDispatch() {
+                latch.countDown();
+                throw new IllegalStateException("boom");
+            }
+        };
+        TaskDispatcher.dispatchTask(task);
+        try {
+            assertTrue(latch.await(2, TimeUnit.SECONDS));
+        } finally {
+            TaskDispatcher.stopDispatchTask(task);
+        }
+    }
+
+    @Test
+    public void stopRemovesTimerImmediately() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        AbstractDispatcherTask task = new AbstractDispatcherTask(10000, false, 10000) {
+            @Override
+            public void onDispatch() {
+                runs.incrementAndGet();
+            }
+        };
+        long before = TaskDispatcher.pendingTimers();
+        TaskDispatcher.dispatchTask(task);
+        assertEquals(before + 1, TaskDispatcher.pendingTimers());
+        TaskDispatcher.stopDispatchTask(task);
+        assertEquals(before, TaskDispatcher.pendingTimers());
+        assertEquals(0, runs.get());
+    }
+}
@@ -0,0 +1,132 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description executeCached：缓存加载的进行中表与调用方的去重标识互不干扰；
+ * 挂载到进行中加载的任务在收到结果后离开作用域，作用域之后的取消不再回调onCancel
+ */
+public class ExecuteCachedTest {
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+    }
+
+    @Test
+    public void cacheKeyDoesNotCollideWithDedupKey() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch dedupDone = new CountDownLatch(1);
+        //调用方的去重标识恰好与旧实现中缓存加载使用的key相同
+        TaskDispatcher.execute("ResultCache:layout", new AbstractTask<Integer>() {
+            @Override
+            public Integer doInBackground() throws InterruptedException {
+                release.await(5, TimeUnit.SECONDS);
+                return 42;
+            }
+
+            @Override
+            public void onSuccess(Integer result) {
+                dedupDone.countDown();
+            }
+        });
+
+        final AtomicReference<Object> delivered = new AtomicReference<>();
+        final CountDownLatch cachedDone = new CountDownLatch(1);
+        TaskDispatcher.executeCached("layout", new AbstractTask<String>() {
+            @Override
+            public String doInBackground() {
+                return "measured";
+            }
+
+            @Override
+            public void onSuccess(String result) {
+                delivered.set(result);
+                cachedDone.countDown();
+            }
+        });
+        try {
+            assertTrue("cached task was merged into the unrelated dedup task", cachedDone.await(2, TimeUnit.SECONDS));
+            assertEquals("measured", delivered.get());
+        } finally {
+            release.countDown();
+        }
+        assertTrue(dedupDone.await(5, TimeUnit.SECONDS));
+        assertEquals("measured", TaskDispatcher.resultCache().get("layout", false));
+    }
+
+    @Test
+    public void attachedTaskLeavesScopeAfterDelivery() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        TaskDispatcher.executeCached("profile", new AbstractTask<String>() {
+            @Override
+            public String doInBackground() throws InterruptedException {
+                release.await(5, TimeUnit.SECONDS);
+                return "loaded";
+            }
+
+            @Override
+            public void onSuccess(String result) {
+            }
+        });
+
+        //同一key的加载进行中，作用域内的任务挂载到这次加载上
+        TaskScope scope = new TaskScope();
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final AtomicInteger cancels = new AtomicInteger();
+        AbstractTask<String> attached = new AbstractTask<String>() {
+            @Override
+            public String doInBackground() {
+                throw new AssertionError("attached task must not run");
+            }
+
+            @Override
+            public void onSuccess(String result) {
+                delivered.countDown();
+            }
+
+            @Override
+            public void onCancel() {
+                cancels.incrementAndGet();
+            }
+        };
+        assertTrue(scope.attach(attached));
+        TaskDispatcher.executeCached("profile", attached);
+        release.countDown();
+        assertTrue(delivered.await(2, TimeUnit.SECONDS));
+        awaitMainLoop();
+        assertFalse(attached.isSubmitted());
+
+        //如页面销毁：已收到结果的任务不应再收到onCancel
+        scope.cancel();
+        awaitMainLoop();
+        assertEquals(0, cancels.get());
+    }
+
+    /**
+     * 在主线程排一条空工作并等待，确保之前投递的回调已执行完
+     */
+    private static void awaitMainLoop() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        TaskDispatcher.runOnUIThread(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,132 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description forkJoin：按顺序返回子任务结果，子任务中途被拒绝时取消已提交的兄弟子任务
+ */
+public class ForkJoinTest {
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+    }
+
+    private static final class ValueTask extends AbstractTask<Integer> {
+
+        private final int mValue;
+
+        ValueTask(int value) {
+            this.mValue = value;
+        }
+
+        @Override
+        public Integer doInBackground() {
+            return mValue * mValue;
+        }
+
+        @Override
+        public void onSuccess(Integer result) {
+        }
+    }
+
+    @Test
+    public void resultsFollowTaskOrder() throws Exception {
+        List<ValueTask> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tasks.add(new ValueTask(i));
+        }
+        assertEquals(Arrays.asList(0, 1, 4, 9, 16, 25, 36, 49), TaskDispatcher.forkJoin(tasks));
+    }
+
+    @Test
+    public void rejectedForkCancelsForkedSiblings() throws Exception {
+        //单线程：第一个兄弟子任务执行，第二个排队，第三个被拒绝
+        final AtomicInteger accepted = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            public void execute(Runnable command) {
+                if (accepted.incrementAndGet() > 2) {
+                    //等第一个兄弟子任务开始执行后再拒绝
+                    try {
+                        started.await(2, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new RejectedExecutionException("saturated");
+                }
+                super.execute(command);
+            }
+        };
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final AtomicInteger queuedRuns = new AtomicInteger();
+        AbstractTask<Integer> running = new AbstractTask<Integer>() {
+            @Override
+            public Integer doInBackground() {
+                started.countDown();
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return 1;
+            }
+
+            @Override
+            public void onSuccess(Integer result) {
+            }
+        };
+        AbstractTask<Integer> queued = new AbstractTask<Integer>() {
+            @Override
+            public Integer doInBackground() {
+                queuedRuns.incrementAndGet();
+                return 2;
+            }
+
+            @Override
+            public void onSuccess(Integer result) {
+            }
+        };
+        AbstractTask<Integer> first = new AbstractTask<Integer>() {
+            @Override
+            public Integer doInBackground() {
+                return 0;
+            }
+
+            @Override
+            public void onSuccess(Integer result) {
+            }
+        };
+        List<AbstractTask<Integer>> tasks = Arrays.asList(first, running, queued, new ValueTask(3));
+        try {
+            TaskDispatcher.forkJoin(executor, tasks);
+            fail("rejection not propagated");
+        } catch (RejectedExecutionException expected) {
+            //第三个子任务被拒绝
+        }
+        assertEquals(0, started.getCount());
+        assertTrue("running sibling was not cancelled", interrupted.await(2, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(2, TimeUnit.SECONDS));
+        assertEquals("queued sibling ran after forkJoin gave up", 0, queuedRuns.get());
+    }
+}
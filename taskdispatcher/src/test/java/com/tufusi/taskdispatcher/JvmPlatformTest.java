@@ -0,0 +1,225 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description JVM平台：任务、计时与主线程投递全程不触碰android类（测试桩方法一经调用即抛出异常），追踪片段在关闭追踪后仍配对关闭
+ */
+public class JvmPlatformTest {
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+    }
+
+    @Test
+    public void taskCallbacksRunOnMainLoop() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<String> result = new AtomicReference<>();
+        final AtomicBoolean onMain = new AtomicBoolean();
+        TaskDispatcher.execute(new AbstractTask<String>() {
+            @Override
+            public String doInBackground() {
+                return TaskDispatcher.isMainThread() ? "main" : "worker";
+            }
+
+            @Override
+            public void onSuccess(String value) {
+                result.set(value);
+                onMain.set(TaskDispatcher.isMainThread());
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals("worker", result.get());
+        assertTrue(onMain.get());
+    }
+
+    @Test
+    public void runOnUIThreadHonoursDelayAndOrder() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        final StringBuffer order = new StringBuffer();
+        final long start = System.nanoTime();
+        final AtomicReference<Long> delayedAfter = new AtomicReference<>();
+        TaskDispatcher.runOnUIThread(new Runnable() {
+            @Override
+            public void run() {
+                delayedAfter.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                order.append('c');
+                latch.countDown();
+            }
+        }, 50);
+        TaskDispatcher.runOnUIThread(new Runnable() {
+            @Override
+            public void run() {
+                order.append('a');
+                latch.countDown();
+            }
+        });
+        TaskDispatcher.runWhenIdle(new Runnable() {
+            @Override
+            public void run() {
+                order.append('b');
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals("abc", order.toString());
+        assertTrue(delayedAfter.get() >= 50);
+    }
+
+    @Test
+    public void timeOutTaskFiresOnWheel() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        TaskDispatcher.executeTimeOutTask(30, new AbstractTask<Void>() {
+            @Override
+            public Void doInBackground() throws InterruptedException {
+                Thread.sleep(300);
+                return null;
+            }
+
+            @Override
+            public void onSuccess(Void result) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onCancel() {
+                cancelled.set(TaskDispatcher.isMainThread());
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        //超时后任务在主线程被取消
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    public void debounceRunsOnMainLoop() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicBoolean onMain = new AtomicBoolean();
+        TaskDispatcher.debounce("jvm-platform", 10, new Runnable() {
+            @Override
+            public void run() {
+                onMain.set(TaskDispatcher.isMainThread());
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertTrue(onMain.get());
+    }
+
+    @Test
+    public void platformProvidesCpuTimeForAdaptiveSizing() {
+        DispatcherPlatform platform = DispatcherPlatform.jvm(false);
+        assertTrue(platform.currentThreadCpuTimeNanos() >= 0);
+        assertTrue(platform.processId() > 0);
+        new DispatcherConfig.Builder().setPlatform(platform).setAdaptivePoolSizing(1, 2).build();
+    }
+
+    @Test
+    public void queueMetricsRequireAWorkQueue() {
+        assertTrue(TaskDispatcher.hasWorkQueue(ExecutionDomain.CPU));
+        assertTrue(TaskDispatcher.queueSize(ExecutionDomain.CPU) >= 0);
+        //运行时支持虚拟线程时IO任务不排队，队列指标直接报错而不是返回0
+        if (TaskDispatcher.hasWorkQueue(ExecutionDomain.IO)) {
+            assertTrue(TaskDispatcher.cancelledRatio(ExecutionDomain.IO) >= 0);
+        } else {
+            try {
+                TaskDispatcher.queueSize(ExecutionDomain.IO);
+                fail("queue metrics reported for a domain without work queue");
+            } catch (IllegalStateException expected) {
+                //每个任务一个线程
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void adaptiveSizingRejectedWithWorkStealing() {
+        new DispatcherConfig.Builder()
+                .setPlatform(DispatcherPlatform.jvm(false))
+                .setExecutorBackend(ExecutorBackend.WORK_STEALING)
+                .setAdaptivePoolSizing(1, 2)
+                .build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void adaptiveSizingRejectedWithoutCpuTime() {
+        DispatcherPlatform platform = new DispatcherPlatform() {
+            @Override
+            public MainLoop newMainLoop() {
+                return null;
+            }
+
+            @Override
+            public MainLoop newBackgroundLoop(String name) {
+                return null;
+            }
+
+            @Override
+            public ILog newLogger() {
+                return null;
+            }
+        };
+        new DispatcherConfig.Builder().setPlatform(platform).setAdaptivePoolSizing(1, 2).build();
+    }
+
+    @Test
+    public void tracerClosesSectionOpenedBeforeDisable() throws Exception {
+        TaskTracer.setEnabled(true);
+        try {
+            TaskTracer.begin("jvmTracerOuter");
+            TaskTracer.setEnabled(false);
+            TaskTracer.end();
+            //已无未关闭片段，追踪关闭时的end不做任何事
+            TaskTracer.end();
+            String trace = TaskTracer.exportChromeTrace();
+            assertTrue(trace, trace.contains("\"name\":\"jvmTracerOuter\""));
+
+            TaskTracer.clear();
+            assertFalse(TaskTracer.exportChromeTrace().contains("jvmTracerOuter"));
+        } finally {
+            TaskTracer.setEnabled(false);
+        }
+    }
+
+    @Test
+    public void tracerDropsBuffersOfFinishedThreads() throws Exception {
+        TaskTracer.setEnabled(true);
+        try {
+            Runnable traced = new Runnable() {
+                @Override
+                public void run() {
+                    TaskTracer.begin("short-lived");
+                    TaskTracer.end();
+                }
+            };
+            for (int i = 0; i < 50; i++) {
+                Thread thread = new Thread(traced);
+                thread.start();
+                thread.join();
+            }
+            assertTrue(TaskTracer.bufferCount() <= 2 + Thread.activeCount());
+            TaskTracer.clear();
+            //结束线程的缓冲区全部移除，剩下的都属于存活线程
+            assertTrue(TaskTracer.bufferCount() <= Thread.activeCount());
+        } finally {
+            TaskTracer.setEnabled(false);
+        }
+    }
+}
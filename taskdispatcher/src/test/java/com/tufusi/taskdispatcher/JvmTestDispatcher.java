@@ -0,0 +1,29 @@
+package com.tufusi.taskdispatcher;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description 本地单元测试共用的调度器：以JVM平台初始化，主线程由循环线程代替，不触碰android.jar中的桩方法。
+ * 调度器是进程内单例，所有用到TaskDispatcher的测试都应先调用 {@link #install()}
+ */
+final class JvmTestDispatcher {
+
+    private static boolean sInstalled;
+
+    private JvmTestDispatcher() {
+    }
+
+    static synchronized void install() {
+        if (sInstalled) {
+            return;
+        }
+        TaskDispatcher.init(new DispatcherConfig.Builder()
+                .setPlatform(DispatcherPlatform.jvm(true))
+                .setQueueCapacity(1024)
+                .setOverflowPolicy(OverflowPolicy.CALLER_RUNS)
+                .build());
+        TaskDispatcher.getInstance();
+        sInstalled = true;
+    }
+}
@@ -0,0 +1,156 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description KeyedSerialExecutor：线程池持续拒绝时在当前线程循环排空，首次调度被拒绝时不滞留其他线程提交的任务
+ */
+public class KeyedSerialExecutorTest {
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+    }
+
+    /**
+     * 记录投递的排空任务，由测试手动执行；rejecting为true时拒绝
+     */
+    private static final class ManualExecutor implements Executor {
+
+        final List<Runnable> mScheduled = new ArrayList<>();
+        boolean mRejecting;
+
+        @Override
+        public void execute(Runnable command) {
+            if (mRejecting) {
+                throw new RejectedExecutionException("saturated");
+            }
+            mScheduled.add(command);
+        }
+    }
+
+    @Test
+    public void saturatedPoolDrainsBacklogInPlace() {
+        ManualExecutor pool = new ManualExecutor();
+        ConcurrentMap<String, KeyedSerialExecutor> registry = new ConcurrentHashMap<>();
+        KeyedSerialExecutor serial = new KeyedSerialExecutor("backlog", registry, pool);
+        registry.put("backlog", serial);
+
+        final int[] next = {0};
+        final boolean[] ordered = {true};
+        int count = 200000;
+        for (int i = 0; i < count; i++) {
+            final int expected = i;
+            serial.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (next[0]++ != expected) {
+                        ordered[0] = false;
+                    }
+                }
+            });
+        }
+        assertEquals(1, pool.mScheduled.size());
+
+        //之后每一轮重新排队都被拒绝，排空在同一个栈帧内循环完成
+        pool.mRejecting = true;
+        pool.mScheduled.get(0).run();
+        assertEquals(count, next[0]);
+        assertTrue(ordered[0]);
+        assertFalse(registry.containsKey("backlog"));
+    }
+
+    @Test
+    public void rejectedFirstScheduleDoesNotStrandConcurrentTasks() {
+        final ConcurrentMap<String, KeyedSerialExecutor> registry = new ConcurrentHashMap<>();
+        final boolean[] rejected = {false};
+        final boolean[] concurrentRan = {false};
+        final KeyedSerialExecutor[] holder = new KeyedSerialExecutor[1];
+        Executor pool = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (!rejected[0]) {
+                    rejected[0] = true;
+                    //模拟另一线程在首次调度被拒绝前提交：它看到已在调度中，只入队不调度
+                    holder[0].execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            concurrentRan[0] = true;
+                        }
+                    });
+                    throw new RejectedExecutionException("saturated");
+                }
+                command.run();
+            }
+        };
+        holder[0] = new KeyedSerialExecutor("first", registry, pool);
+        registry.put("first", holder[0]);
+
+        final boolean[] firstRan = {false};
+        try {
+            holder[0].execute(new Runnable() {
+                @Override
+                public void run() {
+                    firstRan[0] = true;
+                }
+            });
+            fail("rejection not propagated");
+        } catch (RejectedExecutionException expected) {
+            //被拒绝的任务本身不执行
+        }
+        assertFalse(firstRan[0]);
+        assertTrue("task queued during the rejected schedule was stranded", concurrentRan[0]);
+    }
+
+    @Test
+    public void rejectedFirstScheduleLeavesExecutorUsable() {
+        final boolean[] rejectNext = {true};
+        Executor pool = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (rejectNext[0]) {
+                    rejectNext[0] = false;
+                    throw new RejectedExecutionException("saturated");
+                }
+                command.run();
+            }
+        };
+        ConcurrentMap<String, KeyedSerialExecutor> registry = new ConcurrentHashMap<>();
+        KeyedSerialExecutor serial = new KeyedSerialExecutor("reuse", registry, pool);
+        registry.put("reuse", serial);
+        try {
+            serial.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail("rejection not propagated");
+        } catch (RejectedExecutionException expected) {
+            //线程池已满
+        }
+        final boolean[] ran = {false};
+        serial.execute(new Runnable() {
+            @Override
+            public void run() {
+                ran[0] = true;
+            }
+        });
+        assertTrue(ran[0]);
+    }
+}
@@ -0,0 +1,84 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description 指标导出：线程池拒绝若干轮后仍按间隔继续导出
+ */
+public class MetricsExporterTest {
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+    }
+
+    @Test
+    public void exportSurvivesRejectedRounds() throws Exception {
+        HashedTimingWheel timer = new HashedTimingWheel(Executors.defaultThreadFactory(), 5, TimeUnit.MILLISECONDS, 64);
+        final AtomicInteger attempts = new AtomicInteger();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (attempts.incrementAndGet() <= 3) {
+                    throw new RejectedExecutionException("saturated");
+                }
+                command.run();
+            }
+        };
+        final CountDownLatch exported = new CountDownLatch(2);
+        TaskDispatcher.MetricsExporter exporter = new TaskDispatcher.MetricsExporter(new MetricsSink() {
+            @Override
+            public void onMetrics(List<TaskMetrics.Snapshot> snapshots) {
+                exported.countDown();
+            }
+        }, 10, new TaskMetrics(), executor, timer);
+        exporter.start();
+        try {
+            assertTrue("export stopped after rejection", exported.await(2, TimeUnit.SECONDS));
+            assertTrue(attempts.get() >= 5);
+        } finally {
+            exporter.stop();
+        }
+    }
+
+    @Test
+    public void stoppedExporterIsNotRearmed() throws Exception {
+        HashedTimingWheel timer = new HashedTimingWheel(Executors.defaultThreadFactory(), 5, TimeUnit.MILLISECONDS, 64);
+        final AtomicInteger attempts = new AtomicInteger();
+        Executor rejecting = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                attempts.incrementAndGet();
+                throw new RejectedExecutionException("saturated");
+            }
+        };
+        TaskDispatcher.MetricsExporter exporter = new TaskDispatcher.MetricsExporter(new MetricsSink() {
+            @Override
+            public void onMetrics(List<TaskMetrics.Snapshot> snapshots) {
+            }
+        }, 10, new TaskMetrics(), rejecting, timer);
+        exporter.start();
+        Thread.sleep(60);
+        exporter.stop();
+        Thread.sleep(30);
+        int stoppedAt = attempts.get();
+        assertTrue(stoppedAt > 1);
+        Thread.sleep(60);
+        assertEquals(stoppedAt, attempts.get());
+    }
+}
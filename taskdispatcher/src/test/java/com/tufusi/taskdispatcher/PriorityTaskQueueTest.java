@@ -0,0 +1,113 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description PriorityTaskQueue墓碑计数：只为仍在队列中、出队时会被跳过的已取消任务记墓碑
+ */
+public class PriorityTaskQueueTest {
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+    }
+
+    private static final class EmptyTask extends AbstractTask<Void> {
+
+        @Override
+        public Void doInBackground() {
+            return null;
+        }
+
+        @Override
+        public void onSuccess(Void result) {
+        }
+    }
+
+    @Test
+    public void cancelledQueuedTaskIsCountedOnce() {
+        PriorityTaskQueue queue = new PriorityTaskQueue(16);
+        EmptyTask task = new EmptyTask();
+        assertTrue(task.onSubmit());
+        queue.offer(task);
+        task.cancel();
+        queue.markCancelled(task);
+        queue.markCancelled(task);
+        assertEquals(1, queue.tombstones());
+
+        //出队时跳过，墓碑随之扣除
+        assertNull(queue.poll());
+        assertEquals(0, queue.tombstones());
+    }
+
+    @Test
+    public void tasksOutsideTheQueueAreNotCounted() {
+        PriorityTaskQueue queue = new PriorityTaskQueue(16);
+
+        //执行中：已出队
+        EmptyTask running = new EmptyTask();
+        assertTrue(running.onSubmit());
+        queue.offer(running);
+        assertSame(running, queue.poll());
+        running.cancel();
+        queue.markCancelled(running);
+
+        //从未入队
+        EmptyTask neverQueued = new EmptyTask();
+        assertTrue(neverQueued.onSubmit());
+        neverQueued.cancel();
+        queue.markCancelled(neverQueued);
+
+        //已执行完毕
+        EmptyTask finished = new EmptyTask();
+        assertTrue(finished.onSubmit());
+        queue.offer(finished);
+        queue.poll().run();
+        finished.cancel();
+        queue.markCancelled(finished);
+
+        //直接交给线程池的任务出队时不跳过
+        EmptyTask plain = new EmptyTask();
+        queue.offer(plain);
+        plain.cancel();
+        queue.markCancelled(plain);
+
+        assertEquals(0, queue.tombstones());
+        assertSame(plain, queue.poll());
+    }
+
+    @Test
+    public void removedTaskReleasesItsTombstone() {
+        PriorityTaskQueue queue = new PriorityTaskQueue(16);
+        EmptyTask task = new EmptyTask();
+        assertTrue(task.onSubmit());
+        queue.offer(task);
+        task.cancel();
+        queue.markCancelled(task);
+        assertTrue(queue.remove(task));
+        assertEquals(0, queue.tombstones());
+
+        //墓碑超过阈值后压缩，压缩移除的任务不再计入
+        for (int i = 0; i < 40; i++) {
+            EmptyTask cancelled = new EmptyTask();
+            assertTrue(cancelled.onSubmit());
+            queue.spill(cancelled);
+            cancelled.cancel();
+            queue.markCancelled(cancelled);
+        }
+        //第32个墓碑触发压缩，之后的8个仍在队列中
+        assertEquals(8, queue.tombstones());
+        assertEquals(8, queue.size());
+        assertNull(queue.poll());
+        assertEquals(0, queue.tombstones());
+    }
+}
@@ -0,0 +1,129 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description RateController：并行线程池拒绝后槽仍能执行、同一key后续调用不被吞掉，空闲令牌桶被回收
+ */
+public class RateControllerTest {
+
+    private static HashedTimingWheel sTimer;
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+        sTimer = new HashedTimingWheel(Executors.defaultThreadFactory(), 5, TimeUnit.MILLISECONDS, 64);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        sTimer = null;
+    }
+
+    /**
+     * 前rejects次投递被拒绝，之后直接在调用线程执行
+     */
+    private static Executor rejectingFirst(final int rejects) {
+        final AtomicInteger attempts = new AtomicInteger();
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (attempts.incrementAndGet() <= rejects) {
+                    throw new RejectedExecutionException("saturated");
+                }
+                command.run();
+            }
+        };
+    }
+
+    @Test
+    public void debounceSurvivesRejectedExecution() throws Exception {
+        RateController controller = new RateController(DispatchTarget.PARALLEL, null, rejectingFirst(2), sTimer);
+        final CountDownLatch first = new CountDownLatch(1);
+        controller.debounce("search", 10, new Runnable() {
+            @Override
+            public void run() {
+                first.countDown();
+            }
+        });
+        assertTrue("rejected debounce never ran", first.await(2, TimeUnit.SECONDS));
+
+        final CountDownLatch second = new CountDownLatch(1);
+        controller.debounce("search", 10, new Runnable() {
+            @Override
+            public void run() {
+                second.countDown();
+            }
+        });
+        assertTrue("key stuck after rejection", second.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void throttleSurvivesRejectedExecution() throws Exception {
+        RateController controller = new RateController(DispatchTarget.PARALLEL, null, rejectingFirst(1), sTimer);
+        final CountDownLatch first = new CountDownLatch(1);
+        //首次立即执行被拒绝，转由计时线程重试
+        controller.throttle("scroll", 10, new Runnable() {
+            @Override
+            public void run() {
+                first.countDown();
+            }
+        });
+        assertTrue("rejected throttle never ran", first.await(2, TimeUnit.SECONDS));
+
+        Thread.sleep(50);
+        final CountDownLatch second = new CountDownLatch(1);
+        controller.throttle("scroll", 10, new Runnable() {
+            @Override
+            public void run() {
+                second.countDown();
+            }
+        });
+        assertTrue("key stuck after rejection", second.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void idleBucketsAreEvicted() throws Exception {
+        Executor direct = rejectingFirst(0);
+        RateController controller = new RateController(DispatchTarget.PARALLEL, null, direct, sTimer);
+        final AtomicInteger runs = new AtomicInteger();
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        };
+        for (int i = 0; i < 500; i++) {
+            assertTrue(controller.rateLimit("user-" + i, 5, runnable));
+        }
+        assertEquals(500, runs.get());
+        assertEquals(500, controller.bucketCount());
+
+        //5个/秒的桶取走一个令牌后约200ms攒满
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (controller.bucketCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, controller.bucketCount());
+
+        //回收后同一key拿到新桶，限流照常生效
+        assertTrue(controller.rateLimit("user-0", 1, runnable));
+        assertTrue(!controller.rateLimit("user-0", 1, runnable));
+        assertEquals(501, runs.get());
+    }
+}
@@ -0,0 +1,135 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description StallMonitor：慢的onSuccess按任务名与回调类型上报，投递位置取任务提交时的调用位置；合并投递的回调逐条计时
+ */
+public class StallMonitorTest {
+
+    private static final long BUDGET_MILLIS = 20;
+    private static final long SLOW_MILLIS = 60;
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+    }
+
+    @After
+    public void tearDown() {
+        TaskDispatcher.disableStallMonitor();
+    }
+
+    private static final class NamedTask extends AbstractTask<String> {
+
+        private final String mName;
+        private final long mCallbackMillis;
+        private final CountDownLatch mDelivered = new CountDownLatch(1);
+
+        NamedTask(String name, long callbackMillis) {
+            this.mName = name;
+            this.mCallbackMillis = callbackMillis;
+        }
+
+        @Override
+        public String getTaskName() {
+            return mName;
+        }
+
+        @Override
+        public String doInBackground() {
+            return mName;
+        }
+
+        @Override
+        public void onSuccess(String result) {
+            try {
+                Thread.sleep(mCallbackMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mDelivered.countDown();
+        }
+    }
+
+    private static StallMonitor.Offender find(StallMonitor monitor, String name) {
+        for (StallMonitor.Offender offender : monitor.offenders()) {
+            if (offender.callbackClass.equals(name)) {
+                return offender;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 在主线程排一条空工作并等待，确保之前的消息已执行完、检测结果已记录
+     */
+    private static void awaitMainLoop() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        TaskDispatcher.runOnUIThread(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void slowOnSuccessIsReportedUnderTaskName() throws Exception {
+        StallMonitor monitor = TaskDispatcher.enableStallMonitor(BUDGET_MILLIS, true, null);
+        NamedTask slow = new NamedTask("SlowLayoutTask", SLOW_MILLIS);
+        TaskDispatcher.execute(slow);
+        assertTrue(slow.mDelivered.await(2, TimeUnit.SECONDS));
+        awaitMainLoop();
+
+        StallMonitor.Offender offender = find(monitor, "SlowLayoutTask#onSuccess");
+        assertNotNull("slow onSuccess not reported under the task name: " + monitor.offenders(), offender);
+        assertEquals(1, offender.count());
+        assertTrue(offender.maxMillis() >= SLOW_MILLIS);
+        //投递位置取提交时的调用栈，而不是工作线程中的投递
+        assertNotNull(offender.postedAt);
+        assertFalse(offender.postedAt, offender.postedAt.startsWith("java.util.concurrent."));
+        for (StallMonitor.Offender other : monitor.offenders()) {
+            assertFalse(other.toString(), other.callbackClass.startsWith(ResultCarrier.class.getName()));
+        }
+    }
+
+    @Test
+    public void batchedCallbacksAreTimedOneByOne() throws Exception {
+        StallMonitor monitor = TaskDispatcher.enableStallMonitor(BUDGET_MILLIS, false, null);
+        MainThreadBatcher batcher = new MainThreadBatcher(TaskDispatcher.mainLoop(), 64, 1000);
+        NamedTask fast = new NamedTask("FastBindTask", 0);
+        NamedTask slow = new NamedTask("SlowBindTask", SLOW_MILLIS);
+        //多个快回调合计超出预算，但每一个都不慢
+        for (int i = 0; i < 5; i++) {
+            batcher.post(ResultCarrier.obtain(new NamedTask("FastBindTask", 10), ResultCarrier.TYPE_SUCCESS, "x", null, null));
+        }
+        batcher.post(ResultCarrier.obtain(fast, ResultCarrier.TYPE_SUCCESS, "fast", null, null));
+        batcher.post(ResultCarrier.obtain(slow, ResultCarrier.TYPE_SUCCESS, "slow", null, null));
+        assertTrue(slow.mDelivered.await(2, TimeUnit.SECONDS));
+        awaitMainLoop();
+
+        assertNotNull(find(monitor, "SlowBindTask#onSuccess"));
+        assertNull(find(monitor, "FastBindTask#onSuccess"));
+        List<StallMonitor.Offender> offenders = monitor.offenders();
+        for (StallMonitor.Offender offender : offenders) {
+            assertFalse("whole drain was reported: " + offender, offender.callbackClass.contains(MainThreadBatcher.class.getSimpleName()));
+        }
+    }
+}
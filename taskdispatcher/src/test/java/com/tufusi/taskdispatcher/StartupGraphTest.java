@@ -0,0 +1,232 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description StartupGraph：构建时拒绝环与未知依赖，主线程await时直接执行就绪的主线程任务，
+ * 只等待首帧前任务，关键路径，依赖失败时跳过下游任务
+ */
+public class StartupGraphTest {
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+    }
+
+    private static class SleepTask extends AbstractStartupTask {
+
+        private final long mMillis;
+        final AtomicInteger mRuns = new AtomicInteger();
+
+        SleepTask(String name, long millis) {
+            this(name, millis, false, false);
+        }
+
+        SleepTask(String name, long millis, boolean mainThread, boolean waitBeforeFirstFrame) {
+            super(name, mainThread, waitBeforeFirstFrame);
+            this.mMillis = millis;
+        }
+
+        @Override
+        public void onStartup() throws Exception {
+            mRuns.incrementAndGet();
+            if (mMillis > 0) {
+                Thread.sleep(mMillis);
+            }
+        }
+    }
+
+    private static final class ReportCollector implements StartupGraph.Listener {
+
+        final CountDownLatch mFinished = new CountDownLatch(1);
+        volatile StartupGraph.Report mReport;
+
+        @Override
+        public void onFinished(StartupGraph.Report report) {
+            mReport = report;
+            mFinished.countDown();
+        }
+
+        StartupGraph.Report await() throws InterruptedException {
+            assertTrue("graph did not finish", mFinished.await(5, TimeUnit.SECONDS));
+            return mReport;
+        }
+    }
+
+    private static Map<String, StartupGraph.NodeTiming> timings(StartupGraph.Report report) {
+        Map<String, StartupGraph.NodeTiming> timings = new HashMap<>();
+        for (StartupGraph.NodeTiming timing : report.timings) {
+            timings.put(timing.name, timing);
+        }
+        return timings;
+    }
+
+    @Test
+    public void cycleIsRejected() {
+        StartupGraph.Builder builder = new StartupGraph.Builder()
+                .addTask(new SleepTask("a", 0), "c")
+                .addTask(new SleepTask("b", 0), "a")
+                .addTask(new SleepTask("c", 0), "b")
+                .addTask(new SleepTask("root", 0));
+        try {
+            builder.build();
+            fail("cycle not detected");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("[a, b, c]"));
+        }
+    }
+
+    @Test
+    public void unknownDependencyIsRejected() {
+        StartupGraph.Builder builder = new StartupGraph.Builder()
+                .addTask(new SleepTask("push", 0), "account");
+        try {
+            builder.build();
+            fail("unknown dependency not detected");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("account"));
+        }
+    }
+
+    @Test
+    public void awaitOnMainThreadRunsReadyMainTasks() throws Exception {
+        final SleepTask config = new SleepTask("config", 20);
+        final SleepTask ui = new SleepTask("ui", 0, true, true);
+        final StartupGraph graph = new StartupGraph.Builder()
+                .addTask(config)
+                .addTask(ui, "config")
+                .build();
+        final AtomicBoolean completed = new AtomicBoolean();
+        final AtomicReference<String> uiThread = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        TaskDispatcher.runOnUIThread(new Runnable() {
+            @Override
+            public void run() {
+                graph.start();
+                try {
+                    //主线程阻塞在这里，合并投递的主线程消息无法执行，只能由await直接执行
+                    completed.set(graph.await(2000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                uiThread.set(Thread.currentThread().getName());
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue("await deadlocked on the main thread", completed.get());
+        assertEquals(1, ui.mRuns.get());
+    }
+
+    @Test
+    public void awaitWaitsOnlyForFirstFrameTasks() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        AbstractStartupTask background = new AbstractStartupTask("analytics") {
+            @Override
+            public void onStartup() throws Exception {
+                release.await(5, TimeUnit.SECONDS);
+            }
+        };
+        ReportCollector collector = new ReportCollector();
+        StartupGraph graph = new StartupGraph.Builder()
+                .addTask(new SleepTask("crash", 10, false, true))
+                .addTask(new SleepTask("theme", 10, false, true))
+                .addTask(background)
+                .setListener(collector)
+                .build();
+        graph.start();
+        assertTrue(graph.await(2000));
+        assertEquals(1, collector.mFinished.getCount());
+        release.countDown();
+        collector.await();
+
+        //首帧前任务未完成时超时
+        final CountDownLatch block = new CountDownLatch(1);
+        StartupGraph blocked = new StartupGraph.Builder()
+                .addTask(new AbstractStartupTask("slow", false, true) {
+                    @Override
+                    public void onStartup() throws Exception {
+                        block.await(5, TimeUnit.SECONDS);
+                    }
+                })
+                .build();
+        blocked.start();
+        assertFalse(blocked.await(50));
+        block.countDown();
+        assertTrue(blocked.await(2000));
+    }
+
+    @Test
+    public void criticalPathFollowsLatestDependencies() throws Exception {
+        ReportCollector collector = new ReportCollector();
+        new StartupGraph.Builder()
+                .addTask(new SleepTask("network", 60))
+                .addTask(new SleepTask("account", 60), "network")
+                .addTask(new SleepTask("fonts", 5))
+                .addTask(new SleepTask("home", 5), "account", "fonts")
+                .setListener(collector)
+                .build()
+                .start();
+        StartupGraph.Report report = collector.await();
+        assertEquals(Arrays.asList("network", "account", "home"), report.criticalPath);
+        assertEquals(4, report.timings.size());
+        assertTrue(report.totalMillis >= 120);
+    }
+
+    @Test
+    public void failedTaskSkipsItsDependents() throws Exception {
+        AbstractStartupTask database = new AbstractStartupTask("database", false, true) {
+            @Override
+            public void onStartup() throws Exception {
+                throw new IllegalStateException("disk full");
+            }
+        };
+        SleepTask repository = new SleepTask("repository", 0, false, true);
+        SleepTask sync = new SleepTask("sync", 0, true, false);
+        SleepTask logger = new SleepTask("logger", 0);
+        ReportCollector collector = new ReportCollector();
+        StartupGraph graph = new StartupGraph.Builder()
+                .addTask(database)
+                .addTask(repository, "database")
+                .addTask(sync, "repository")
+                .addTask(logger)
+                .setListener(collector)
+                .build();
+        graph.start();
+        //跳过的首帧前任务同样计入屏障，await不会一直等待
+        assertTrue(graph.await(2000));
+        StartupGraph.Report report = collector.await();
+
+        assertEquals(0, repository.mRuns.get());
+        assertEquals(0, sync.mRuns.get());
+        assertEquals(1, logger.mRuns.get());
+        Map<String, StartupGraph.NodeTiming> timings = timings(report);
+        assertNotNull(timings.get("database").error);
+        assertFalse(timings.get("database").isSkipped());
+        assertEquals("database", timings.get("repository").skippedBecause);
+        assertEquals("database", timings.get("sync").skippedBecause);
+        assertNull(timings.get("logger").skippedBecause);
+        assertFalse(report.criticalPath.contains("repository"));
+        assertFalse(report.criticalPath.contains("sync"));
+    }
+}
@@ -0,0 +1,193 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description TaskFuture：链式转换、allOf/anyOf，以及取消在共享上游的多个分支之间的传递
+ */
+public class TaskFutureTest {
+
+    private static ExecutorService sExecutor;
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+        sExecutor = Executors.newCachedThreadPool();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        sExecutor.shutdownNow();
+    }
+
+    @Test
+    public void chainAppliesStagesInOrder() throws Exception {
+        TaskFuture<Integer> result = TaskFuture.supply(constant(20), sExecutor)
+                .thenApply(new TaskFuture.Function<Integer, Integer>() {
+                    @Override
+                    public Integer apply(Integer value) {
+                        return value + 1;
+                    }
+                }, sExecutor)
+                .thenCompose(new TaskFuture.AsyncFunction<Integer, Integer>() {
+                    @Override
+                    public TaskFuture<Integer> apply(Integer value) {
+                        return TaskFuture.supply(constant(value * 2), sExecutor);
+                    }
+                }, sExecutor);
+        assertEquals(Integer.valueOf(42), result.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancellingOneBranchLeavesSiblingAndSourceRunning() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TaskFuture<Integer> source = TaskFuture.supply(blockUntil(release, 1), sExecutor);
+        TaskFuture<Integer> a = source.thenApply(plus(10), sExecutor);
+        TaskFuture<Integer> b = source.thenApply(plus(100), sExecutor);
+
+        assertTrue(a.cancel(true));
+        assertTrue(a.isCancelled());
+        assertFalse(source.isDone());
+        assertFalse(b.isDone());
+
+        release.countDown();
+        assertEquals(Integer.valueOf(101), b.get(2, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(1), source.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancellingTheLastBranchCancelsTheSource() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TaskFuture<Integer> source = TaskFuture.supply(blockUntil(release, 1), sExecutor);
+        TaskFuture<Integer> a = source.thenApply(plus(10), sExecutor);
+        TaskFuture<Integer> b = source.thenApply(plus(100), sExecutor);
+
+        a.cancel(true);
+        assertFalse(source.isDone());
+        b.cancel(true);
+        assertTrue(source.isCancelled());
+        release.countDown();
+    }
+
+    @Test
+    public void cancellingSubmittedBranchKeepsSharedTaskAlive() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        AbstractTask<Integer> task = new AbstractTask<Integer>() {
+            @Override
+            public Integer doInBackground() throws InterruptedException {
+                release.await();
+                return 7;
+            }
+
+            @Override
+            public void onSuccess(Integer result) {
+            }
+        };
+        TaskFuture<Integer> source = TaskDispatcher.submit(task);
+        TaskFuture<Integer> a = source.thenApply(plus(1), sExecutor);
+        TaskFuture<Integer> b = source.thenApply(plus(2), sExecutor);
+
+        a.cancel(true);
+        assertFalse(task.isCanceled());
+        release.countDown();
+        assertEquals(Integer.valueOf(9), b.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void allOfFailsFastAndCancelsUnsharedInputs() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        TaskFuture<Integer> slow = TaskFuture.supply(blockUntil(never, 1), sExecutor);
+        TaskFuture<Integer> failing = TaskFuture.supply(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                throw new IllegalStateException("boom");
+            }
+        }, sExecutor);
+        TaskFuture<List<Integer>> all = TaskFuture.allOf(Arrays.asList(slow, failing));
+        try {
+            all.get(2, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertTrue(slow.isCancelled());
+    }
+
+    @Test
+    public void anyOfCancelsLosersButNotInputsWithOtherDependents() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        TaskFuture<Integer> loser = TaskFuture.supply(blockUntil(never, 1), sExecutor);
+        TaskFuture<Integer> shared = TaskFuture.supply(blockUntil(never, 2), sExecutor);
+        TaskFuture<Integer> sharedBranch = shared.thenApply(plus(1), sExecutor);
+        TaskFuture<Integer> winner = TaskFuture.supply(constant(3), sExecutor);
+
+        TaskFuture<Integer> any = TaskFuture.anyOf(Arrays.asList(loser, shared, winner));
+        assertEquals(Integer.valueOf(3), any.get(2, TimeUnit.SECONDS));
+        assertTrue(loser.isCancelled());
+        assertFalse(shared.isDone());
+        sharedBranch.cancel(true);
+        assertTrue(shared.isCancelled());
+    }
+
+    @Test
+    public void upstreamCancelPropagatesDownstream() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        TaskFuture<Integer> source = TaskFuture.supply(blockUntil(never, 1), sExecutor);
+        TaskFuture<Integer> next = source.thenApply(plus(1), sExecutor);
+        source.cancel(true);
+        try {
+            next.get(2, TimeUnit.SECONDS);
+            fail();
+        } catch (CancellationException expected) {
+            assertTrue(next.isCancelled());
+        }
+    }
+
+    private static Callable<Integer> constant(final int value) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return value;
+            }
+        };
+    }
+
+    private static Callable<Integer> blockUntil(final CountDownLatch latch, final int value) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                latch.await();
+                return value;
+            }
+        };
+    }
+
+    private static TaskFuture.Function<Integer, Integer> plus(final int delta) {
+        return new TaskFuture.Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer value) {
+                return value + delta;
+            }
+        };
+    }
+}
@@ -0,0 +1,136 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description 超时任务基准：连续提交10000个超时任务，对比时间轮看守与原实现（每个任务再占一个线程阻塞在future.get(timeout)）的拒绝数与峰值线程数。
+ * 两者使用同样大小、同样SynchronousQueue的超时线程池，结果输出到标准输出
+ */
+public class TimeOutTaskBenchmarkTest {
+
+    private static final int TASKS = 10000;
+    private static final long WORK_MILLIS = 1;
+    private static final long TIMEOUT_MILLIS = 50;
+
+    private static ThreadMXBean sThreadBean;
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+        sThreadBean = ManagementFactory.getThreadMXBean();
+    }
+
+    @Test
+    public void tenThousandTimedTasks() throws Exception {
+        //时间轮看守：每个超时任务只占用一个执行线程
+        sThreadBean.resetPeakThreadCount();
+        int threadsBefore = sThreadBean.getThreadCount();
+        final AtomicInteger finished = new AtomicInteger();
+        int wheelRejections = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < TASKS; i++) {
+            try {
+                TaskDispatcher.executeTimeOutTask(TIMEOUT_MILLIS, new AbstractTask<Void>() {
+                    @Override
+                    public Void doInBackground() throws InterruptedException {
+                        Thread.sleep(WORK_MILLIS);
+                        return null;
+                    }
+
+                    @Override
+                    public void onSuccess(Void result) {
+                        finished.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onCancel() {
+                        finished.incrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                wheelRejections++;
+            }
+        }
+        int wheelAccepted = TASKS - wheelRejections;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (finished.get() < wheelAccepted && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        long wheelMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        int wheelPeak = sThreadBean.getPeakThreadCount() - threadsBefore;
+        assertEquals("every accepted timed task must complete or be cancelled", wheelAccepted, finished.get());
+
+        //原实现：工作线程之外再占一个线程阻塞等待超时
+        ThreadPoolExecutor legacy = new ThreadPoolExecutor(0, DispatcherConfig.DEFAULT_MAXIMUM_POOL_SIZE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>());
+        sThreadBean.resetPeakThreadCount();
+        threadsBefore = sThreadBean.getThreadCount();
+        int legacyRejections = 0;
+        final AtomicInteger legacyFinished = new AtomicInteger();
+        start = System.nanoTime();
+        for (int i = 0; i < TASKS; i++) {
+            final Future<?> future;
+            try {
+                future = legacy.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Thread.sleep(WORK_MILLIS);
+                        } catch (InterruptedException ignored) {
+                            //超时被取消
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                legacyRejections++;
+                continue;
+            }
+            try {
+                legacy.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            future.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                        } catch (TimeoutException e) {
+                            future.cancel(true);
+                        } catch (Exception ignored) {
+                            //任务异常不影响统计
+                        }
+                        legacyFinished.incrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                //看守线程被拒绝，任务失去超时保护
+                legacyRejections++;
+                future.cancel(true);
+            }
+        }
+        legacy.shutdown();
+        assertTrue(legacy.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals("every watched task must finish", TASKS - legacyRejections, legacyFinished.get());
+        long legacyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        int legacyPeak = sThreadBean.getPeakThreadCount() - threadsBefore;
+
+        System.out.println("TimeOutTaskBenchmark: " + TASKS + " timed tasks, pool max " + DispatcherConfig.DEFAULT_MAXIMUM_POOL_SIZE);
+        System.out.println("  timing wheel : rejections=" + wheelRejections + " peakThreads=+" + wheelPeak + " time=" + wheelMillis + "ms");
+        System.out.println("  thread/watch : rejections=" + legacyRejections + " peakThreads=+" + legacyPeak + " time=" + legacyMillis + "ms");
+        assertTrue(wheelAccepted > 0);
+    }
+}
@@ -0,0 +1,109 @@
+package com.tufusi.taskdispatcher;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by 鼠夏目 on 2020/4/10.
+ *
+ * @See
+ * @Description 并行后端竞争基准：2/4/8个工作线程下，对比THREAD_POOL（共享PriorityTaskQueue）与WORK_STEALING（每线程一个队列）
+ * 在“根任务在工作线程中扇出大量小任务”（如网格缩略图解码）时的吞吐。结果输出到标准输出，线程数超过机器核数时结果只反映调度开销
+ */
+public class WorkStealingBenchmarkTest {
+
+    private static final int ROOTS = 64;
+    private static final int CHILDREN = 512;
+    private static final int WORK_ITERATIONS = 200;
+    private static final int ROUNDS = 3;
+
+    private static volatile long sSink;
+
+    @BeforeClass
+    public static void setUp() {
+        JvmTestDispatcher.install();
+    }
+
+    private static void spin() {
+        long x = 17;
+        for (int i = 0; i < WORK_ITERATIONS; i++) {
+            x = x * 31 + i;
+        }
+        sSink = x;
+    }
+
+    /**
+     * 提交ROOTS个根任务，每个根任务在工作线程中再提交CHILDREN个子任务，返回全部完成的耗时
+     */
+    private static long fanOut(final Executor executor) throws InterruptedException {
+        final int total = ROOTS * CHILDREN;
+        final AtomicInteger remaining = new AtomicInteger(total);
+        final CountDownLatch done = new CountDownLatch(1);
+        final Runnable child = new Runnable() {
+            @Override
+            public void run() {
+                spin();
+                if (remaining.decrementAndGet() == 0) {
+                    done.countDown();
+                }
+            }
+        };
+        Runnable root = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < CHILDREN; i++) {
+                    executor.execute(child);
+                }
+            }
+        };
+        long start = System.nanoTime();
+        for (int i = 0; i < ROOTS; i++) {
+            executor.execute(root);
+        }
+        assertTrue("fan-out did not finish", done.await(60, TimeUnit.SECONDS));
+        assertEquals(0, remaining.get());
+        return System.nanoTime() - start;
+    }
+
+    private static long best(ExecutorService executor) throws InterruptedException {
+        //第一轮用于预热
+        fanOut(executor);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            best = Math.min(best, fanOut(executor));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        return best;
+    }
+
+    @Test
+    public void threadPoolVersusWorkStealing() throws Exception {
+        int tasks = ROOTS * CHILDREN + ROOTS;
+        System.out.println("WorkStealingBenchmark: " + tasks + " tasks per round, " + Runtime.getRuntime().availableProcessors() + " cpus");
+        for (int threads : new int[]{2, 4, 8}) {
+            //队列容量足以容纳全部扇出，不触发溢出策略
+            long pool = best(new DispatcherThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new PriorityTaskQueue(tasks), Executors.defaultThreadFactory()));
+            long stealing = best(new WorkStealingExecutor(threads, Executors.defaultThreadFactory()));
+            System.out.println("  threads=" + threads
+                    + " THREAD_POOL=" + throughput(tasks, pool) + " tasks/ms"
+                    + " WORK_STEALING=" + throughput(tasks, stealing) + " tasks/ms"
+                    + " speedup=" + String.format("%.2f", (double) pool / stealing));
+        }
+    }
+
+    private static long throughput(int tasks, long nanos) {
+        return tasks * TimeUnit.MILLISECONDS.toNanos(1) / Math.max(1, nanos);
+    }
+}